@@ -0,0 +1,51 @@
+package com.ikemole.expressionevaluator.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+
+/**
+ * Runs the benchmarks of the allocation-free hot path with the GC profiler and exits with an error
+ * if any of them allocates. JMH reports a tiny non-zero gc.alloc.rate.norm even for code that never
+ * allocates, so any result below one byte per operation counts as zero.
+ * <pre>
+ * java -cp target/benchmarks.jar com.ikemole.expressionevaluator.benchmarks.AllocationCheck
+ * </pre>
+ */
+public class AllocationCheck {
+    private static final double MAX_BYTES_PER_OPERATION = 1.0;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CompiledEvaluateBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(3)
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+        boolean failed = false;
+
+        for (RunResult result : results) {
+            Result<?> allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            String benchmark = result.getParams().getBenchmark() + " " + result.getParams().getParam("expression");
+            if(allocation == null || allocation.getScore() >= MAX_BYTES_PER_OPERATION){
+                System.err.printf("FAILED: %s allocates %s B/op%n", benchmark,
+                        allocation == null ? "an unknown number of" : allocation.getScore());
+                failed = true;
+            } else {
+                System.out.printf("OK: %s allocates %.3f B/op%n", benchmark, allocation.getScore());
+            }
+        }
+
+        if(failed)
+            System.exit(1);
+    }
+}
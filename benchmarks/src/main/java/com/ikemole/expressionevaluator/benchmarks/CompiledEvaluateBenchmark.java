@@ -0,0 +1,45 @@
+package com.ikemole.expressionevaluator.benchmarks;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.VariableBindings;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the hot path of evaluating a compiled expression with new variable values on every call.
+ * This path must not allocate: {@link AllocationCheck} fails if gc.alloc.rate.norm reaches 1 B/op, since JMH
+ * reports a tiny non-zero rate even for code that never allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CompiledEvaluateBenchmark {
+    @Param({"price * (1 + rate) ^ (years / 12) - fee", "(5*2*7) + (2 ^ (2 + (81/27))) - 4 ^ (1/2) * x"})
+    public String expression;
+
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+    private CompiledExpression compiledExpression;
+    private VariableBindings bindings;
+    private double input;
+
+    @Setup
+    public void setup() throws BadExpressionException {
+        compiledExpression = evaluator.compile(expression);
+        bindings = compiledExpression.newBindings();
+        for (int slot = 0; slot < bindings.size(); slot++)
+            bindings.set(slot, slot + 1);
+    }
+
+    @Benchmark
+    public double evaluateWithBindings() {
+        input = input < 1000 ? input + 1 : 0;
+        bindings.set(0, input);
+        return evaluator.evaluate(compiledExpression, bindings);
+    }
+}
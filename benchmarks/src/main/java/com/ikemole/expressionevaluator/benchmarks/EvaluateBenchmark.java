@@ -0,0 +1,48 @@
+package com.ikemole.expressionevaluator.benchmarks;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures evaluating an expression from its text, and evaluating an expression that was compiled once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EvaluateBenchmark {
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int tokens;
+
+    @Param({"0", "10", "100"})
+    public int depth;
+
+    @Param({"additive", "multiplicative", "mixed"})
+    public ExpressionGenerator.OperatorMix mix;
+
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+    private String expression;
+    private CompiledExpression compiledExpression;
+
+    @Setup
+    public void setup() throws BadExpressionException {
+        expression = ExpressionGenerator.generate(tokens, depth, mix);
+        compiledExpression = evaluator.compile(expression);
+    }
+
+    @Benchmark
+    public double evaluate() throws BadExpressionException {
+        return evaluator.evaluate(expression);
+    }
+
+    @Benchmark
+    public double evaluateCompiled() {
+        return evaluator.evaluate(compiledExpression);
+    }
+}
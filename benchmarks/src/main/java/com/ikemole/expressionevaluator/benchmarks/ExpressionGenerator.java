@@ -0,0 +1,71 @@
+package com.ikemole.expressionevaluator.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates the expressions used as benchmark inputs. The output only depends on the arguments,
+ * so every run and every commit benchmarks exactly the same expressions.
+ */
+public class ExpressionGenerator {
+    private static final long SEED = 20240601L;
+
+    /**
+     * The operators that appear in a generated expression.
+     */
+    public enum OperatorMix {
+        additive("+-"),
+        multiplicative("*/"),
+        mixed("+-*/^");
+
+        private final String operators;
+
+        OperatorMix(String operators){
+            this.operators = operators;
+        }
+    }
+
+    /**
+     * Generate an expression.
+     * @param tokens The approximate number of numbers and operators in the expression
+     * @param depth The number of levels of nested brackets
+     * @param mix The operators to use
+     * @return The expression
+     */
+    public static String generate(int tokens, int depth, OperatorMix mix){
+        Random random = new Random(SEED);
+        StringBuilder sb = new StringBuilder(tokens * 3);
+        int operands = Math.max(1, (tokens + 1) / 2);
+        appendLevel(sb, random, operands, depth, mix);
+        return sb.toString();
+    }
+
+    /**
+     * Append a chain of operands in which one operand is a bracket holding the next level.
+     * The operands are shared evenly between the levels.
+     */
+    private static void appendLevel(StringBuilder sb, Random random, int operands, int depth, OperatorMix mix){
+        int ownOperands = depth == 0 ? operands : Math.max(1, operands / (depth + 1));
+        int bracketPosition = random.nextInt(ownOperands);
+
+        for (int i = 0; i < ownOperands; i++) {
+            if(i > 0)
+                appendOperator(sb, random, mix);
+
+            if(depth > 0 && i == bracketPosition){
+                sb.append('(');
+                appendLevel(sb, random, Math.max(1, operands - ownOperands), depth - 1, mix);
+                sb.append(')');
+            } else {
+                sb.append(1 + random.nextInt(9));
+            }
+        }
+    }
+
+    private static void appendOperator(StringBuilder sb, Random random, OperatorMix mix){
+        char operator = mix.operators.charAt(random.nextInt(mix.operators.length()));
+        // keep exponents small so that results stay finite in most expressions
+        if(operator == '^' && random.nextInt(4) != 0)
+            operator = '*';
+        sb.append(operator);
+    }
+}
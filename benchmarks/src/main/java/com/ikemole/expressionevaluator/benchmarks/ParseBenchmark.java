@@ -0,0 +1,41 @@
+package com.ikemole.expressionevaluator.benchmarks;
+
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.structure.ExpressionChain;
+import com.ikemole.expressionevaluator.structure.ExpressionChainBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to build the expression chain of an expression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParseBenchmark {
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int tokens;
+
+    @Param({"0", "10", "100"})
+    public int depth;
+
+    @Param({"additive", "multiplicative", "mixed"})
+    public ExpressionGenerator.OperatorMix mix;
+
+    private ExpressionChainBuilder builder = new ExpressionChainBuilder();
+    private String expression;
+
+    @Setup
+    public void setup(){
+        expression = ExpressionGenerator.generate(tokens, depth, mix);
+    }
+
+    @Benchmark
+    public ExpressionChain build() throws BadExpressionException {
+        return builder.build(expression);
+    }
+}
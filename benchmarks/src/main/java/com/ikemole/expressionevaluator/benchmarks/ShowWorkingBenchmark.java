@@ -0,0 +1,43 @@
+package com.ikemole.expressionevaluator.benchmarks;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.structure.ExpressionResultWithSteps;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures evaluating an expression while recording the steps of the working.
+ * Recording steps grows much faster than linearly with the length of the expression,
+ * so this benchmark stops at shorter expressions than the others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ShowWorkingBenchmark {
+    @Param({"10", "100", "1000"})
+    public int tokens;
+
+    @Param({"0", "10"})
+    public int depth;
+
+    @Param({"additive", "mixed"})
+    public ExpressionGenerator.OperatorMix mix;
+
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+    private String expression;
+
+    @Setup
+    public void setup(){
+        expression = ExpressionGenerator.generate(tokens, depth, mix);
+    }
+
+    @Benchmark
+    public ExpressionResultWithSteps evaluateAndShowWorking() throws BadExpressionException {
+        return evaluator.evaluateAndShowWorking(expression, true);
+    }
+}
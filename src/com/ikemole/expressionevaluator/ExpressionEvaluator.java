@@ -1,29 +1,431 @@
 package com.ikemole.expressionevaluator;
 
+import com.ikemole.expressionevaluator.compiled.BatchEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledBatch;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.DecimalExpression;
+import com.ikemole.expressionevaluator.compiled.ExpressionCache;
+import com.ikemole.expressionevaluator.compiled.ExpressionCompiler;
+import com.ikemole.expressionevaluator.compiled.ExpressionStore;
+import com.ikemole.expressionevaluator.compiled.LongExpression;
+import com.ikemole.expressionevaluator.compiled.VariableBindings;
 import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.file.FileEvaluationSummary;
+import com.ikemole.expressionevaluator.file.FileEvaluator;
+import com.ikemole.expressionevaluator.function.FunctionRegistry;
+import com.ikemole.expressionevaluator.metrics.ErrorKind;
+import com.ikemole.expressionevaluator.metrics.EvaluatorMetrics;
+import com.ikemole.expressionevaluator.metrics.Phase;
+import com.ikemole.expressionevaluator.structure.AsciiCharSequence;
 import com.ikemole.expressionevaluator.structure.ExpressionChain;
 import com.ikemole.expressionevaluator.structure.ExpressionChainBuilder;
 import com.ikemole.expressionevaluator.structure.ExpressionResultWithSteps;
+import com.ikemole.expressionevaluator.structure.StepListener;
+import com.ikemole.expressionevaluator.structure.StepLog;
 import com.ikemole.expressionevaluator.structure.node.BracketNode;
 import com.ikemole.expressionevaluator.structure.node.ExpressionNode;
+import com.ikemole.expressionevaluator.structure.node.FunctionNode;
 import com.ikemole.expressionevaluator.structure.node.NumberNode;
 import com.ikemole.expressionevaluator.structure.node.ExpressionNodeType;
 
+import java.io.IOException;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * A class used to evaluate a math expression.
+ * An evaluator is thread-safe: a single instance can be shared by any number of threads without locking.
+ * Every evaluation works on its own expression chain, and the builder and compiler keep no per-call state.
+ * Settings such as the cache, the JIT threshold or the metrics may be changed at any time and are seen by all threads.
  */
 public class ExpressionEvaluator {
-    private ExpressionChainBuilder expressionChainBuilder = new ExpressionChainBuilder();
+    private final FunctionRegistry functionRegistry;
+    private final ExpressionChainBuilder expressionChainBuilder;
+    private final ExpressionCompiler expressionCompiler;
+    private volatile ExpressionCache expressionCache;
+    private volatile EvaluatorMetrics metrics;
+
+    /**
+     * Create an evaluator that knows the built-in functions, such as sqrt and max.
+     */
+    public ExpressionEvaluator(){
+        this(FunctionRegistry.withBuiltIns());
+    }
+
+    /**
+     * Create an evaluator whose expressions can call the functions, and use the constants, of the given registry.
+     */
+    public ExpressionEvaluator(FunctionRegistry functionRegistry){
+        this.functionRegistry = functionRegistry;
+        this.expressionChainBuilder = new ExpressionChainBuilder(functionRegistry);
+        this.expressionCompiler = new ExpressionCompiler(expressionChainBuilder);
+    }
 
     /**
      * Evaluate a math expression and return the result.
      * Example: "2+3*4" should return 14
-     * @param expression A string containing an expression to be evaluated.
+     * @param expression The text of an expression to be evaluated, such as a String or a CharBuffer.
+     * @return The result of solving the expression
+     */
+    public double evaluate(CharSequence expression) throws BadExpressionException {
+        EvaluatorMetrics metrics = this.metrics;
+        if(metrics != null)
+            return evaluateMeasured(expression, metrics);
+
+        if(expressionCache != null)
+            return evaluateCached(expression.toString(), null);
+
+        return evaluateChain(expressionChainBuilder.build(expression), null);
+    }
+
+    private double evaluateMeasured(CharSequence expression, EvaluatorMetrics metrics) throws BadExpressionException {
+        try {
+            if(expressionCache != null)
+                return evaluateCached(expression.toString(), metrics);
+
+            return evaluateChain(build(expression, metrics), null, metrics);
+        } catch (BadExpressionException | IllegalArgumentException e) {
+            metrics.recordError(ErrorKind.of(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Evaluate a math expression held in a region of a char array, without copying it.
+     * Positions in error messages are relative to the start of the region.
+     * @param expression The array that holds the expression
+     * @param offset The index of the first character of the expression
+     * @param length The number of characters of the expression
+     * @return The result of solving the expression
+     */
+    public double evaluate(char[] expression, int offset, int length) throws BadExpressionException {
+        return evaluate(CharBuffer.wrap(expression, offset, length));
+    }
+
+    /**
+     * Evaluate a math expression held as ASCII bytes between the position and the limit of a buffer,
+     * without decoding or copying it. The buffer may be on the heap or direct, and its position is not changed.
+     * Positions in error messages are relative to the position of the buffer.
+     * @param expression The buffer that holds the expression
+     * @return The result of solving the expression
+     */
+    public double evaluate(ByteBuffer expression) throws BadExpressionException {
+        return evaluate(new AsciiCharSequence(expression));
+    }
+
+    /**
+     * Parse a math expression once so that it can be evaluated many times.
+     * The returned object is immutable and can be shared between threads.
+     * @param expression A string containing an expression to be compiled.
+     * @return The compiled expression
+     */
+    public CompiledExpression compile(String expression) throws BadExpressionException {
+        EvaluatorMetrics metrics = this.metrics;
+        if(metrics == null)
+            return compile(expression, null);
+
+        try {
+            return compile(expression, metrics);
+        } catch (BadExpressionException | IllegalArgumentException e) {
+            metrics.recordError(ErrorKind.of(e));
+            throw e;
+        }
+    }
+
+    private CompiledExpression compile(String expression, EvaluatorMetrics metrics) throws BadExpressionException {
+        ExpressionCache expressionCache = this.expressionCache;
+        if(expressionCache == null)
+            return compileUncached(expression, metrics);
+
+        CompiledExpression compiledExpression = expressionCache.get(expression);
+        if(metrics != null)
+            metrics.recordCacheLookup(compiledExpression != null);
+
+        if(compiledExpression == null){
+            compiledExpression = compileUncached(expression, metrics);
+            expressionCache.put(expression, compiledExpression);
+        }
+
+        return compiledExpression;
+    }
+
+    private CompiledExpression compileUncached(String expression, EvaluatorMetrics metrics)
+            throws BadExpressionException
+    {
+        if(metrics == null)
+            return expressionCompiler.compile(expression);
+
+        long start = System.nanoTime();
+        CompiledExpression compiledExpression = expressionCompiler.compile(expression);
+        metrics.recordLatency(Phase.Parse, System.nanoTime() - start);
+        return compiledExpression;
+    }
+
+    /**
+     * Compile several math expressions together, such as a set of formulas that repeat the same sub-expressions.
+     * The sub-expressions they have in common are computed once each time the batch is evaluated.
+     * Batches are not cached.
+     * @param expressions The expressions to compile
+     * @return The compiled batch, which reports how many repeated sub-expressions it shares
+     */
+    public CompiledBatch compileBatch(List<String> expressions) throws BadExpressionException {
+        EvaluatorMetrics metrics = this.metrics;
+        if(metrics == null)
+            return expressionCompiler.compileBatch(expressions);
+
+        try {
+            long start = System.nanoTime();
+            CompiledBatch compiledBatch = expressionCompiler.compileBatch(expressions);
+            metrics.recordLatency(Phase.Parse, System.nanoTime() - start);
+            return compiledBatch;
+        } catch (BadExpressionException | IllegalArgumentException e) {
+            metrics.recordError(ErrorKind.of(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Compile a math expression to be evaluated with long arithmetic instead of doubles. Every result is exact:
+     * an overflow, or a division or power whose result is not a whole number, throws an ArithmeticException.
+     * Exact expressions are not cached.
+     * @param expression A string containing an expression with whole numbers.
+     * @return The compiled expression
+     */
+    public LongExpression compileLong(String expression) throws BadExpressionException {
+        return expressionCompiler.compileLong(expression);
+    }
+
+    /**
+     * Compile a math expression to be evaluated with BigDecimal arithmetic instead of doubles,
+     * for exact decimal results such as amounts of money. Exact expressions are not cached.
+     * @param expression A string containing an expression to be compiled.
+     * @param mathContext The precision and rounding mode of every operation, or MathContext.UNLIMITED
+     *                    for no rounding at all
+     * @return The compiled expression
+     */
+    public DecimalExpression compileDecimal(String expression, MathContext mathContext) throws BadExpressionException {
+        return expressionCompiler.compileDecimal(expression, mathContext);
+    }
+
+    /**
+     * Write compiled expressions to a file that {@link #openStore(Path)} can map back without parsing them again.
+     * @param compiledExpressions The expressions to write, which are numbered in this order in the store
+     * @param path The file to write. It is created or replaced.
+     */
+    public void writeStore(List<CompiledExpression> compiledExpressions, Path path) throws IOException {
+        ExpressionStore.write(compiledExpressions, path);
+    }
+
+    /**
+     * Map a file of compiled expressions written by {@link #writeStore(List, Path)}. Each expression is read
+     * the first time it is asked for, with the functions of this evaluator and its JIT threshold.
+     * @param path The file to map
+     * @return The store of the expressions
+     */
+    public ExpressionStore openStore(Path path) throws IOException {
+        return ExpressionStore.open(path, functionRegistry, expressionCompiler.getJitThreshold());
+    }
+
+    /**
+     * Keep compiled expressions in the given cache, so that evaluating or compiling an expression
+     * that was seen before does not parse it again. There is no cache by default.
+     * @param expressionCache The cache to use, or null to stop caching
+     */
+    public void setCache(ExpressionCache expressionCache) {
+        this.expressionCache = expressionCache;
+    }
+
+    /**
+     * Report what this evaluator does to the given metrics: the latency of each phase, the number of
+     * expressions and operators evaluated, the errors thrown, and the cache lookups. There are no metrics
+     * by default, and then the evaluator does not read the clock or count anything.
+     * @param metrics The metrics to report to, or null to stop reporting
+     */
+    public void setMetrics(EvaluatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private double evaluateCached(String expression, EvaluatorMetrics metrics) throws BadExpressionException {
+        CompiledExpression compiledExpression = compile(expression, metrics);
+        if(compiledExpression.variableCount() > 0)
+            throw new BadExpressionException(String.format(
+                    "The variable \"%s\" has no value. Compile the expression and evaluate it with bindings.",
+                    compiledExpression.variableName(0)));
+
+        return metrics == null ? compiledExpression.evaluate() : evaluateMeasured(compiledExpression, null, metrics);
+    }
+
+    /**
+     * Enable the bytecode backend for expressions compiled by this evaluator.
+     * A compiled expression is turned into a JVM class after it has been evaluated "jitThreshold" times,
+     * so that HotSpot can optimise it like hand-written Java. The backend is disabled by default.
+     * @param jitThreshold A positive number of evaluations, or CompiledExpression.JIT_DISABLED
+     */
+    public void setJitThreshold(int jitThreshold) {
+        expressionCompiler.setJitThreshold(jitThreshold);
+    }
+
+    /**
+     * Evaluate an expression that was previously compiled and return the result.
+     * This does not parse the expression again.
+     * @param compiledExpression An expression returned by {@link #compile(String)}
      * @return The result of solving the expression
      */
-    public double evaluate(String expression) throws BadExpressionException {
-        ExpressionResultWithSteps resultWithSteps = evaluateAndShowWorking(expression, false);
-        return resultWithSteps.getResult();
+    public double evaluate(CompiledExpression compiledExpression) {
+        EvaluatorMetrics metrics = this.metrics;
+        if(metrics == null)
+            return compiledExpression.evaluate();
+
+        return evaluateMeasured(compiledExpression, null, metrics);
+    }
+
+    /**
+     * Evaluate an expression that was previously compiled, using the given values for its variables.
+     * Example: compiling "price * (1 + rate)" and binding price=100 and rate=0.2 returns 120
+     * @param compiledExpression An expression returned by {@link #compile(String)}
+     * @param bindings The values of the variables, indexed by slot
+     * @return The result of solving the expression
+     */
+    public double evaluate(CompiledExpression compiledExpression, VariableBindings bindings) {
+        EvaluatorMetrics metrics = this.metrics;
+        if(metrics == null)
+            return compiledExpression.evaluate(bindings);
+
+        return evaluateMeasured(compiledExpression, bindings, metrics);
+    }
+
+    /**
+     * Evaluate a compiled expression, recording its latency and operators, or its error.
+     * @param bindings The values of the variables, or null if the expression has none
+     */
+    private double evaluateMeasured(CompiledExpression compiledExpression, VariableBindings bindings,
+                                    EvaluatorMetrics metrics) {
+        try {
+            long start = System.nanoTime();
+            double result = bindings == null ? compiledExpression.evaluate() : compiledExpression.evaluate(bindings);
+            metrics.recordLatency(Phase.Evaluate, System.nanoTime() - start);
+            metrics.recordEvaluations(1, compiledExpression.program().operatorCount());
+            return result;
+        } catch (IllegalArgumentException e) {
+            metrics.recordError(ErrorKind.IllegalArgument);
+            throw e;
+        }
+    }
+
+    /**
+     * Evaluate a compiled expression for every row of a table of variable values.
+     * The values are given as columns, so columns[slot][row] is the value of the variable in "slot"
+     * for that row. Each operator is applied to whole blocks of rows at a time rather than walking
+     * the expression once per row.
+     * @param compiledExpression An expression returned by {@link #compile(String)}
+     * @param columns The values of each variable, indexed by slot and then by row
+     * @param out The array that receives the result of each row. Its length is the number of rows.
+     */
+    public void evaluateBatch(CompiledExpression compiledExpression, double[][] columns, double[] out) {
+        EvaluatorMetrics metrics = this.metrics;
+        if(metrics == null){
+            new BatchEvaluator(compiledExpression, columns).evaluate(out, 0, out.length);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            new BatchEvaluator(compiledExpression, columns).evaluate(out, 0, out.length);
+        } catch (IllegalArgumentException e) {
+            metrics.recordError(ErrorKind.IllegalArgument);
+            throw e;
+        }
+        recordBatch(compiledExpression, out.length, System.nanoTime() - start, metrics);
+    }
+
+    /**
+     * Evaluate the first rows of the columns of a batch evaluator. A batch evaluator rebuilds the tree of its
+     * expression once, so refilling its columns and evaluating them again suits many small tables, such as
+     * the blocks of a stream.
+     * @param batchEvaluator An evaluator created for a compiled expression and its columns
+     * @param out The array that receives the result of each row
+     * @param rowCount The number of rows to evaluate
+     */
+    public void evaluateBatch(BatchEvaluator batchEvaluator, double[] out, int rowCount) {
+        EvaluatorMetrics metrics = this.metrics;
+        if(metrics == null){
+            batchEvaluator.evaluate(out, 0, rowCount);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            batchEvaluator.evaluate(out, 0, rowCount);
+        } catch (IllegalArgumentException e) {
+            metrics.recordError(ErrorKind.IllegalArgument);
+            throw e;
+        }
+        recordBatch(batchEvaluator.compiledExpression(), rowCount, System.nanoTime() - start, metrics);
+    }
+
+    /**
+     * Evaluate a compiled expression for every row of a table of variable values, using the common
+     * fork-join pool to evaluate chunks of rows in parallel.
+     * @see #evaluateBatch(CompiledExpression, double[][], double[])
+     */
+    public void evaluateBatchParallel(CompiledExpression compiledExpression, double[][] columns, double[] out) {
+        evaluateBatchParallel(compiledExpression, columns, out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Evaluate a compiled expression for every row of a table of variable values, using the given
+     * fork-join pool to evaluate chunks of rows in parallel. Each chunk writes to its own part of "out".
+     * @param compiledExpression An expression returned by {@link #compile(String)}
+     * @param columns The values of each variable, indexed by slot and then by row
+     * @param out The array that receives the result of each row. Its length is the number of rows.
+     * @param pool The pool whose threads evaluate the chunks
+     */
+    public void evaluateBatchParallel(CompiledExpression compiledExpression, double[][] columns, double[] out,
+                                      ForkJoinPool pool) {
+        EvaluatorMetrics metrics = this.metrics;
+        if(metrics == null){
+            BatchEvaluator.evaluateParallel(compiledExpression, columns, out, pool);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            BatchEvaluator.evaluateParallel(compiledExpression, columns, out, pool);
+        } catch (IllegalArgumentException e) {
+            metrics.recordError(ErrorKind.IllegalArgument);
+            throw e;
+        }
+        recordBatch(compiledExpression, out.length, System.nanoTime() - start, metrics);
+    }
+
+    private void recordBatch(CompiledExpression compiledExpression, int rows, long nanos, EvaluatorMetrics metrics) {
+        metrics.recordLatency(Phase.Batch, nanos);
+        metrics.recordEvaluations(rows, (long) rows * compiledExpression.program().operatorCount());
+    }
+
+    /**
+     * Evaluate a file of expressions, one per line, using the common fork-join pool.
+     * @see #evaluateFile(Path, Path, ForkJoinPool)
+     */
+    public FileEvaluationSummary evaluateFile(Path input, Path output) throws IOException {
+        return evaluateFile(input, output, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Evaluate a file of expressions, one per line, and write the result of each line to the output file in
+     * the same order. The input is memory-mapped and its chunks are evaluated in parallel by the given pool.
+     * A line that cannot be evaluated does not stop the job: its output line holds "error: " and the message.
+     * @param input The file of expressions, one per line, in ASCII
+     * @param output The file that receives one result per line. It is created or replaced.
+     * @param pool The pool whose threads evaluate the chunks
+     * @return The number of lines evaluated and the number that failed
+     */
+    public FileEvaluationSummary evaluateFile(Path input, Path output, ForkJoinPool pool) throws IOException {
+        return new FileEvaluator(this).evaluate(input, output, pool);
     }
 
     /**
@@ -35,52 +437,146 @@ public class ExpressionEvaluator {
     public ExpressionResultWithSteps evaluateAndShowWorking(String expression, boolean showWorking)
             throws BadExpressionException
     {
+        EvaluatorMetrics metrics = this.metrics;
+        try {
+            ExpressionChain expressionChain = build(expression, metrics);
+            StepLog stepLog = showWorking ? new StepLog(expressionChain, metrics) : null;
+            double result = evaluateChain(expressionChain, stepLog, metrics);
+            return new ExpressionResultWithSteps(result, stepLog);
+        } catch (BadExpressionException | IllegalArgumentException e) {
+            if(metrics != null)
+                metrics.recordError(ErrorKind.of(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Evaluate a math expression and send each step taken to solve it to the listener as soon as it is
+     * produced. The first step is sent before the evaluation starts, and the steps are not kept,
+     * so long expressions can be shown without holding all of their working in memory.
+     * @param expression A string containing an expression to be evaluated.
+     * @param stepListener The listener that receives each step
+     * @return The result of solving the expression
+     */
+    public double evaluateAndShowWorking(String expression, StepListener stepListener)
+            throws BadExpressionException
+    {
+        EvaluatorMetrics metrics = this.metrics;
+        try {
+            ExpressionChain expressionChain = build(expression, metrics);
+            return evaluateChain(expressionChain, new StepLog(expressionChain, stepListener, metrics), metrics);
+        } catch (BadExpressionException | IllegalArgumentException e) {
+            if(metrics != null)
+                metrics.recordError(ErrorKind.of(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Build the chain of an expression, recording the time it takes if there are metrics.
+     */
+    private ExpressionChain build(CharSequence expression, EvaluatorMetrics metrics) throws BadExpressionException {
+        if(metrics == null)
+            return expressionChainBuilder.build(expression);
+
+        long start = System.nanoTime();
         ExpressionChain expressionChain = expressionChainBuilder.build(expression);
+        metrics.recordLatency(Phase.Parse, System.nanoTime() - start);
+        return expressionChain;
+    }
+
+    /**
+     * Evaluate a whole expression chain, recording the time it takes and the number of its operators
+     * if there are metrics. When the steps are streamed, the time includes sending them to the listener.
+     */
+    private double evaluateChain(ExpressionChain expressionChain, StepLog stepLog, EvaluatorMetrics metrics)
+            throws BadExpressionException
+    {
+        if(metrics == null)
+            return evaluateChain(expressionChain, stepLog);
 
-        if(showWorking)
-            expressionChain.recordCurrentStep();
+        int operatorCount = countOperators(expressionChain);
+        long start = System.nanoTime();
+        double result = evaluateChain(expressionChain, stepLog);
+        metrics.recordLatency(Phase.Evaluate, System.nanoTime() - start);
+        metrics.recordEvaluations(1, operatorCount);
+        return result;
+    }
+
+    /**
+     * Count the operators, brackets and function calls of a chain, including the ones nested in them.
+     * These are the nodes that the evaluation processes.
+     */
+    private int countOperators(ExpressionChain expressionChain) {
+        int count = 0;
+        for (ExpressionNode node = expressionChain.first(); node != null; node = node.right()) {
+            switch (node.type()) {
+                case Number:
+                case Variable:
+                    break;
+                case Bracket:
+                    count += 1 + countOperators(((BracketNode) node).innerChain());
+                    break;
+                case Function:
+                    FunctionNode functionNode = (FunctionNode) node;
+                    count++;
+                    for (int i = 0; i < functionNode.argumentCount(); i++)
+                        count += countOperators(functionNode.argument(i));
+                    break;
+                default:
+                    count++;
+            }
+        }
+        return count;
+    }
 
+    /**
+     * Evaluate an expression chain and return the result. The chain is consumed by the evaluation.
+     * @param stepLog The log to record each processed node in, or null if the steps are not needed
+     */
+    private double evaluateChain(ExpressionChain expressionChain, StepLog stepLog) throws BadExpressionException {
         while (expressionChain.hasOperators()){
             ExpressionNode nodeToProcess = expressionChain.getHighestPriorityNode();
-            double nodeResult = evaluateNode(nodeToProcess, showWorking);
-
-            if(showWorking && nodeToProcess.type() == ExpressionNodeType.Bracket)
-                expressionChain.recordInnerStepsForBracket((BracketNode) nodeToProcess);
+            double nodeResult = evaluateNode(nodeToProcess, stepLog);
 
             ExpressionNode resultNode = new NumberNode(nodeResult);
             expressionChain.replace(nodeToProcess, resultNode);
 
-            if(showWorking)
-                expressionChain.recordCurrentStep();
+            if(stepLog != null)
+                stepLog.record(nodeToProcess, nodeResult);
         }
 
-        double nodeResult = ((NumberNode) expressionChain.first()).number();
-        return new ExpressionResultWithSteps(nodeResult, expressionChain.getSteps());
+        validateOperandIsBound(expressionChain.first());
+        return ((NumberNode) expressionChain.first()).number();
     }
 
     /**
      * Evaluate the expression at this node. The node here is usually an operator node in which case
      * we apply the operator to the values on its left and right. Alternatively, it could be a
-     * bracket node in which case the inner expression is evaluated.
+     * bracket node in which case the inner expression is evaluated, or a function call in which
+     * case each argument is evaluated and the function is applied to them.
      */
-    private double evaluateNode(ExpressionNode node, boolean showWorking) throws BadExpressionException {
+    private double evaluateNode(ExpressionNode node, StepLog stepLog) throws BadExpressionException {
         if(node.type() == ExpressionNodeType.Number)
             return ((NumberNode)node).number();
 
-        if(node.type() == ExpressionNodeType.Bracket){
-            BracketNode bracketNode = ((BracketNode)node);
-            String innerExpression = bracketNode.expression();
-            ExpressionResultWithSteps resultWithSteps = evaluateAndShowWorking(innerExpression, showWorking);
+        if(node.type() == ExpressionNodeType.Bracket)
+            return evaluateChain(((BracketNode)node).innerChain(), stepLog);
 
-            if(showWorking)
-                bracketNode.setInnerSteps(resultWithSteps.getSteps());
+        if(node.type() == ExpressionNodeType.Function){
+            FunctionNode functionNode = (FunctionNode) node;
+            double[] arguments = new double[functionNode.argumentCount()];
+            for (int i = 0; i < arguments.length; i++)
+                arguments[i] = evaluateChain(functionNode.argument(i), stepLog);
 
-            return resultWithSteps.getResult();
+            return functionNode.function().apply(arguments, 0, arguments.length);
         }
 
         /*
         The remaining operators require a left and a right value.
          */
+        validateOperandIsBound(node.left());
+        validateOperandIsBound(node.right());
         validateOperandNode(node.left());
         validateOperandNode(node.right());
 
@@ -104,6 +600,16 @@ public class ExpressionEvaluator {
     }
 
 
+    /**
+     * A variable has no value when an expression is evaluated directly from a string.
+     * Such expressions have to be compiled and evaluated with VariableBindings.
+     */
+    private void validateOperandIsBound(ExpressionNode node) throws BadExpressionException {
+        if(node != null && node.type() == ExpressionNodeType.Variable)
+            throw new BadExpressionException(String.format(
+                    "The variable \"%s\" has no value. Compile the expression and evaluate it with bindings.", node));
+    }
+
     /**
      * For operations that require a right and left operands, this validates that each operand
      * is valid and is a number.
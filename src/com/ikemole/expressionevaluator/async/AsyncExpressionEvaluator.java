@@ -0,0 +1,145 @@
+package com.ikemole.expressionevaluator.async;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.BatchEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.VariableBindings;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * An asynchronous facade over an ExpressionEvaluator, for callers built on reactive streams or futures.
+ * <p>
+ * Streams are java.util.concurrent.Flow publishers, which Reactive Streams libraries such as Project Reactor
+ * can adapt. The returned publishers are cold: each subscription subscribes to the source again. Items are
+ * evaluated in batches on the executor, so a stream of variable values uses the block-wise BatchEvaluator.
+ * The source is only asked for as many items as the subscriber asks for results, and the evaluation never
+ * blocks a thread of the executor, so any executor can be used, even one with a single thread.
+ * <p>
+ * Variables can also be looked up asynchronously: all the lookups of an expression are started at once,
+ * and the expression is evaluated when the last of them completes.
+ */
+public class AsyncExpressionEvaluator {
+    static final int BATCH_SIZE = 256;
+
+    private final ExpressionEvaluator evaluator;
+    private final Executor executor;
+
+    /**
+     * Create an asynchronous evaluator that evaluates on the common fork-join pool.
+     */
+    public AsyncExpressionEvaluator(ExpressionEvaluator evaluator){
+        this(evaluator, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param evaluator The evaluator that compiles and evaluates the expressions, with its cache and metrics
+     * @param executor The executor that evaluates the batches and delivers the results
+     */
+    public AsyncExpressionEvaluator(ExpressionEvaluator evaluator, Executor executor){
+        this.evaluator = evaluator;
+        this.executor = executor;
+    }
+
+    /**
+     * Evaluate a stream of expressions without variables, such as "2*(3+4)".
+     * Each expression is compiled through the evaluator, so a cache set on it is used. An expression that
+     * cannot be evaluated gives a result with its error, and the stream goes on.
+     * @param expressions The expressions to evaluate
+     * @return A publisher of the result of each expression, in the same order
+     */
+    public Flow.Publisher<EvaluationResult> evaluate(Flow.Publisher<String> expressions) {
+        return subscriber -> new BatchingPipeline<String, EvaluationResult>(BATCH_SIZE, executor, this::evaluateAll)
+                .start(expressions, subscriber);
+    }
+
+    private void evaluateAll(List<String> expressions, Consumer<EvaluationResult> results) {
+        for (String expression : expressions) {
+            try {
+                CompiledExpression compiledExpression = evaluator.compile(expression);
+                if(compiledExpression.variableCount() > 0)
+                    throw new BadExpressionException(String.format(
+                            "The variable \"%s\" has no value.", compiledExpression.variableName(0)));
+
+                results.accept(EvaluationResult.success(expression, evaluator.evaluate(compiledExpression)));
+            } catch (BadExpressionException | IllegalArgumentException e) {
+                results.accept(EvaluationResult.failure(expression, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Evaluate a compiled expression for a stream of rows of variable values.
+     * The rows are gathered into blocks that are evaluated column by column by a BatchEvaluator.
+     * Each subscription has its own BatchEvaluator, whose columns are refilled for every block.
+     * @param compiledExpression An expression returned by {@link ExpressionEvaluator#compile(String)}
+     * @param rows The values of the variables of each row, indexed by slot
+     * @return A publisher of the result of each row, in the same order. It fails with an
+     *         IllegalArgumentException if a row has fewer values than the expression has variables.
+     */
+    public Flow.Publisher<Double> evaluate(CompiledExpression compiledExpression, Flow.Publisher<double[]> rows) {
+        int variableCount = compiledExpression.variableCount();
+        return subscriber -> {
+            double[][] columns = new double[variableCount][BATCH_SIZE];
+            double[] out = new double[BATCH_SIZE];
+            BatchEvaluator batchEvaluator = new BatchEvaluator(compiledExpression, columns);
+
+            new BatchingPipeline<double[], Double>(BATCH_SIZE, executor, (batch, results) -> {
+                for (int row = 0; row < batch.size(); row++) {
+                    double[] values = batch.get(row);
+                    if(values.length < variableCount)
+                        throw new IllegalArgumentException(String.format(
+                                "Expected %s values in a row but got %s", variableCount, values.length));
+
+                    for (int slot = 0; slot < variableCount; slot++)
+                        columns[slot][row] = values[slot];
+                }
+
+                evaluator.evaluateBatch(batchEvaluator, out, batch.size());
+                for (int row = 0; row < batch.size(); row++)
+                    results.accept(out[row]);
+            }).start(rows, subscriber);
+        };
+    }
+
+    /**
+     * Compile an expression and evaluate it with variables that are looked up asynchronously.
+     * @see #evaluateAsync(CompiledExpression, VariableResolver)
+     */
+    public CompletableFuture<Double> evaluateAsync(String expression, VariableResolver resolver) {
+        try {
+            return evaluateAsync(evaluator.compile(expression), resolver);
+        } catch (BadExpressionException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Evaluate a compiled expression with variables that are looked up asynchronously. The lookups of all
+     * the variables are started at once, so independent lookups run concurrently, and the expression is
+     * evaluated on the executor when the last one completes.
+     * @param compiledExpression An expression returned by {@link ExpressionEvaluator#compile(String)}
+     * @param resolver The resolver that looks up the value of each variable
+     * @return A future of the result. It completes exceptionally if a lookup fails.
+     */
+    public CompletableFuture<Double> evaluateAsync(CompiledExpression compiledExpression, VariableResolver resolver) {
+        List<CompletableFuture<Double>> values = new ArrayList<>(compiledExpression.variableCount());
+        for (int slot = 0; slot < compiledExpression.variableCount(); slot++)
+            values.add(resolver.resolve(compiledExpression.variableName(slot)));
+
+        return CompletableFuture.allOf(values.toArray(new CompletableFuture<?>[0])).thenApplyAsync(ignored -> {
+            VariableBindings bindings = compiledExpression.newBindings();
+            for (int slot = 0; slot < values.size(); slot++)
+                bindings.set(slot, values.get(slot).join());
+
+            return evaluator.evaluate(compiledExpression, bindings);
+        }, executor);
+    }
+}
@@ -0,0 +1,234 @@
+package com.ikemole.expressionevaluator.async;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The pipeline of one subscription to an asynchronous evaluation. It subscribes to the upstream publisher,
+ * takes its items in batches, and passes the results of each batch to the downstream subscriber.
+ * <p>
+ * All the work is done by a drain that runs on the executor, and only one drain runs at a time: every signal,
+ * from upstream or downstream, counts as pending work, and the drain that is running when a signal arrives
+ * goes round again instead of a second one starting. The drain never blocks, so it can share any executor,
+ * even a single thread, with the subscriber and the source.
+ * <p>
+ * Items are batched as they arrive: the drain takes every item that has arrived, up to the batch size.
+ * A slow stream is processed item by item without waiting, and a fast one in full batches.
+ * <p>
+ * The demand of the subscriber is passed through to the source. Items are only requested for results
+ * the subscriber has asked for, and no more than two batches are in flight at a time, counting the items
+ * requested or queued and the results not yet delivered. A batch is only processed once the results of
+ * the previous one are delivered, so a subscriber that stops asking holds back both the source and the work.
+ */
+class BatchingPipeline<T, R> implements Flow.Subscriber<T>, Flow.Subscription {
+    /**
+     * Computes the results of a batch of items, in order.
+     */
+    interface BatchFunction<T, R> {
+        void apply(List<T> items, Consumer<R> results);
+    }
+
+    private final int batchSize;
+    private final Executor executor;
+    private final BatchFunction<T, R> batchFunction;
+    private final Queue<T> items = new ConcurrentLinkedQueue<>();
+    // the number of signals that arrived while a drain was scheduled or running
+    private final AtomicInteger pendingSignals = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+
+    private Flow.Subscriber<? super R> downstream;
+    private volatile Flow.Subscription upstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+
+    // only used by the drain
+    private final ArrayDeque<R> results = new ArrayDeque<>();
+    private final List<T> batch;
+    private long inFlight; // items requested from upstream that the drain has not taken yet
+    private boolean terminated;
+
+    BatchingPipeline(int batchSize, Executor executor, BatchFunction<T, R> batchFunction){
+        this.batchSize = batchSize;
+        this.executor = executor;
+        this.batchFunction = batchFunction;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Give the downstream subscriber its subscription, then subscribe the pipeline to the items.
+     */
+    void start(Flow.Publisher<T> upstreamPublisher, Flow.Subscriber<? super R> subscriber){
+        this.downstream = subscriber;
+        subscriber.onSubscribe(this);
+        upstreamPublisher.subscribe(this);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if(upstream != null || cancelled){
+            subscription.cancel();
+            return;
+        }
+
+        upstream = subscription;
+        signal();
+    }
+
+    @Override
+    public void onNext(T item) {
+        items.add(item);
+        signal();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        upstreamDone = true;
+        signal();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        signal();
+    }
+
+    @Override
+    public void request(long n) {
+        if(n <= 0){
+            error = new IllegalArgumentException("The number of requested results must be positive, but was " + n);
+            cancelUpstream();
+        } else {
+            requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+        }
+        signal();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        cancelUpstream();
+        signal();
+    }
+
+    private void cancelUpstream(){
+        Flow.Subscription subscription = upstream;
+        if(subscription != null)
+            subscription.cancel();
+    }
+
+    private void signal(){
+        if(pendingSignals.getAndIncrement() == 0)
+            executor.execute(this::drain);
+    }
+
+    /**
+     * Deliver results and process batches until no progress can be made, then until no signal is left.
+     */
+    private void drain(){
+        int signals = 1;
+        do {
+            while (!terminated && step()) {
+                // keep going while results are delivered or batches processed
+            }
+            if(terminated)
+                items.clear(); // items that arrived after the end
+            signals = pendingSignals.addAndGet(-signals);
+        } while (signals != 0);
+    }
+
+    /**
+     * Do the next piece of work.
+     * @return Whether a result was delivered or a batch was processed
+     */
+    private boolean step(){
+        if(cancelled){
+            terminate();
+            return false;
+        }
+
+        Throwable failure = error;
+        if(failure != null){
+            terminate();
+            downstream.onError(failure);
+            return false;
+        }
+
+        boolean progress = deliverResults();
+
+        if(results.isEmpty() && processBatch())
+            return true;
+
+        if(upstreamDone && results.isEmpty() && items.isEmpty()){
+            terminate();
+            downstream.onComplete();
+            return false;
+        }
+
+        requestItems();
+        return progress;
+    }
+
+    private boolean deliverResults(){
+        long demand = requested.get();
+        long delivered = 0;
+        while (delivered < demand && !results.isEmpty() && !cancelled){
+            downstream.onNext(results.poll());
+            delivered++;
+        }
+
+        if(delivered > 0 && demand != Long.MAX_VALUE)
+            requested.addAndGet(-delivered);
+        return delivered > 0;
+    }
+
+    private boolean processBatch(){
+        T item;
+        while (batch.size() < batchSize && (item = items.poll()) != null)
+            batch.add(item);
+        if(batch.isEmpty())
+            return false;
+
+        inFlight -= batch.size();
+        try {
+            batchFunction.apply(batch, results::add);
+        } catch (RuntimeException e) {
+            error = e;
+            cancelUpstream();
+        }
+        batch.clear();
+        return true;
+    }
+
+    /**
+     * Request as many items as the subscriber still wants results for, less the items and results already
+     * in flight, and at most two batches in all.
+     */
+    private void requestItems(){
+        Flow.Subscription subscription = upstream;
+        if(subscription == null || upstreamDone)
+            return;
+
+        long wanted = Math.min(requested.get(), 2L * batchSize) - inFlight - results.size();
+        if(wanted > 0){
+            inFlight += wanted;
+            // a synchronous source may deliver the items right away, which only signals this drain again
+            subscription.request(wanted);
+        }
+    }
+
+    private void terminate(){
+        terminated = true;
+        items.clear();
+        results.clear();
+    }
+}
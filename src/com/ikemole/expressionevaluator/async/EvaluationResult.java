@@ -0,0 +1,52 @@
+package com.ikemole.expressionevaluator.async;
+
+/**
+ * The result of evaluating one expression of a stream: either its value, or the message of the error
+ * that stopped it from being evaluated. An expression that cannot be evaluated does not end the stream.
+ */
+public final class EvaluationResult {
+    private final String expression;
+    private final double value;
+    private final String error;
+
+    private EvaluationResult(String expression, double value, String error){
+        this.expression = expression;
+        this.value = value;
+        this.error = error;
+    }
+
+    static EvaluationResult success(String expression, double value){
+        return new EvaluationResult(expression, value, null);
+    }
+
+    static EvaluationResult failure(String expression, String error){
+        return new EvaluationResult(expression, Double.NaN, error);
+    }
+
+    public String expression() {
+        return expression;
+    }
+
+    /**
+     * The value of the expression, or NaN if it could not be evaluated.
+     */
+    public double value() {
+        return value;
+    }
+
+    /**
+     * The message of the error, or null if the expression was evaluated.
+     */
+    public String error() {
+        return error;
+    }
+
+    public boolean succeeded() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return expression + " = " + (succeeded() ? String.valueOf(value) : "error: " + error);
+    }
+}
@@ -0,0 +1,16 @@
+package com.ikemole.expressionevaluator.async;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Looks up the value of a variable asynchronously, such as from a remote service or a database.
+ */
+@FunctionalInterface
+public interface VariableResolver {
+    /**
+     * Start looking up the value of a variable.
+     * @param name The name of the variable
+     * @return A future that completes with the value, or completes exceptionally if it cannot be found
+     */
+    CompletableFuture<Double> resolve(String name);
+}
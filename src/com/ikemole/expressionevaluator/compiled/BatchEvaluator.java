@@ -0,0 +1,251 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import com.ikemole.expressionevaluator.function.MathFunction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * This class evaluates one compiled expression over many rows of variable values.
+ * The values are given as columns: columns[slot][row] is the value of a variable in a row.
+ * <p>
+ * Instead of walking the tree once per row, the tree is walked once per block of rows and each
+ * operator is applied to the whole block in a simple loop over arrays. HotSpot's C2 compiler
+ * turns these loops into SIMD instructions where the hardware supports them.
+ * A batch evaluator reuses its temporary buffers, so an instance must not be used by several threads at once.
+ */
+public class BatchEvaluator {
+    static final int BLOCK_SIZE = 1024;
+
+    private final CompiledExpression compiledExpression;
+    private final CompiledNode root;
+    private final double[][] columns;
+    private final List<double[]> buffers = new ArrayList<>();
+
+    /**
+     * Create an evaluator for the given columns. The tree of the expression is rebuilt from its program
+     * here, so an evaluator should be reused for as many rows as possible. The columns are not copied,
+     * so new values can be written to them between evaluations.
+     */
+    public BatchEvaluator(CompiledExpression compiledExpression, double[][] columns){
+        this(compiledExpression, compiledExpression.root(), columns);
+    }
+
+    /**
+     * Create an evaluator that shares a tree that was already rebuilt from the program of the expression.
+     */
+    BatchEvaluator(CompiledExpression compiledExpression, CompiledNode root, double[][] columns){
+        if(columns.length < compiledExpression.variableCount())
+            throw new IllegalArgumentException(String.format(
+                    "Expected %s columns but got %s", compiledExpression.variableCount(), columns.length));
+
+        this.compiledExpression = compiledExpression;
+        this.root = root;
+        this.columns = columns;
+    }
+
+    /**
+     * The expression that this evaluator evaluates.
+     */
+    public CompiledExpression compiledExpression(){
+        return compiledExpression;
+    }
+
+    /**
+     * Evaluate the expression for the rows "from" (inclusive) to "to" (exclusive) and
+     * write the results to the same rows of "out".
+     */
+    public void evaluate(double[] out, int from, int to){
+        validateRows(out, from, to);
+
+        for (int blockStart = from; blockStart < to; blockStart += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, to - blockStart);
+            evaluateInto(root, out, blockStart, blockStart, length, 0);
+        }
+    }
+
+    /**
+     * Evaluate the expression for every row, splitting the rows into chunks that are evaluated
+     * in parallel by the given pool. Each chunk writes to its own part of "out", so the threads
+     * never need to synchronize with each other.
+     * @param compiledExpression The expression to evaluate
+     * @param columns The values of each variable, indexed by slot and then by row
+     * @param out The array that receives the result of each row. Its length is the number of rows.
+     * @param pool The pool whose threads evaluate the chunks
+     */
+    public static void evaluateParallel(CompiledExpression compiledExpression, double[][] columns, double[] out,
+                                        ForkJoinPool pool) {
+        BatchEvaluator batchEvaluator = new BatchEvaluator(compiledExpression, columns);
+        batchEvaluator.validateRows(out, 0, out.length);
+        // every chunk shares the tree, which is only rebuilt once
+        pool.invoke(new ParallelBatchTask(compiledExpression, batchEvaluator.root, columns, out, 0, out.length));
+    }
+
+    private void validateRows(double[] out, int from, int to){
+        if(from < 0 || to > out.length || from > to)
+            throw new IndexOutOfBoundsException(String.format("Invalid rows %s to %s of %s", from, to, out.length));
+
+        for (int slot = 0; slot < compiledExpression.variableCount(); slot++) {
+            if(columns[slot].length < to)
+                throw new IllegalArgumentException(String.format(
+                        "The column of variable \"%s\" has %s rows but %s are needed",
+                        compiledExpression.variableName(slot), columns[slot].length, to));
+        }
+    }
+
+    /**
+     * Write the values of a node for "length" rows, starting at row "row", into "target" starting at "offset".
+     * @param depth The number of temporary buffers already in use by the callers
+     */
+    private void evaluateInto(CompiledNode node, double[] target, int offset, int row, int length, int depth){
+        if(node instanceof CompiledConstant){
+            Arrays.fill(target, offset, offset + length, ((CompiledConstant) node).value());
+        } else if(node instanceof CompiledVariable){
+            System.arraycopy(columns[((CompiledVariable) node).slot()], row, target, offset, length);
+        } else if(node instanceof CompiledOperation){
+            CompiledOperation operation = (CompiledOperation) node;
+            evaluateInto(operation.left(), target, offset, row, length, depth);
+            applyOperator(operation, target, offset, row, length, depth);
+        } else if(node instanceof CompiledFunction){
+            applyFunction((CompiledFunction) node, target, offset, row, length, depth);
+        } else {
+            throw new IllegalArgumentException("Unexpected node: " + node.getClass().getName());
+        }
+    }
+
+    /**
+     * Apply the operator of "operation" to the block in "target", which already holds the values of
+     * the left operand. Constant and variable right operands are read in place; any other right operand
+     * is first evaluated into a temporary buffer.
+     */
+    private void applyOperator(CompiledOperation operation, double[] target, int offset, int row, int length,
+                               int depth) {
+        CompiledNode right = operation.right();
+
+        if(right instanceof CompiledConstant){
+            applyScalar(operation, target, offset, length, ((CompiledConstant) right).value());
+            return;
+        }
+
+        double[] rightValues;
+        int rightOffset;
+        if(right instanceof CompiledVariable){
+            rightValues = columns[((CompiledVariable) right).slot()];
+            rightOffset = row;
+        } else {
+            rightValues = buffer(depth);
+            rightOffset = 0;
+            evaluateInto(right, rightValues, 0, row, length, depth + 1);
+        }
+
+        applyVector(operation, target, offset, rightValues, rightOffset, length);
+    }
+
+    /**
+     * Write the results of a function call into "target". The first argument is evaluated into "target"
+     * and each other argument into its own temporary buffer, then the function is applied row by row.
+     */
+    private void applyFunction(CompiledFunction call, double[] target, int offset, int row, int length, int depth) {
+        int argumentCount = call.argumentCount();
+        evaluateInto(call.argument(0), target, offset, row, length, depth + argumentCount - 1);
+        for (int i = 1; i < argumentCount; i++)
+            evaluateInto(call.argument(i), buffer(depth + i - 1), 0, row, length, depth + argumentCount - 1);
+
+        MathFunction function = call.function();
+        int end = offset + length;
+        if(function.arity() == 1){
+            DoubleUnaryOperator operator = function.unaryOperator();
+            for (int i = offset; i < end; i++)
+                target[i] = operator.applyAsDouble(target[i]);
+        } else if(function.arity() == 2){
+            DoubleBinaryOperator operator = function.binaryOperator();
+            double[] second = buffer(depth);
+            for (int i = offset; i < end; i++)
+                target[i] = operator.applyAsDouble(target[i], second[i - offset]);
+        } else {
+            double[] arguments = new double[argumentCount];
+            double[][] others = new double[argumentCount][];
+            for (int j = 1; j < argumentCount; j++)
+                others[j] = buffer(depth + j - 1);
+
+            for (int i = offset; i < end; i++) {
+                arguments[0] = target[i];
+                for (int j = 1; j < argumentCount; j++)
+                    arguments[j] = others[j][i - offset];
+                target[i] = function.apply(arguments, 0, argumentCount);
+            }
+        }
+    }
+
+    private void applyScalar(CompiledOperation operation, double[] target, int offset, int length, double value) {
+        int end = offset + length;
+        switch (operation.operator()) {
+            case Exponent:
+                for (int i = offset; i < end; i++)
+                    target[i] = Math.pow(target[i], value);
+                break;
+            case Division:
+                for (int i = offset; i < end; i++)
+                    target[i] = target[i] / value;
+                break;
+            case Multiplication:
+                for (int i = offset; i < end; i++)
+                    target[i] = target[i] * value;
+                break;
+            case Addition:
+                for (int i = offset; i < end; i++)
+                    target[i] = target[i] + value;
+                break;
+            case Subtraction:
+                for (int i = offset; i < end; i++)
+                    target[i] = target[i] - value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected operator: " + operation.operator().name());
+        }
+    }
+
+    private void applyVector(CompiledOperation operation, double[] target, int offset,
+                             double[] values, int valuesOffset, int length) {
+        int end = offset + length;
+        int shift = valuesOffset - offset;
+        switch (operation.operator()) {
+            case Exponent:
+                for (int i = offset; i < end; i++)
+                    target[i] = Math.pow(target[i], values[i + shift]);
+                break;
+            case Division:
+                for (int i = offset; i < end; i++)
+                    target[i] = target[i] / values[i + shift];
+                break;
+            case Multiplication:
+                for (int i = offset; i < end; i++)
+                    target[i] = target[i] * values[i + shift];
+                break;
+            case Addition:
+                for (int i = offset; i < end; i++)
+                    target[i] = target[i] + values[i + shift];
+                break;
+            case Subtraction:
+                for (int i = offset; i < end; i++)
+                    target[i] = target[i] - values[i + shift];
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected operator: " + operation.operator().name());
+        }
+    }
+
+    /**
+     * Get the temporary buffer for the given depth, creating it the first time it is needed.
+     */
+    private double[] buffer(int depth) {
+        while (buffers.size() <= depth)
+            buffers.add(new double[BLOCK_SIZE]);
+
+        return buffers.get(depth);
+    }
+}
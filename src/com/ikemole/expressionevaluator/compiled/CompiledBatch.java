@@ -0,0 +1,113 @@
+package com.ikemole.expressionevaluator.compiled;
+
+/**
+ * Several math expressions compiled together into a single program, such as a set of formulas that repeat
+ * the same sub-expressions.
+ * <p>
+ * The expressions are optimised together, so a subtree that appears in several of them, like "(rate/12)",
+ * becomes one shared node and is computed once per evaluation of the batch, however many expressions use it.
+ * The expressions share their variables: each name has one slot, numbered in order of first appearance
+ * across the batch.
+ * <p>
+ * A compiled batch is immutable and can be shared between threads. Like a CompiledExpression, it runs on
+ * the operand stack held by the VariableBindings, so evaluating it allocates nothing.
+ */
+public final class CompiledBatch {
+    private final String[] expressions;
+    private final String[] variableNames;
+    private final CompiledProgram program;
+    private final int deduplicatedCount;
+
+    CompiledBatch(String[] expressions, CompiledNode[] roots, String[] variableNames, int deduplicatedCount){
+        this.expressions = expressions;
+        this.variableNames = variableNames;
+        this.program = CompiledProgram.compile(roots);
+        this.deduplicatedCount = deduplicatedCount;
+    }
+
+    /**
+     * The number of expressions in the batch.
+     */
+    public int size() {
+        return expressions.length;
+    }
+
+    public String expression(int index) {
+        return expressions[index];
+    }
+
+    /**
+     * Rebuild the optimised tree of an expression from the program of the batch. Its subtrees are shared with
+     * the trees of the other expressions only within this call.
+     */
+    public CompiledNode root(int index) {
+        return program.toTrees(variableNames)[index];
+    }
+
+    public CompiledProgram program() {
+        return program;
+    }
+
+    /**
+     * The number of operations and calls that were found more than once in the batch and are shared
+     * instead of being computed again.
+     */
+    public int deduplicatedCount() {
+        return deduplicatedCount;
+    }
+
+    public int variableCount() {
+        return variableNames.length;
+    }
+
+    public String variableName(int slot) {
+        return variableNames[slot];
+    }
+
+    /**
+     * Get the slot of a variable. This should be looked up once, not for every evaluation.
+     * @param name The name of the variable
+     * @return The index of the variable in a VariableBindings object
+     */
+    public int slotOf(String name) {
+        for (int i = 0; i < variableNames.length; i++) {
+            if(variableNames[i].equals(name))
+                return i;
+        }
+
+        throw new IllegalArgumentException(String.format("The variable \"%s\" is not used in the batch", name));
+    }
+
+    /**
+     * Create a bindings object with a slot for every variable of the batch.
+     */
+    public VariableBindings newBindings() {
+        return new VariableBindings(variableNames.length);
+    }
+
+    /**
+     * Evaluate every expression of the batch with the given variable values.
+     * @param bindings The values of the variables of the batch
+     * @param results The array that receives the result of each expression, indexed like the expressions
+     */
+    public void evaluate(VariableBindings bindings, double[] results) {
+        if(bindings.size() < variableNames.length)
+            throw new IllegalArgumentException(String.format(
+                    "Expected bindings for %s variables but got %s", variableNames.length, bindings.size()));
+        if(results.length < expressions.length)
+            throw new IllegalArgumentException(String.format(
+                    "Expected room for %s results but got %s", expressions.length, results.length));
+
+        program.evaluate(bindings.values(), bindings.operandStack(program.maxStackDepth()), results);
+    }
+
+    /**
+     * Evaluate every expression of the batch with the given variable values.
+     * @return The result of each expression, indexed like the expressions
+     */
+    public double[] evaluate(VariableBindings bindings) {
+        double[] results = new double[expressions.length];
+        evaluate(bindings, results);
+        return results;
+    }
+}
@@ -0,0 +1,45 @@
+package com.ikemole.expressionevaluator.compiled;
+
+/**
+ * A compiled node that always evaluates to the same number.
+ */
+public final class CompiledConstant extends CompiledNode {
+    private final double value;
+    private final String literal;
+
+    public CompiledConstant(double value){
+        this(value, null);
+    }
+
+    /**
+     * @param value The number, rounded to the nearest double
+     * @param literal The number exactly as it was written in the expression, or null if it was computed
+     */
+    public CompiledConstant(double value, String literal){
+        this.value = value;
+        this.literal = literal;
+    }
+
+    public double value() {
+        return value;
+    }
+
+    /**
+     * The number exactly as it was written in the expression, which exact arithmetic reads instead of the
+     * rounded double. It is null for a computed number or a named constant, and in expressions compiled for
+     * double arithmetic.
+     */
+    public String literal() {
+        return literal;
+    }
+
+    @Override
+    public double evaluate(double[] variables) {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,167 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import com.ikemole.expressionevaluator.compiled.bytecode.BytecodeCompiler;
+
+/**
+ * A math expression that has been parsed once into an immutable program.
+ * A compiled expression can be evaluated repeatedly without re-parsing the expression
+ * and without allocating anything. It is safe to share a compiled expression between threads.
+ * Each variable in the expression is given a slot, numbered in order of first appearance.
+ * <p>
+ * Evaluation runs the tree flattened into a postfix program on a reusable double[] operand stack.
+ * The stack is held by the VariableBindings, or by the current thread for expressions without variables.
+ * Only the program is kept, not the tree, so that a cache can hold many compiled expressions.
+ * <p>
+ * Like a tiered compiler, a compiled expression can start by running its program and switch to a
+ * generated JVM class once it has been evaluated a given number of times (the JIT threshold).
+ * The switch happens on the thread that reaches the threshold. If the class cannot be generated,
+ * the expression keeps running its program.
+ */
+public final class CompiledExpression {
+    public static final int JIT_DISABLED = 0;
+    private static final ThreadLocal<VariableBindings> NO_VARIABLE_BINDINGS =
+            ThreadLocal.withInitial(() -> new VariableBindings(0));
+
+    private final String expression;
+    private final CompiledProgram program;
+    private final String[] variableNames;
+
+    // null until the expression is compiled to bytecode
+    private volatile ExpressionFunction function;
+    // This counter is not atomic on purpose. A lost update only delays the switch to bytecode,
+    // and a class generated twice by racing threads is harmless.
+    private int evaluationsUntilJit;
+
+    public CompiledExpression(String expression, CompiledNode root, String[] variableNames){
+        this(expression, root, variableNames, JIT_DISABLED);
+    }
+
+    /**
+     * @param jitThreshold The number of evaluations after which the expression is compiled to
+     *                     bytecode, or JIT_DISABLED to always run the program
+     */
+    public CompiledExpression(String expression, CompiledNode root, String[] variableNames, int jitThreshold){
+        this(expression, CompiledProgram.compile(root), variableNames, jitThreshold);
+    }
+
+    /**
+     * Create a compiled expression from a program that was already flattened, such as one read from a store.
+     */
+    CompiledExpression(String expression, CompiledProgram program, String[] variableNames, int jitThreshold){
+        this.expression = expression;
+        this.variableNames = variableNames;
+        this.program = program;
+        this.evaluationsUntilJit = Math.max(jitThreshold, JIT_DISABLED);
+    }
+
+    /**
+     * The expression that was compiled.
+     */
+    public String expression() {
+        return expression;
+    }
+
+    /**
+     * Rebuild the optimised tree of the expression from its program. The tree is not kept, so each call
+     * builds a new one.
+     */
+    public CompiledNode root() {
+        return program.toTrees(variableNames)[0];
+    }
+
+    public CompiledProgram program() {
+        return program;
+    }
+
+    public int variableCount() {
+        return variableNames.length;
+    }
+
+    public String variableName(int slot) {
+        return variableNames[slot];
+    }
+
+    /**
+     * Get the slot of a variable. This should be looked up once, not for every evaluation.
+     * @param name The name of the variable
+     * @return The index of the variable in a VariableBindings object
+     */
+    public int slotOf(String name) {
+        for (int i = 0; i < variableNames.length; i++) {
+            if(variableNames[i].equals(name))
+                return i;
+        }
+
+        throw new IllegalArgumentException(String.format(
+                "The variable \"%s\" is not used in the expression \"%s\"", name, expression));
+    }
+
+    /**
+     * Create a bindings object with a slot for every variable of this expression.
+     */
+    public VariableBindings newBindings() {
+        return new VariableBindings(variableNames.length);
+    }
+
+    /**
+     * Evaluate the compiled expression and return the result.
+     * This can only be used if the expression has no variables.
+     */
+    public double evaluate() {
+        if(variableNames.length > 0)
+            throw new IllegalArgumentException("The expression has variables that must be bound: " + expression);
+
+        return run(NO_VARIABLE_BINDINGS.get());
+    }
+
+    /**
+     * Evaluate the compiled expression with the given variable values and return the result.
+     */
+    public double evaluate(VariableBindings bindings) {
+        if(bindings.size() < variableNames.length)
+            throw new IllegalArgumentException(String.format(
+                    "Expected bindings for %s variables but got %s", variableNames.length, bindings.size()));
+
+        return run(bindings);
+    }
+
+    private double run(VariableBindings bindings) {
+        if(evaluationsUntilJit > 0 && --evaluationsUntilJit == 0)
+            compileToBytecodeIfPossible();
+
+        ExpressionFunction function = this.function;
+        if(function != null)
+            return function.evaluate(bindings.values());
+
+        return program.evaluate(bindings.values(), bindings.operandStack(program.maxStackDepth()));
+    }
+
+    /**
+     * Generate a JVM class for this expression and use it for every later evaluation.
+     * @throws IllegalArgumentException If the expression is too large to be compiled to bytecode
+     */
+    public void compileToBytecode() {
+        evaluationsUntilJit = JIT_DISABLED;
+        function = BytecodeCompiler.compile(root());
+    }
+
+    private void compileToBytecodeIfPossible() {
+        try {
+            compileToBytecode();
+        } catch (RuntimeException | LinkageError e) {
+            // keep running the program, also when the generated class cannot be defined or verified
+        }
+    }
+
+    /**
+     * Check if evaluations use a generated JVM class rather than running the program.
+     */
+    public boolean isCompiledToBytecode() {
+        return function != null;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
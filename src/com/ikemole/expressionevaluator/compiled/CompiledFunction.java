@@ -0,0 +1,49 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import com.ikemole.expressionevaluator.function.MathFunction;
+
+/**
+ * A compiled node that calls a function with the results of its arguments.
+ * The function was resolved when the expression was parsed, so the call is direct.
+ */
+public final class CompiledFunction extends CompiledNode {
+    private final MathFunction function;
+    private final CompiledNode[] arguments;
+
+    public CompiledFunction(MathFunction function, CompiledNode[] arguments){
+        this.function = function;
+        this.arguments = arguments;
+    }
+
+    public MathFunction function() {
+        return function;
+    }
+
+    public int argumentCount() {
+        return arguments.length;
+    }
+
+    public CompiledNode argument(int index) {
+        return arguments[index];
+    }
+
+    @Override
+    public double evaluate(double[] variables) {
+        double[] values = new double[arguments.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = arguments[i].evaluate(variables);
+
+        return function.apply(values, 0, values.length);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(function.name()).append('(');
+        for (int i = 0; i < arguments.length; i++) {
+            if(i > 0)
+                sb.append(',');
+            sb.append(arguments[i]);
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,17 @@
+package com.ikemole.expressionevaluator.compiled;
+
+/**
+ * This class represents a node in the tree of a compiled expression.
+ * Unlike the nodes of an ExpressionChain, compiled nodes are immutable and are never
+ * consumed by evaluation. Therefore, the same tree can be evaluated any number of times
+ * and from any number of threads.
+ */
+public abstract class CompiledNode implements ExpressionFunction {
+
+    /**
+     * Evaluate the sub-expression represented by this node.
+     * @param variables The values of the variables, indexed by slot
+     */
+    @Override
+    public abstract double evaluate(double[] variables);
+}
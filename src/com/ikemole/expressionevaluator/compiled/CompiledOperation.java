@@ -0,0 +1,60 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import com.ikemole.expressionevaluator.structure.node.ExpressionNodeType;
+
+/**
+ * A compiled node that applies an operator to the results of its left and right operands.
+ */
+public final class CompiledOperation extends CompiledNode {
+    private final ExpressionNodeType operator;
+    private final CompiledNode left;
+    private final CompiledNode right;
+
+    public CompiledOperation(ExpressionNodeType operator, CompiledNode left, CompiledNode right){
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    public ExpressionNodeType operator() {
+        return operator;
+    }
+
+    public CompiledNode left() {
+        return left;
+    }
+
+    public CompiledNode right() {
+        return right;
+    }
+
+    @Override
+    public double evaluate(double[] variables) {
+        return apply(operator, left.evaluate(variables), right.evaluate(variables));
+    }
+
+    /**
+     * Apply an operator to two values.
+     */
+    public static double apply(ExpressionNodeType operator, double leftVal, double rightVal) {
+        switch (operator) {
+            case Exponent:
+                return Math.pow(leftVal, rightVal);
+            case Division:
+                return leftVal / rightVal;
+            case Multiplication:
+                return leftVal * rightVal;
+            case Addition:
+                return leftVal + rightVal;
+            case Subtraction:
+                return leftVal - rightVal;
+            default:
+                throw new IllegalArgumentException("Unexpected operator: " + operator.name());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(%s%s%s)", left, operator.operatorStr(), right);
+    }
+}
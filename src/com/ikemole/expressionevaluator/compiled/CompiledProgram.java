@@ -0,0 +1,700 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.function.FunctionRegistry;
+import com.ikemole.expressionevaluator.function.MathFunction;
+import com.ikemole.expressionevaluator.structure.node.ExpressionNodeType;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The tree of a compiled expression flattened into a postfix (reverse Polish) program.
+ * The program is run by a single loop over its instructions that pushes operands to, and applies
+ * operators on, a primitive double[] stack. Since the caller supplies the stack, running a
+ * program allocates nothing.
+ * <p>
+ * Each instruction is an opcode with an operand: the index of a constant for CONSTANT,
+ * the slot of a variable for VARIABLE, the index of a temporary for STORE and LOAD,
+ * the index of a call for CALL, and nothing for the operators. Each call has its function and
+ * its number of arguments, which it takes from the top of the stack and replaces with the result.
+ * <p>
+ * A subtree that is shared by several operations is computed once: its result is stored in a
+ * temporary, kept in the operand stack array above the deepest stack position, and loaded again
+ * wherever the subtree is used after that.
+ * <p>
+ * A program can compute several roots, such as the expressions of a CompiledBatch, one after the other.
+ * The result of each root stays on the stack, so after a run the result of root i is at index i, and a
+ * subtree shared by several roots is still computed only once.
+ * <p>
+ * The program is the form in which compiled expressions are kept: three primitive arrays, rather than a tree
+ * of objects, so a compiled expression is small and its evaluation reads memory in order. The tree can be
+ * rebuilt from the program when it is needed, such as to generate bytecode.
+ * <p>
+ * A program compiled for exact arithmetic also keeps each constant as it was written in the expression,
+ * since the double it was read as may be rounded.
+ */
+public final class CompiledProgram {
+    static final byte CONSTANT = 0;
+    static final byte VARIABLE = 1;
+    static final byte ADD = 2;
+    static final byte SUBTRACT = 3;
+    static final byte MULTIPLY = 4;
+    static final byte DIVIDE = 5;
+    static final byte POWER = 6;
+    static final byte STORE = 7;
+    static final byte LOAD = 8;
+    static final byte CALL = 9;
+
+    private final byte[] opcodes;
+    private final int[] operands;
+    private final double[] constants;
+    private final String[] literals; // null unless the program was compiled for exact arithmetic
+    private final MathFunction[] functions;
+    private final int[] argumentCounts;
+    private final int maxStackDepth;
+    private final int temporaryCount;
+    private final int rootCount;
+    private final int operatorCount;
+
+    private CompiledProgram(byte[] opcodes, int[] operands, double[] constants, String[] literals,
+                            MathFunction[] functions, int[] argumentCounts, int maxStackDepth, int temporaryCount,
+                            int rootCount){
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.constants = constants;
+        this.literals = literals;
+        this.functions = functions;
+        this.argumentCounts = argumentCounts;
+        this.maxStackDepth = maxStackDepth;
+        this.temporaryCount = temporaryCount;
+        this.rootCount = rootCount;
+        this.operatorCount = countOperators(opcodes);
+    }
+
+    private static int countOperators(byte[] opcodes){
+        int count = 0;
+        for (byte opcode : opcodes) {
+            if(opcode >= ADD && opcode <= POWER || opcode == CALL)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Flatten a compiled tree into a program. The operands of each operator are emitted left first,
+     * so the program performs exactly the same operations, in the same order, as the tree.
+     */
+    public static CompiledProgram compile(CompiledNode root){
+        return compile(new CompiledNode[]{root});
+    }
+
+    /**
+     * Flatten several compiled trees into one program that computes each of them in turn.
+     * The trees should be optimised together, so that the subtrees they have in common are the same nodes.
+     */
+    public static CompiledProgram compile(CompiledNode[] roots){
+        Writer writer = new Writer(roots);
+        for (CompiledNode root : roots)
+            writer.write(root);
+        return writer.toProgram(roots.length);
+    }
+
+    /**
+     * The size of the operand stack needed to run this program, including its temporaries.
+     */
+    public int maxStackDepth() {
+        return maxStackDepth + temporaryCount;
+    }
+
+    public int length() {
+        return opcodes.length;
+    }
+
+    /**
+     * The number of trees that the program computes, which is 1 for the program of a single expression.
+     */
+    public int rootCount() {
+        return rootCount;
+    }
+
+    /**
+     * The number of operators and calls that one run of the program computes.
+     * A shared subtree is only counted once, since it is only computed once.
+     */
+    public int operatorCount() {
+        return operatorCount;
+    }
+
+    int constantCount() {
+        return constants.length;
+    }
+
+    double constant(int index) {
+        return constants[index];
+    }
+
+    /**
+     * The constant exactly as it was written in the expression, or null if it was computed or named,
+     * or the program was not compiled for exact arithmetic.
+     */
+    String literal(int index) {
+        return literals == null ? null : literals[index];
+    }
+
+    /**
+     * Run the program.
+     * @param variables The values of the variables, indexed by slot
+     * @param stack The operand stack, with room for at least {@link #maxStackDepth()} values
+     * @return The result of the expression
+     */
+    public double evaluate(double[] variables, double[] stack){
+        byte[] opcodes = this.opcodes;
+        int[] operands = this.operands;
+        int temporaries = maxStackDepth;
+        int top = -1;
+
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case CONSTANT:
+                    stack[++top] = constants[operands[pc]];
+                    break;
+                case VARIABLE:
+                    stack[++top] = variables[operands[pc]];
+                    break;
+                case ADD:
+                    top--;
+                    stack[top] = stack[top] + stack[top + 1];
+                    break;
+                case SUBTRACT:
+                    top--;
+                    stack[top] = stack[top] - stack[top + 1];
+                    break;
+                case MULTIPLY:
+                    top--;
+                    stack[top] = stack[top] * stack[top + 1];
+                    break;
+                case DIVIDE:
+                    top--;
+                    stack[top] = stack[top] / stack[top + 1];
+                    break;
+                case POWER:
+                    top--;
+                    stack[top] = Math.pow(stack[top], stack[top + 1]);
+                    break;
+                case STORE:
+                    stack[temporaries + operands[pc]] = stack[top];
+                    break;
+                case LOAD:
+                    stack[++top] = stack[temporaries + operands[pc]];
+                    break;
+                case CALL:
+                    int call = operands[pc];
+                    int from = top - argumentCounts[call] + 1;
+                    stack[from] = functions[call].apply(stack, from, top + 1);
+                    top = from;
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected opcode: " + opcodes[pc]);
+            }
+        }
+
+        return stack[0];
+    }
+
+    /**
+     * Write the program in the binary form read by {@link #read(ByteBuffer, int, FunctionRegistry)}:
+     * the instructions, the constants, each call as the name of its function and its number of arguments,
+     * and the sizes of the stack. Functions are written by name, since their implementations are code.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(opcodes.length);
+        out.write(opcodes);
+        for (int operand : operands)
+            out.writeInt(operand);
+
+        out.writeInt(constants.length);
+        // raw bits, since writeDouble would replace every NaN with the canonical one
+        for (double constant : constants)
+            out.writeLong(Double.doubleToRawLongBits(constant));
+
+        out.writeInt(functions.length);
+        for (int i = 0; i < functions.length; i++) {
+            ExpressionStore.writeString(out, functions[i].name());
+            out.writeInt(argumentCounts[i]);
+        }
+
+        out.writeInt(maxStackDepth);
+        out.writeInt(temporaryCount);
+        out.writeInt(rootCount);
+    }
+
+    /**
+     * Read a program written by {@link #write(DataOutputStream)} and check that it can be run safely.
+     * @param in The buffer to read from, at the start of the program
+     * @param variableCount The number of variable slots the program may read
+     * @param functionRegistry The registry that the functions of the calls are looked up in, by name
+     * @throws BadExpressionException If a function is not in the registry, or does not accept its arguments
+     * @throws IllegalArgumentException If the program is not valid
+     */
+    static CompiledProgram read(ByteBuffer in, int variableCount, FunctionRegistry functionRegistry)
+            throws BadExpressionException
+    {
+        int length = ExpressionStore.readLength(in, 1 + 4);
+        byte[] opcodes = new byte[length];
+        in.get(opcodes);
+        int[] operands = new int[length];
+        for (int i = 0; i < length; i++)
+            operands[i] = in.getInt();
+
+        double[] constants = new double[ExpressionStore.readLength(in, 8)];
+        for (int i = 0; i < constants.length; i++)
+            constants[i] = Double.longBitsToDouble(in.getLong());
+
+        int callCount = ExpressionStore.readLength(in, 4 + 4);
+        MathFunction[] functions = new MathFunction[callCount];
+        int[] argumentCounts = new int[callCount];
+        for (int i = 0; i < callCount; i++) {
+            String name = ExpressionStore.readString(in);
+            functions[i] = functionRegistry.function(name);
+            argumentCounts[i] = in.getInt();
+            if(functions[i] == null)
+                throw new BadExpressionException(String.format("The function \"%s\" is not registered.", name));
+            if(!functions[i].accepts(argumentCounts[i]))
+                throw new BadExpressionException(String.format(
+                        "The function \"%s\" does not accept %s arguments.", name, argumentCounts[i]));
+        }
+
+        CompiledProgram program = new CompiledProgram(opcodes, operands, constants, null, functions,
+                argumentCounts, in.getInt(), in.getInt(), in.getInt());
+        program.validate(variableCount);
+        return program;
+    }
+
+    /**
+     * Check that every operand is in range and that the stack never goes below empty or above its size,
+     * so that running a program that was read from a file cannot fail or read the wrong memory.
+     */
+    private void validate(int variableCount){
+        if(maxStackDepth < 0 || temporaryCount < 0 || rootCount < 1)
+            throw new IllegalArgumentException("Invalid stack sizes");
+
+        int depth = 0;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            int operand = operands[pc];
+            switch (opcodes[pc]) {
+                case CONSTANT:
+                    checkOperand(operand, constants.length, pc);
+                    depth++;
+                    break;
+                case VARIABLE:
+                    checkOperand(operand, variableCount, pc);
+                    depth++;
+                    break;
+                case LOAD:
+                    checkOperand(operand, temporaryCount, pc);
+                    depth++;
+                    break;
+                case STORE:
+                    checkOperand(operand, temporaryCount, pc);
+                    checkOperand(0, depth, pc);
+                    break;
+                case CALL:
+                    checkOperand(operand, functions.length, pc);
+                    checkOperand(argumentCounts[operand] - 1, depth, pc);
+                    depth -= argumentCounts[operand] - 1;
+                    break;
+                case ADD:
+                case SUBTRACT:
+                case MULTIPLY:
+                case DIVIDE:
+                case POWER:
+                    checkOperand(1, depth, pc);
+                    depth--;
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Unexpected opcode %s at %s", opcodes[pc], pc));
+            }
+            if(depth > maxStackDepth)
+                throw new IllegalArgumentException("The stack is deeper than its size at " + pc);
+        }
+
+        if(depth != rootCount)
+            throw new IllegalArgumentException(String.format("Expected %s results but got %s", rootCount, depth));
+    }
+
+    private static void checkOperand(int operand, int limit, int pc){
+        if(operand < 0 || operand >= limit)
+            throw new IllegalArgumentException(String.format("Operand %s out of range at %s", operand, pc));
+    }
+
+    /**
+     * An estimate of the memory taken by the program, in bytes: its object and its arrays.
+     */
+    long estimatedBytes() {
+        return 48 + 5 * 16
+                + opcodes.length + 4L * operands.length + 8L * constants.length
+                + 4L * functions.length + 4L * argumentCounts.length;
+    }
+
+    /**
+     * Rebuild the trees that the program computes. A subtree that the program computes once and loads again
+     * is a single shared node, and each variable is a single node, as in the optimised trees it was made from.
+     * @param variableNames The names of the variables, indexed by slot
+     * @return The root of each tree, indexed like the roots
+     */
+    CompiledNode[] toTrees(String[] variableNames){
+        CompiledVariable[] variables = new CompiledVariable[variableNames.length];
+        CompiledNode[] temporaries = new CompiledNode[temporaryCount];
+        CompiledNode[] stack = new CompiledNode[maxStackDepth];
+        int top = -1;
+
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            int operand = operands[pc];
+            switch (opcodes[pc]) {
+                case CONSTANT:
+                    stack[++top] = new CompiledConstant(constants[operand]);
+                    break;
+                case VARIABLE:
+                    if(variables[operand] == null)
+                        variables[operand] = new CompiledVariable(variableNames[operand], operand);
+                    stack[++top] = variables[operand];
+                    break;
+                case STORE:
+                    temporaries[operand] = stack[top];
+                    break;
+                case LOAD:
+                    stack[++top] = temporaries[operand];
+                    break;
+                case CALL:
+                    int from = top - argumentCounts[operand] + 1;
+                    stack[from] = new CompiledFunction(functions[operand], Arrays.copyOfRange(stack, from, top + 1));
+                    top = from;
+                    break;
+                default:
+                    top--;
+                    stack[top] = new CompiledOperation(operatorOf(opcodes[pc]), stack[top], stack[top + 1]);
+            }
+        }
+
+        return Arrays.copyOf(stack, rootCount);
+    }
+
+    private static ExpressionNodeType operatorOf(byte opcode){
+        switch (opcode) {
+            case ADD:
+                return ExpressionNodeType.Addition;
+            case SUBTRACT:
+                return ExpressionNodeType.Subtraction;
+            case MULTIPLY:
+                return ExpressionNodeType.Multiplication;
+            case DIVIDE:
+                return ExpressionNodeType.Division;
+            case POWER:
+                return ExpressionNodeType.Exponent;
+            default:
+                throw new IllegalStateException("Unexpected opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Run a program of several roots and copy the result of each root.
+     * @param variables The values of the variables, indexed by slot
+     * @param stack The operand stack, with room for at least {@link #maxStackDepth()} values
+     * @param results The array that receives the result of each root, indexed like the roots
+     */
+    public void evaluate(double[] variables, double[] stack, double[] results){
+        evaluate(variables, stack);
+        System.arraycopy(stack, 0, results, 0, rootCount);
+    }
+
+    /**
+     * Run the program with long arithmetic. There must be no calls.
+     * @param constants The constants of the program as longs
+     * @param variables The values of the variables, indexed by slot
+     * @param stack The operand stack, with room for at least {@link #maxStackDepth()} values
+     * @return The result of the expression
+     * @throws ArithmeticException If a result overflows a long or is not a whole number
+     */
+    long evaluateLong(long[] constants, long[] variables, long[] stack){
+        byte[] opcodes = this.opcodes;
+        int[] operands = this.operands;
+        int temporaries = maxStackDepth;
+        int top = -1;
+
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case CONSTANT:
+                    stack[++top] = constants[operands[pc]];
+                    break;
+                case VARIABLE:
+                    stack[++top] = variables[operands[pc]];
+                    break;
+                case ADD:
+                    top--;
+                    stack[top] = Math.addExact(stack[top], stack[top + 1]);
+                    break;
+                case SUBTRACT:
+                    top--;
+                    stack[top] = Math.subtractExact(stack[top], stack[top + 1]);
+                    break;
+                case MULTIPLY:
+                    top--;
+                    stack[top] = Math.multiplyExact(stack[top], stack[top + 1]);
+                    break;
+                case DIVIDE:
+                    top--;
+                    stack[top] = divideExact(stack[top], stack[top + 1]);
+                    break;
+                case POWER:
+                    top--;
+                    stack[top] = powerExact(stack[top], stack[top + 1]);
+                    break;
+                case STORE:
+                    stack[temporaries + operands[pc]] = stack[top];
+                    break;
+                case LOAD:
+                    stack[++top] = stack[temporaries + operands[pc]];
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected opcode: " + opcodes[pc]);
+            }
+        }
+
+        return stack[0];
+    }
+
+    private static long divideExact(long dividend, long divisor){
+        if(divisor == 0)
+            throw new ArithmeticException("Division by zero");
+        if(dividend == Long.MIN_VALUE && divisor == -1)
+            throw new ArithmeticException("long overflow");
+        if(dividend % divisor != 0)
+            throw new ArithmeticException(dividend + "/" + divisor + " is not a whole number");
+
+        return dividend / divisor;
+    }
+
+    private static long powerExact(long base, long exponent){
+        if(exponent < 0){
+            if(base == 1)
+                return 1;
+            if(base == -1)
+                return (exponent & 1) == 0 ? 1 : -1;
+            throw new ArithmeticException(base + "^" + exponent + " is not a whole number");
+        }
+
+        // square and multiply
+        long result = 1;
+        while (true) {
+            if((exponent & 1) != 0)
+                result = Math.multiplyExact(result, base);
+            exponent >>= 1;
+            if(exponent == 0)
+                return result;
+            base = Math.multiplyExact(base, base);
+        }
+    }
+
+    /**
+     * Run the program with BigDecimal arithmetic, rounding every result to the given context.
+     * There must be no calls.
+     * @param constants The constants of the program as BigDecimals
+     * @param variables The values of the variables, indexed by slot
+     * @param stack The operand stack, with room for at least {@link #maxStackDepth()} values
+     * @param mathContext The precision and rounding mode of every operation
+     * @return The result of the expression
+     * @throws ArithmeticException If a division or power cannot be computed exactly in an unlimited
+     *                             context, or an exponent is not a whole number of int range
+     */
+    BigDecimal evaluateDecimal(BigDecimal[] constants, BigDecimal[] variables, BigDecimal[] stack,
+                               MathContext mathContext){
+        byte[] opcodes = this.opcodes;
+        int[] operands = this.operands;
+        int temporaries = maxStackDepth;
+        int top = -1;
+
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case CONSTANT:
+                    stack[++top] = constants[operands[pc]];
+                    break;
+                case VARIABLE:
+                    stack[++top] = variables[operands[pc]];
+                    break;
+                case ADD:
+                    top--;
+                    stack[top] = stack[top].add(stack[top + 1], mathContext);
+                    break;
+                case SUBTRACT:
+                    top--;
+                    stack[top] = stack[top].subtract(stack[top + 1], mathContext);
+                    break;
+                case MULTIPLY:
+                    top--;
+                    stack[top] = stack[top].multiply(stack[top + 1], mathContext);
+                    break;
+                case DIVIDE:
+                    top--;
+                    stack[top] = stack[top].divide(stack[top + 1], mathContext);
+                    break;
+                case POWER:
+                    top--;
+                    stack[top] = stack[top].pow(stack[top + 1].intValueExact(), mathContext);
+                    break;
+                case STORE:
+                    stack[temporaries + operands[pc]] = stack[top];
+                    break;
+                case LOAD:
+                    stack[++top] = stack[temporaries + operands[pc]];
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected opcode: " + opcodes[pc]);
+            }
+        }
+
+        return stack[0];
+    }
+
+    /**
+     * Builds the instruction arrays while tracking the depth of the operand stack.
+     */
+    private static class Writer {
+        // the number of operations that use each node, and the temporary of each shared operation
+        private final Map<CompiledNode, Integer> useCounts = new IdentityHashMap<>();
+        private final Map<CompiledNode, Integer> temporaries = new IdentityHashMap<>();
+        private byte[] opcodes = new byte[16];
+        private int[] operands = new int[16];
+        private double[] constants = new double[8];
+        private String[] literals = new String[8];
+        private boolean hasLiterals;
+        private MathFunction[] functions = new MathFunction[0];
+        private int[] argumentCounts = new int[0];
+        private int length;
+        private int constantCount;
+        private int depth;
+        private int maxDepth;
+
+        Writer(CompiledNode[] roots){
+            for (CompiledNode root : roots)
+                countUses(root);
+        }
+
+        private void countUses(CompiledNode node){
+            if(useCounts.merge(node, 1, Integer::sum) > 1)
+                return;
+
+            if(node instanceof CompiledOperation){
+                countUses(((CompiledOperation) node).left());
+                countUses(((CompiledOperation) node).right());
+            } else if(node instanceof CompiledFunction){
+                CompiledFunction call = (CompiledFunction) node;
+                for (int i = 0; i < call.argumentCount(); i++)
+                    countUses(call.argument(i));
+            }
+        }
+
+        void write(CompiledNode node){
+            if(node instanceof CompiledConstant){
+                add(CONSTANT, addConstant((CompiledConstant) node));
+                push();
+            } else if(node instanceof CompiledVariable){
+                add(VARIABLE, ((CompiledVariable) node).slot());
+                push();
+            } else if(node instanceof CompiledOperation || node instanceof CompiledFunction){
+                Integer temporary = temporaries.get(node);
+                if(temporary != null){
+                    add(LOAD, temporary);
+                    push();
+                    return;
+                }
+
+                if(node instanceof CompiledOperation){
+                    CompiledOperation operation = (CompiledOperation) node;
+                    write(operation.left());
+                    write(operation.right());
+                    add(opcodeOf(operation), 0);
+                    depth--; // two operands in, one result out
+                } else {
+                    CompiledFunction call = (CompiledFunction) node;
+                    for (int i = 0; i < call.argumentCount(); i++)
+                        write(call.argument(i));
+                    add(CALL, addCall(call));
+                    depth -= call.argumentCount() - 1; // the arguments in, one result out
+                }
+
+                if(useCounts.get(node) > 1){
+                    temporaries.put(node, temporaries.size());
+                    add(STORE, temporaries.size() - 1);
+                }
+            } else {
+                throw new IllegalArgumentException("Unexpected node: " + node.getClass().getName());
+            }
+        }
+
+        private byte opcodeOf(CompiledOperation operation){
+            switch (operation.operator()) {
+                case Exponent:
+                    return POWER;
+                case Division:
+                    return DIVIDE;
+                case Multiplication:
+                    return MULTIPLY;
+                case Addition:
+                    return ADD;
+                case Subtraction:
+                    return SUBTRACT;
+                default:
+                    throw new IllegalArgumentException("Unexpected operator: " + operation.operator().name());
+            }
+        }
+
+        private void add(byte opcode, int operand){
+            if(length == opcodes.length){
+                opcodes = Arrays.copyOf(opcodes, length * 2);
+                operands = Arrays.copyOf(operands, length * 2);
+            }
+            opcodes[length] = opcode;
+            operands[length] = operand;
+            length++;
+        }
+
+        private int addConstant(CompiledConstant constant){
+            if(constantCount == constants.length){
+                constants = Arrays.copyOf(constants, constantCount * 2);
+                literals = Arrays.copyOf(literals, constantCount * 2);
+            }
+
+            constants[constantCount] = constant.value();
+            literals[constantCount] = constant.literal();
+            hasLiterals |= constant.literal() != null;
+            return constantCount++;
+        }
+
+        private int addCall(CompiledFunction call){
+            int index = functions.length;
+            functions = Arrays.copyOf(functions, index + 1);
+            argumentCounts = Arrays.copyOf(argumentCounts, index + 1);
+            functions[index] = call.function();
+            argumentCounts[index] = call.argumentCount();
+            return index;
+        }
+
+        private void push(){
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        CompiledProgram toProgram(int rootCount){
+            return new CompiledProgram(Arrays.copyOf(opcodes, length), Arrays.copyOf(operands, length),
+                    Arrays.copyOf(constants, constantCount), hasLiterals ? Arrays.copyOf(literals, constantCount) : null,
+                    functions, argumentCounts, maxDepth, temporaries.size(), rootCount);
+        }
+    }
+}
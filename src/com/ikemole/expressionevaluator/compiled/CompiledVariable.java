@@ -0,0 +1,33 @@
+package com.ikemole.expressionevaluator.compiled;
+
+/**
+ * A compiled node that evaluates to the value bound to a variable.
+ * The variable is resolved to a slot at compile time, so evaluation is a single array read.
+ */
+public final class CompiledVariable extends CompiledNode {
+    private final String name;
+    private final int slot;
+
+    public CompiledVariable(String name, int slot){
+        this.name = name;
+        this.slot = slot;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int slot() {
+        return slot;
+    }
+
+    @Override
+    public double evaluate(double[] variables) {
+        return variables[slot];
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,50 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import java.math.BigDecimal;
+
+/**
+ * The values of the variables of a DecimalExpression, indexed by slot.
+ * Like VariableBindings, a bindings object can be reused for every evaluation and holds the operand stack.
+ * It is not safe to use a bindings object from several threads at once.
+ */
+public final class DecimalBindings {
+    private static final BigDecimal[] EMPTY_STACK = new BigDecimal[0];
+
+    private final BigDecimal[] values;
+    private BigDecimal[] operandStack = EMPTY_STACK;
+
+    public DecimalBindings(int size){
+        this.values = new BigDecimal[size];
+    }
+
+    /**
+     * Set the value of the variable in the given slot.
+     * @return This bindings object, so that calls can be chained
+     */
+    public DecimalBindings set(int slot, BigDecimal value){
+        if(value == null)
+            throw new IllegalArgumentException("The value of a variable must not be null");
+
+        values[slot] = value;
+        return this;
+    }
+
+    public BigDecimal get(int slot){
+        return values[slot];
+    }
+
+    public int size(){
+        return values.length;
+    }
+
+    BigDecimal[] values() {
+        return values;
+    }
+
+    BigDecimal[] operandStack(int depth) {
+        if(operandStack.length < depth)
+            operandStack = new BigDecimal[depth];
+
+        return operandStack;
+    }
+}
@@ -0,0 +1,146 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * A compiled expression that is evaluated with BigDecimal arithmetic, for exact decimal results such as
+ * amounts of money. Every operation is rounded to the MathContext given when compiling. With
+ * MathContext.UNLIMITED nothing is rounded, and a division without an exact result throws an ArithmeticException.
+ * Exponents must be whole numbers.
+ * Like a CompiledExpression, it is immutable and can be shared between threads.
+ */
+public final class DecimalExpression {
+    // A whole number such as 6.02e23 is written out in full, so its number of digits must be bounded.
+    private static final int MAX_WHOLE_DIGITS = 100_000;
+    private static final ThreadLocal<DecimalBindings> NO_VARIABLE_BINDINGS =
+            ThreadLocal.withInitial(() -> new DecimalBindings(0));
+
+    private final CompiledExpression compiledExpression;
+    private final CompiledProgram program;
+    private final BigDecimal[] constants;
+    private final MathContext mathContext;
+
+    /**
+     * @param compiledExpression An expression compiled for exact arithmetic, without folding its constants
+     * @param mathContext The precision and rounding mode of every operation
+     * @throws BadExpressionException If a number of the expression has more than 100,000 digits before its point
+     */
+    DecimalExpression(CompiledExpression compiledExpression, MathContext mathContext) throws BadExpressionException {
+        if(mathContext == null)
+            throw new IllegalArgumentException("The math context must not be null");
+
+        this.compiledExpression = compiledExpression;
+        this.program = compiledExpression.program();
+        this.mathContext = mathContext;
+
+        this.constants = new BigDecimal[program.constantCount()];
+        for (int i = 0; i < constants.length; i++)
+            constants[i] = toDecimal(program.literal(i), program.constant(i), compiledExpression.expression());
+    }
+
+    /**
+     * Read a number of the expression exactly as it was written, since the double it was read as may be rounded.
+     * A named constant has no text, and is converted from its double.
+     * Whole numbers get a scale of zero, so that 6.02e23 is not 6.02E+23.
+     */
+    private static BigDecimal toDecimal(String literal, double value, String expression) throws BadExpressionException {
+        if(literal == null)
+            return toDecimal(value);
+
+        try {
+            BigDecimal decimal = new BigDecimal(literal);
+            if(decimal.precision() - decimal.scale() <= MAX_WHOLE_DIGITS)
+                return decimal.scale() < 0 ? decimal.setScale(0) : decimal;
+        } catch (NumberFormatException e) {
+            // an exponent out of the range of a BigDecimal
+        }
+
+        throw new BadExpressionException(String.format(
+                "The number %s in the expression \"%s\" is out of range.", literal, expression));
+    }
+
+    /**
+     * Convert a named constant to the shortest decimal that converts back to the same double.
+     * Whole numbers get a scale of zero, so that 2 is not 2.0.
+     */
+    private static BigDecimal toDecimal(double number) {
+        BigDecimal decimal = BigDecimal.valueOf(number).stripTrailingZeros();
+        return decimal.scale() < 0 ? decimal.setScale(0) : decimal;
+    }
+
+    /**
+     * The expression that was compiled.
+     */
+    public String expression() {
+        return compiledExpression.expression();
+    }
+
+    public MathContext mathContext() {
+        return mathContext;
+    }
+
+    public int variableCount() {
+        return compiledExpression.variableCount();
+    }
+
+    public String variableName(int slot) {
+        return compiledExpression.variableName(slot);
+    }
+
+    /**
+     * Get the slot of a variable. This should be looked up once, not for every evaluation.
+     */
+    public int slotOf(String name) {
+        return compiledExpression.slotOf(name);
+    }
+
+    /**
+     * Create a bindings object with a slot for every variable of this expression.
+     */
+    public DecimalBindings newBindings() {
+        return new DecimalBindings(variableCount());
+    }
+
+    /**
+     * Evaluate the expression and return the result.
+     * This can only be used if the expression has no variables.
+     * @throws ArithmeticException If a result cannot be computed in the math context
+     */
+    public BigDecimal evaluate() {
+        if(variableCount() > 0)
+            throw new IllegalArgumentException("The expression has variables that must be bound: " + expression());
+
+        return run(NO_VARIABLE_BINDINGS.get());
+    }
+
+    /**
+     * Evaluate the expression with the given variable values and return the result.
+     * @throws ArithmeticException If a result cannot be computed in the math context
+     */
+    public BigDecimal evaluate(DecimalBindings bindings) {
+        if(bindings.size() < variableCount())
+            throw new IllegalArgumentException(String.format(
+                    "Expected bindings for %s variables but got %s", variableCount(), bindings.size()));
+
+        for (int slot = 0; slot < variableCount(); slot++) {
+            if(bindings.get(slot) == null)
+                throw new IllegalArgumentException(String.format(
+                        "The variable \"%s\" has no value", variableName(slot)));
+        }
+
+        return run(bindings);
+    }
+
+    private BigDecimal run(DecimalBindings bindings) {
+        return program.evaluateDecimal(constants, bindings.values(),
+                bindings.operandStack(program.maxStackDepth()), mathContext);
+    }
+
+    @Override
+    public String toString() {
+        return expression();
+    }
+}
@@ -0,0 +1,218 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe cache of compiled expressions keyed by the text of the expression.
+ * <p>
+ * Lookups never take a lock: they read a ConcurrentHashMap and mark the entry as recently used.
+ * Insertions are serialized and evict entries with the CLOCK algorithm, an approximation of LRU:
+ * entries are kept in insertion order, and an entry that was used since the clock hand last passed
+ * it gets a second chance instead of being evicted.
+ * <p>
+ * Keys ignore whitespace that does not separate two numbers or names, so "2*3" and "2 * 3"
+ * share an entry while "1 2" and "12" do not.
+ */
+public class ExpressionCache {
+    private final long maximumWeight;
+    private final boolean weighByBytes;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // guarded by "this"
+    private final ArrayDeque<Entry> clock = new ArrayDeque<>();
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private ExpressionCache(long maximumWeight, boolean weighByBytes){
+        if(maximumWeight <= 0)
+            throw new IllegalArgumentException("The maximum size of the cache must be positive: " + maximumWeight);
+
+        this.maximumWeight = maximumWeight;
+        this.weighByBytes = weighByBytes;
+    }
+
+    /**
+     * Create a cache that holds at most the given number of expressions.
+     */
+    public static ExpressionCache withMaximumEntries(long maximumEntries){
+        return new ExpressionCache(maximumEntries, false);
+    }
+
+    /**
+     * Create a cache whose expressions take up roughly at most the given number of bytes.
+     */
+    public static ExpressionCache withMaximumBytes(long maximumBytes){
+        return new ExpressionCache(maximumBytes, true);
+    }
+
+    /**
+     * Get the compiled form of an expression.
+     * @param expression The text of the expression
+     * @return The compiled expression, or null if it is not in the cache
+     */
+    public CompiledExpression get(String expression){
+        Entry entry = entries.get(toKey(expression));
+        if(entry == null){
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        if(!entry.referenced)
+            entry.referenced = true;
+
+        return entry.compiledExpression;
+    }
+
+    /**
+     * Add the compiled form of an expression to the cache, evicting other expressions if the cache is full.
+     * @param expression The text of the expression
+     * @param compiledExpression The compiled expression
+     */
+    public void put(String expression, CompiledExpression compiledExpression){
+        String key = toKey(expression);
+        Entry entry = new Entry(key, compiledExpression, weigh(key, compiledExpression));
+
+        synchronized (this){
+            if(entries.putIfAbsent(key, entry) != null)
+                return;
+
+            clock.addLast(entry);
+            weight += entry.weight;
+            evictIfFull();
+        }
+    }
+
+    /**
+     * Advance the clock hand until the cache is within its maximum size.
+     * The newest entry is never evicted, even if it is larger than the whole cache on its own.
+     */
+    private void evictIfFull(){
+        while (weight > maximumWeight && clock.size() > 1){
+            Entry entry = clock.removeFirst();
+            if(entry.referenced){
+                entry.referenced = false;
+                clock.addLast(entry);
+            } else {
+                entries.remove(entry.key);
+                weight -= entry.weight;
+                evictions.increment();
+            }
+        }
+    }
+
+    private long weigh(String key, CompiledExpression compiledExpression){
+        if(!weighByBytes)
+            return 1;
+
+        // A rough estimate: the entry, the key and the expression text, and the arrays of the program.
+        return 96 + 2L * key.length() + 2L * compiledExpression.expression().length()
+                + compiledExpression.program().estimatedBytes();
+    }
+
+    /**
+     * Remove whitespace from the expression, except a single space where it separates
+     * two characters that could otherwise join into one number or name.
+     */
+    static String toKey(String expression){
+        int firstWhitespace = -1;
+        for (int i = 0; i < expression.length(); i++) {
+            if(Character.isWhitespace(expression.charAt(i))){
+                firstWhitespace = i;
+                break;
+            }
+        }
+
+        if(firstWhitespace < 0)
+            return expression;
+
+        StringBuilder sb = new StringBuilder(expression.length());
+        sb.append(expression, 0, firstWhitespace);
+        boolean pendingSpace = false;
+
+        for (int i = firstWhitespace; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if(Character.isWhitespace(c)){
+                pendingSpace = true;
+                continue;
+            }
+
+            if(pendingSpace && sb.length() > 0 && couldJoin(sb, c))
+                sb.append(' ');
+
+            sb.append(c);
+            pendingSpace = false;
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Check if the last character of the key and the next character would read differently without the
+     * whitespace between them: two parts of a name or number, such as "1 .5", an exponent marker and its
+     * sign, as in "3e +2", or a sign after an exponent marker and a digit, as in "3e+ 2".
+     */
+    private static boolean couldJoin(StringBuilder key, char next){
+        char last = key.charAt(key.length() - 1);
+        if((isWordChar(last) || last == '.') && (isWordChar(next) || next == '.'))
+            return true;
+
+        if(isExponentMarker(last))
+            return next == '+' || next == '-';
+
+        return (last == '+' || last == '-') && key.length() > 1 && isExponentMarker(key.charAt(key.length() - 2))
+                && Character.isDigit(next);
+    }
+
+    private static boolean isWordChar(char c){
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static boolean isExponentMarker(char c){
+        return c == 'e' || c == 'E';
+    }
+
+    public long hitCount(){
+        return hits.sum();
+    }
+
+    public long missCount(){
+        return misses.sum();
+    }
+
+    public long evictionCount(){
+        return evictions.sum();
+    }
+
+    /**
+     * The number of expressions in the cache.
+     */
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+     * The total weight of the cached expressions, in entries or estimated bytes.
+     */
+    public synchronized long weight(){
+        return weight;
+    }
+
+    private static class Entry {
+        private final String key;
+        private final CompiledExpression compiledExpression;
+        private final long weight;
+        private volatile boolean referenced;
+
+        Entry(String key, CompiledExpression compiledExpression, long weight){
+            this.key = key;
+            this.compiledExpression = compiledExpression;
+            this.weight = weight;
+        }
+    }
+}
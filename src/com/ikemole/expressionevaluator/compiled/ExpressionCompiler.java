@@ -0,0 +1,252 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.structure.ExpressionChain;
+import com.ikemole.expressionevaluator.structure.ExpressionChainBuilder;
+import com.ikemole.expressionevaluator.structure.node.BracketNode;
+import com.ikemole.expressionevaluator.structure.node.ExpressionNode;
+import com.ikemole.expressionevaluator.structure.node.ExpressionNodeType;
+import com.ikemole.expressionevaluator.structure.node.FunctionNode;
+import com.ikemole.expressionevaluator.structure.node.NumberNode;
+import com.ikemole.expressionevaluator.structure.node.VariableNode;
+
+import java.math.MathContext;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is used to compile a math expression into a CompiledExpression.
+ * The operators are visited in exactly the same order as the ExpressionEvaluator would
+ * process them, but instead of computing a value for each one, a compiled node is created.
+ * The resulting tree is then simplified by the ExpressionOptimizer.
+ */
+public class ExpressionCompiler {
+    private final ExpressionChainBuilder expressionChainBuilder;
+    private volatile int jitThreshold = CompiledExpression.JIT_DISABLED;
+
+    /**
+     * Create a compiler that knows the built-in functions and constants.
+     */
+    public ExpressionCompiler(){
+        this(new ExpressionChainBuilder());
+    }
+
+    /**
+     * Create a compiler that parses expressions with the given builder, and so with its functions and constants.
+     */
+    public ExpressionCompiler(ExpressionChainBuilder expressionChainBuilder){
+        this.expressionChainBuilder = expressionChainBuilder;
+    }
+
+    /**
+     * Set the number of evaluations after which a compiled expression switches to generated bytecode.
+     * @param jitThreshold A positive number of evaluations, or CompiledExpression.JIT_DISABLED
+     */
+    public void setJitThreshold(int jitThreshold) {
+        if(jitThreshold < 0)
+            throw new IllegalArgumentException("The JIT threshold must not be negative: " + jitThreshold);
+
+        this.jitThreshold = jitThreshold;
+    }
+
+    public int getJitThreshold() {
+        return jitThreshold;
+    }
+
+    /**
+     * Compile a math expression.
+     * @param expression A string containing a math expression
+     * @return The compiled expression
+     */
+    public CompiledExpression compile(String expression) throws BadExpressionException {
+        return compile(expression, true, jitThreshold);
+    }
+
+    /**
+     * Compile a math expression to be evaluated with exact long arithmetic.
+     * Functions cannot be called, since they compute doubles.
+     * @param expression A string containing a math expression with whole numbers
+     * @return The compiled expression
+     */
+    public LongExpression compileLong(String expression) throws BadExpressionException {
+        return new LongExpression(compile(expression, false, CompiledExpression.JIT_DISABLED));
+    }
+
+    /**
+     * Compile a math expression to be evaluated with BigDecimal arithmetic.
+     * Functions cannot be called, since they compute doubles.
+     * @param expression A string containing a math expression
+     * @param mathContext The precision and rounding mode of every operation
+     * @return The compiled expression
+     */
+    public DecimalExpression compileDecimal(String expression, MathContext mathContext) throws BadExpressionException {
+        return new DecimalExpression(compile(expression, false, CompiledExpression.JIT_DISABLED), mathContext);
+    }
+
+    /**
+     * Compile several math expressions together, so that the subtrees they have in common are computed once
+     * for each set of variable values. The expressions share their variables: a name has the same slot in all of them.
+     * @param expressions The expressions to compile
+     * @return The compiled batch
+     */
+    public CompiledBatch compileBatch(List<String> expressions) throws BadExpressionException {
+        if(expressions.isEmpty())
+            throw new IllegalArgumentException("A batch must have at least one expression");
+
+        Map<String, CompiledVariable> variables = new LinkedHashMap<>();
+        ExpressionOptimizer optimizer = ExpressionOptimizer.forBatch();
+        CompiledNode[] roots = new CompiledNode[expressions.size()];
+
+        for (int i = 0; i < roots.length; i++) {
+            String expression = expressions.get(i);
+            ExpressionChain expressionChain = expressionChainBuilder.build(expression);
+            collectVariables(expressionChain, variables);
+            roots[i] = optimizer.add(compileChain(expressionChain, expression, variables, false));
+        }
+
+        String[] variableNames = variables.keySet().toArray(new String[0]);
+        return new CompiledBatch(expressions.toArray(new String[0]), roots, variableNames,
+                optimizer.deduplicatedCount());
+    }
+
+    /**
+     * @param doubleArithmetic Whether the expression is evaluated with double arithmetic,
+     *                         which allows the optimiser to fold constants and remove identities
+     */
+    private CompiledExpression compile(String expression, boolean doubleArithmetic, int jitThreshold)
+            throws BadExpressionException
+    {
+        ExpressionChain expressionChain = expressionChainBuilder.build(expression);
+        Map<String, CompiledVariable> variables = new LinkedHashMap<>();
+        collectVariables(expressionChain, variables);
+        // exact arithmetic reads each number as it was written, not as the nearest double
+        CompiledNode root = compileChain(expressionChain, expression, variables, !doubleArithmetic);
+        if(!doubleArithmetic)
+            rejectFunctions(root, expression);
+
+        root = ExpressionOptimizer.optimize(root, doubleArithmetic);
+        String[] variableNames = variables.keySet().toArray(new String[0]);
+        return new CompiledExpression(expression, root, variableNames, jitThreshold);
+    }
+
+    /**
+     * Functions compute doubles, so they cannot be part of an expression evaluated with exact arithmetic.
+     */
+    private void rejectFunctions(CompiledNode node, String expression) throws BadExpressionException {
+        if(node instanceof CompiledFunction)
+            throw new BadExpressionException(String.format(
+                    "The function \"%s\" in the expression \"%s\" cannot be used with exact arithmetic.",
+                    ((CompiledFunction) node).function().name(), expression));
+
+        if(node instanceof CompiledOperation){
+            rejectFunctions(((CompiledOperation) node).left(), expression);
+            rejectFunctions(((CompiledOperation) node).right(), expression);
+        }
+    }
+
+    /**
+     * Give each variable in the chain a slot, in the order in which the variables first appear
+     * in the expression. Variables inside brackets and function arguments are included.
+     */
+    private void collectVariables(ExpressionChain expressionChain, Map<String, CompiledVariable> variables) {
+        ExpressionNode node = expressionChain.first();
+
+        while (node != null){
+            if(node.type() == ExpressionNodeType.Variable){
+                String name = ((VariableNode) node).name();
+                if(!variables.containsKey(name))
+                    variables.put(name, new CompiledVariable(name, variables.size()));
+            } else if(node.type() == ExpressionNodeType.Bracket){
+                collectVariables(((BracketNode) node).innerChain(), variables);
+            } else if(node.type() == ExpressionNodeType.Function){
+                FunctionNode functionNode = (FunctionNode) node;
+                for (int i = 0; i < functionNode.argumentCount(); i++)
+                    collectVariables(functionNode.argument(i), variables);
+            }
+
+            node = node.right();
+        }
+    }
+
+    /**
+     * Compile an expression chain. The chain is consumed by the compilation.
+     * @param expressionChain The chain to compile
+     * @param expression The text of the chain, used for error messages
+     * @param variables The variables found so far, in order of their slots
+     * @param keepLiterals Whether each number keeps the text it was written with
+     */
+    private CompiledNode compileChain(ExpressionChain expressionChain, String expression,
+                                      Map<String, CompiledVariable> variables, boolean keepLiterals)
+            throws BadExpressionException
+    {
+        if(expressionChain.first() == null)
+            throw new BadExpressionException("The expression \"" + expression + "\" is empty.");
+
+        // Each processed node is replaced in the chain by a placeholder number node.
+        // This map links a placeholder to the compiled node it stands for.
+        Map<ExpressionNode, CompiledNode> compiledNodes = new IdentityHashMap<>();
+
+        while (expressionChain.hasOperators()){
+            ExpressionNode nodeToProcess = expressionChain.getHighestPriorityNode();
+            CompiledNode compiledNode;
+
+            if(nodeToProcess.type() == ExpressionNodeType.Bracket){
+                compiledNode = compileBracket((BracketNode) nodeToProcess, variables, keepLiterals);
+            } else if(nodeToProcess.type() == ExpressionNodeType.Function){
+                compiledNode = compileFunction((FunctionNode) nodeToProcess, expression, variables, keepLiterals);
+            } else {
+                CompiledNode left = toCompiledNode(nodeToProcess.left(), compiledNodes, variables, keepLiterals);
+                CompiledNode right = toCompiledNode(nodeToProcess.right(), compiledNodes, variables, keepLiterals);
+                compiledNode = new CompiledOperation(nodeToProcess.type(), left, right);
+            }
+
+            ExpressionNode placeholder = new NumberNode(0);
+            compiledNodes.put(placeholder, compiledNode);
+            expressionChain.replace(nodeToProcess, placeholder);
+        }
+
+        return toCompiledNode(expressionChain.first(), compiledNodes, variables, keepLiterals);
+    }
+
+    private CompiledNode compileBracket(BracketNode bracketNode, Map<String, CompiledVariable> variables,
+                                        boolean keepLiterals) throws BadExpressionException
+    {
+        return compileChain(bracketNode.innerChain(), bracketNode.expression(), variables, keepLiterals);
+    }
+
+    private CompiledNode compileFunction(FunctionNode functionNode, String expression,
+                                         Map<String, CompiledVariable> variables, boolean keepLiterals)
+            throws BadExpressionException
+    {
+        CompiledNode[] arguments = new CompiledNode[functionNode.argumentCount()];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = compileChain(functionNode.argument(i), expression, variables, keepLiterals);
+
+        return new CompiledFunction(functionNode.function(), arguments);
+    }
+
+    /**
+     * Get the compiled node for an operand of the chain. The operand is either a number or a variable
+     * from the original expression, or a placeholder for a node that was already compiled.
+     */
+    private CompiledNode toCompiledNode(ExpressionNode node, Map<ExpressionNode, CompiledNode> compiledNodes,
+                                        Map<String, CompiledVariable> variables, boolean keepLiterals) {
+        if(node == null)
+            throw new IllegalArgumentException("The operand must not be null");
+
+        CompiledNode compiledNode = compiledNodes.get(node);
+        if(compiledNode != null)
+            return compiledNode;
+
+        if(node.type() == ExpressionNodeType.Variable)
+            return variables.get(((VariableNode) node).name());
+
+        if(node.type() != ExpressionNodeType.Number)
+            throw new IllegalArgumentException("The operand must be a number");
+
+        NumberNode numberNode = (NumberNode) node;
+        return new CompiledConstant(numberNode.number(), keepLiterals ? numberNode.literal() : null);
+    }
+}
@@ -0,0 +1,15 @@
+package com.ikemole.expressionevaluator.compiled;
+
+/**
+ * A function that computes the result of a compiled expression from the values of its variables.
+ * It is implemented both by the tree of compiled nodes and by the classes generated
+ * for an expression by the bytecode backend.
+ */
+public interface ExpressionFunction {
+
+    /**
+     * @param variables The values of the variables, indexed by slot
+     * @return The result of the expression
+     */
+    double evaluate(double[] variables);
+}
@@ -0,0 +1,299 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import com.ikemole.expressionevaluator.function.MathFunction;
+import com.ikemole.expressionevaluator.structure.node.ExpressionNodeType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class rewrites the tree of a compiled expression into a cheaper tree that gives exactly
+ * the same result for every input, including NaN, the infinities and negative zero.
+ * <ul>
+ *     <li>An operation on two constants is folded into a constant, and so is a call to a pure function
+ *     whose arguments are all constants.</li>
+ *     <li>An operation that always gives back one of its operands is removed: x*1, 1*x, x/1, x^1 and x-0.
+ *     x+0 and 0+x are only removed when x can never be negative zero, since -0+0 is +0.</li>
+ *     <li>x^0 becomes 1, which Math.pow returns even when x is NaN.</li>
+ *     <li>x^2 becomes x*x, which is rounded only once, like Math.pow.</li>
+ *     <li>Subtrees that are structurally identical are replaced by a single shared node,
+ *     so that the program and the generated bytecode compute them only once.
+ *     A call to a function that is not pure is never shared, since each call may give a different result.</li>
+ * </ul>
+ * Rewrites that would change a result for some input, such as x*0 (NaN*0 is NaN) or x-x
+ * (infinity minus infinity is NaN), are not made.
+ * <p>
+ * These rewrites are only exact for double arithmetic: constants are folded with doubles, and with a
+ * BigDecimal MathContext even x*1 rounds x. For an expression evaluated with other arithmetic, only
+ * identical subtrees are shared.
+ * <p>
+ * The expressions of a batch are optimised by a single optimiser, so that the subtrees they have in
+ * common are shared between them too.
+ */
+public final class ExpressionOptimizer {
+    private final Map<NodeKey, CompiledNode> sharedNodes = new HashMap<>();
+    private final boolean doubleArithmetic;
+    private int deduplicatedCount;
+
+    private ExpressionOptimizer(boolean doubleArithmetic){
+        this.doubleArithmetic = doubleArithmetic;
+    }
+
+    /**
+     * Optimise a compiled tree. The given tree is not modified.
+     * @param root The root of a compiled expression
+     * @return The root of the optimised tree, in which identical subtrees are the same node
+     */
+    public static CompiledNode optimize(CompiledNode root){
+        return optimize(root, true);
+    }
+
+    /**
+     * Optimise a compiled tree. The given tree is not modified.
+     * @param root The root of a compiled expression
+     * @param doubleArithmetic Whether the tree is evaluated with double arithmetic.
+     *                         If not, identical subtrees are shared but nothing is rewritten.
+     * @return The root of the optimised tree, in which identical subtrees are the same node
+     */
+    public static CompiledNode optimize(CompiledNode root, boolean doubleArithmetic){
+        return new ExpressionOptimizer(doubleArithmetic).rewrite(root);
+    }
+
+    /**
+     * Create an optimiser for the expressions of a batch, which shares identical subtrees across all the trees
+     * it optimises.
+     */
+    static ExpressionOptimizer forBatch(){
+        return new ExpressionOptimizer(true);
+    }
+
+    /**
+     * Optimise one tree of a batch. Its subtrees are shared with the trees that were optimised before it.
+     */
+    CompiledNode add(CompiledNode root){
+        return rewrite(root);
+    }
+
+    /**
+     * The number of operations and calls that were replaced by an identical node that already existed.
+     */
+    int deduplicatedCount(){
+        return deduplicatedCount;
+    }
+
+    private CompiledNode rewrite(CompiledNode node){
+        if(node instanceof CompiledFunction)
+            return rewriteFunction((CompiledFunction) node);
+
+        if(!(node instanceof CompiledOperation))
+            return share(node);
+
+        CompiledOperation operation = (CompiledOperation) node;
+        CompiledNode left = rewrite(operation.left());
+        CompiledNode right = rewrite(operation.right());
+        return share(simplify(operation.operator(), left, right));
+    }
+
+    private CompiledNode rewriteFunction(CompiledFunction call){
+        MathFunction function = call.function();
+        CompiledNode[] arguments = new CompiledNode[call.argumentCount()];
+        boolean constantArguments = true;
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = rewrite(call.argument(i));
+            constantArguments &= arguments[i] instanceof CompiledConstant;
+        }
+
+        if(!function.isPure())
+            return new CompiledFunction(function, arguments);
+
+        if(doubleArithmetic && constantArguments){
+            double[] values = new double[arguments.length];
+            for (int i = 0; i < values.length; i++)
+                values[i] = ((CompiledConstant) arguments[i]).value();
+            return share(new CompiledConstant(function.apply(values, 0, values.length)));
+        }
+
+        return share(new CompiledFunction(function, arguments));
+    }
+
+    private CompiledNode simplify(ExpressionNodeType operator, CompiledNode left, CompiledNode right){
+        if(!doubleArithmetic)
+            return new CompiledOperation(operator, left, right);
+
+        if(left instanceof CompiledConstant && right instanceof CompiledConstant){
+            double value = CompiledOperation.apply(operator,
+                    ((CompiledConstant) left).value(), ((CompiledConstant) right).value());
+            return new CompiledConstant(value);
+        }
+
+        switch (operator) {
+            case Exponent:
+                if(isConstant(right, 1))
+                    return left;
+                if(isConstant(right, 0))
+                    return new CompiledConstant(1);
+                if(isConstant(right, 2))
+                    return new CompiledOperation(ExpressionNodeType.Multiplication, left, left);
+                break;
+            case Division:
+                if(isConstant(right, 1))
+                    return left;
+                break;
+            case Multiplication:
+                if(isConstant(right, 1))
+                    return left;
+                if(isConstant(left, 1))
+                    return right;
+                break;
+            case Addition:
+                if(isNegativeZero(right) || (isPositiveZero(right) && !canBeNegativeZero(left)))
+                    return left;
+                if(isNegativeZero(left) || (isPositiveZero(left) && !canBeNegativeZero(right)))
+                    return right;
+                break;
+            case Subtraction:
+                if(isPositiveZero(right))
+                    return left;
+                break;
+            default:
+                break;
+        }
+
+        return new CompiledOperation(operator, left, right);
+    }
+
+    /**
+     * Check if a node might evaluate to negative zero. A sum is negative zero only when both operands are,
+     * and a difference only for -0 - +0. Other operations are assumed to possibly give negative zero.
+     */
+    private static boolean canBeNegativeZero(CompiledNode node){
+        if(node instanceof CompiledConstant)
+            return isNegativeZero(node);
+
+        if(node instanceof CompiledOperation){
+            CompiledOperation operation = (CompiledOperation) node;
+            switch (operation.operator()) {
+                case Addition:
+                    return canBeNegativeZero(operation.left()) && canBeNegativeZero(operation.right());
+                case Subtraction:
+                    return canBeNegativeZero(operation.left())
+                            && (!(operation.right() instanceof CompiledConstant) || isPositiveZero(operation.right()));
+                default:
+                    return true;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isConstant(CompiledNode node, double value){
+        return node instanceof CompiledConstant && ((CompiledConstant) node).value() == value;
+    }
+
+    private static boolean isPositiveZero(CompiledNode node){
+        return node instanceof CompiledConstant
+                && Double.doubleToRawLongBits(((CompiledConstant) node).value()) == Double.doubleToRawLongBits(0.0);
+    }
+
+    private static boolean isNegativeZero(CompiledNode node){
+        return node instanceof CompiledConstant
+                && Double.doubleToRawLongBits(((CompiledConstant) node).value()) == Double.doubleToRawLongBits(-0.0);
+    }
+
+    /**
+     * Get the shared node that is structurally identical to this one, or make this node the shared one.
+     * The operands of the node must already be shared, so that they can be compared by identity.
+     */
+    private CompiledNode share(CompiledNode node){
+        CompiledNode sharedNode = sharedNodes.putIfAbsent(new NodeKey(node), node);
+        // the node itself is found again when an identity such as x*1 gave back an operand
+        if(sharedNode == null || sharedNode == node)
+            return node;
+
+        if(sharedNode instanceof CompiledOperation || sharedNode instanceof CompiledFunction)
+            deduplicatedCount++;
+        return sharedNode;
+    }
+
+    /**
+     * The structure of a node: its operator and operands, its function and arguments, its constant
+     * and the text it was written with, or its variable slot.
+     */
+    private static final class NodeKey {
+        private final ExpressionNodeType operator;
+        private final CompiledNode left;
+        private final CompiledNode right;
+        private final long bits;
+        private final String literal;
+        private final CompiledFunction call;
+
+        NodeKey(CompiledNode node){
+            CompiledFunction call = null;
+            String literal = null;
+            if(node instanceof CompiledOperation){
+                CompiledOperation operation = (CompiledOperation) node;
+                operator = operation.operator();
+                left = operation.left();
+                right = operation.right();
+                bits = 0;
+            } else if(node instanceof CompiledConstant){
+                operator = ExpressionNodeType.Number;
+                left = null;
+                right = null;
+                bits = Double.doubleToRawLongBits(((CompiledConstant) node).value());
+                // numbers that round to the same double are still different numbers for exact arithmetic
+                literal = ((CompiledConstant) node).literal();
+            } else if(node instanceof CompiledVariable){
+                operator = ExpressionNodeType.Variable;
+                left = null;
+                right = null;
+                bits = ((CompiledVariable) node).slot();
+            } else if(node instanceof CompiledFunction){
+                call = (CompiledFunction) node;
+                operator = ExpressionNodeType.Function;
+                left = null;
+                right = null;
+                bits = System.identityHashCode(call.function());
+            } else {
+                throw new IllegalArgumentException("Unexpected node: " + node.getClass().getName());
+            }
+            this.literal = literal;
+            this.call = call;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof NodeKey)) return false;
+            NodeKey other = (NodeKey) o;
+            return operator == other.operator && left == other.left && right == other.right && bits == other.bits
+                    && Objects.equals(literal, other.literal) && (call == null || sameCall(call, other.call));
+        }
+
+        /**
+         * Check if two calls are to the same function with the same arguments, which are already shared.
+         */
+        private static boolean sameCall(CompiledFunction call, CompiledFunction other){
+            if(call.function() != other.function() || call.argumentCount() != other.argumentCount())
+                return false;
+
+            for (int i = 0; i < call.argumentCount(); i++) {
+                if(call.argument(i) != other.argument(i))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Objects.hash(operator, System.identityHashCode(left), System.identityHashCode(right), bits,
+                    literal);
+            if(call != null){
+                for (int i = 0; i < call.argumentCount(); i++)
+                    hash = 31 * hash + System.identityHashCode(call.argument(i));
+            }
+            return hash;
+        }
+    }
+}
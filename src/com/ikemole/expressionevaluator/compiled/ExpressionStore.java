@@ -0,0 +1,313 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.function.FunctionRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A file of compiled expressions that can be memory-mapped back without parsing them again,
+ * so that a service which keeps many formulas can start quickly.
+ * <p>
+ * The file starts with a header: a magic number, the version of the format and the number of expressions,
+ * followed by the offset of each expression in the file. Each expression is stored as its text, the names
+ * of its variables in slot order, and its program: opcodes, operands, constants and calls. Functions are
+ * stored by name and looked up in a FunctionRegistry when the expression is read.
+ * <p>
+ * Opening a store only maps the file and checks the offsets. An expression is read from the mapped file
+ * the first time it is asked for, and then kept, so the cost of starting is that of mapping the file.
+ * The program of an expression is checked when it is read, so a damaged file cannot make an evaluation
+ * read outside its arrays. A store can be shared between threads.
+ */
+public final class ExpressionStore {
+    /** The version of the format written by this class. */
+    public static final int VERSION = 1;
+    private static final int MAGIC = 0x45585052; // "EXPR"
+    private static final int HEADER_BYTES = 12;
+    private static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    private final int count;
+    private final long fileSize;
+    private final LongBuffer offsets;
+    // The file is mapped in segments of at most 2 GB, each starting at an expression
+    private final MappedByteBuffer[] segments;
+    private final long[] segmentStarts;
+    private final int[] segmentFirstExpressions;
+    private final FunctionRegistry functionRegistry;
+    private final int jitThreshold;
+
+    private final AtomicReferenceArray<CompiledExpression> expressions;
+    private final LongAdder readCount = new LongAdder();
+
+    private ExpressionStore(int count, long fileSize, LongBuffer offsets, MappedByteBuffer[] segments,
+                            long[] segmentStarts, int[] segmentFirstExpressions, FunctionRegistry functionRegistry,
+                            int jitThreshold){
+        this.count = count;
+        this.fileSize = fileSize;
+        this.offsets = offsets;
+        this.segments = segments;
+        this.segmentStarts = segmentStarts;
+        this.segmentFirstExpressions = segmentFirstExpressions;
+        this.functionRegistry = functionRegistry;
+        this.jitThreshold = jitThreshold;
+        this.expressions = new AtomicReferenceArray<>(count);
+    }
+
+    /**
+     * Write compiled expressions to a file, replacing it if it exists.
+     * @param compiledExpressions The expressions to write, which are numbered in this order in the store
+     * @param path The file to write
+     */
+    public static void write(List<CompiledExpression> compiledExpressions, Path path) throws IOException {
+        int count = compiledExpressions.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + 8 * count);
+        header.putInt(MAGIC).putInt(VERSION).putInt(count);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long offset = header.capacity();
+            channel.position(offset);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (CompiledExpression compiledExpression : compiledExpressions) {
+                bytes.reset();
+                writeExpression(out, compiledExpression);
+                out.flush();
+
+                header.putLong(offset);
+                ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+                offset += record.remaining();
+                while (record.hasRemaining())
+                    channel.write(record);
+            }
+
+            header.flip();
+            while (header.hasRemaining())
+                channel.write(header, header.position());
+        }
+    }
+
+    private static void writeExpression(DataOutputStream out, CompiledExpression compiledExpression)
+            throws IOException
+    {
+        writeString(out, compiledExpression.expression());
+        out.writeInt(compiledExpression.variableCount());
+        for (int slot = 0; slot < compiledExpression.variableCount(); slot++)
+            writeString(out, compiledExpression.variableName(slot));
+
+        compiledExpression.program().write(out);
+    }
+
+    /**
+     * Open a store whose expressions never switch to bytecode.
+     * @see #open(Path, FunctionRegistry, int)
+     */
+    public static ExpressionStore open(Path path, FunctionRegistry functionRegistry) throws IOException {
+        return open(path, functionRegistry, CompiledExpression.JIT_DISABLED);
+    }
+
+    /**
+     * Map a file written by {@link #write(List, Path)}. The expressions are not read until they are asked for.
+     * @param path The file to map
+     * @param functionRegistry The registry that the functions of the expressions are looked up in
+     * @param jitThreshold The JIT threshold of the expressions that are read, or CompiledExpression.JIT_DISABLED
+     * @throws IOException If the file cannot be read, or it is not a store of this version
+     */
+    public static ExpressionStore open(Path path, FunctionRegistry functionRegistry, int jitThreshold)
+            throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if(fileSize < HEADER_BYTES)
+                throw new IOException("The file is not a compiled expression store: " + path);
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if(header.getInt() != MAGIC)
+                throw new IOException("The file is not a compiled expression store: " + path);
+
+            int version = header.getInt();
+            if(version != VERSION)
+                throw new IOException(String.format("The store %s has version %s but version %s is expected",
+                        path, version, VERSION));
+
+            int count = header.getInt();
+            long indexEnd = HEADER_BYTES + 8L * count;
+            if(count < 0 || indexEnd > Math.min(fileSize, MAX_SEGMENT_BYTES))
+                throw new IOException("The index of the store is damaged: " + path);
+
+            LongBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, 8L * count).asLongBuffer();
+
+            long previousOffset = indexEnd;
+            for (int i = 0; i < count; i++) {
+                long offset = offsets.get(i);
+                if(offset < previousOffset || offset > fileSize)
+                    throw new IOException("The index of the store is damaged: " + path);
+                previousOffset = offset;
+            }
+
+            // Split the expressions into segments that can each be mapped by one buffer
+            List<MappedByteBuffer> segments = new ArrayList<>();
+            long[] segmentStarts = new long[count];
+            int[] segmentFirstExpressions = new int[count];
+            int first = 0;
+            while (first < count){
+                long segmentStart = offsets.get(first);
+                int next = first + 1;
+                while (next < count && end(offsets, next, fileSize) - segmentStart <= MAX_SEGMENT_BYTES)
+                    next++;
+
+                long segmentEnd = end(offsets, next - 1, fileSize);
+                if(segmentEnd - segmentStart > MAX_SEGMENT_BYTES)
+                    throw new IOException("An expression of the store is larger than 2 GB: " + path);
+
+                segmentStarts[segments.size()] = segmentStart;
+                segmentFirstExpressions[segments.size()] = first;
+                segments.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart));
+                first = next;
+            }
+
+            int segmentCount = segments.size();
+            return new ExpressionStore(count, fileSize, offsets, segments.toArray(new MappedByteBuffer[0]),
+                    Arrays.copyOf(segmentStarts, segmentCount), Arrays.copyOf(segmentFirstExpressions, segmentCount),
+                    functionRegistry, jitThreshold);
+        }
+    }
+
+    /**
+     * The number of expressions in the store.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * The number of expressions that were read from the file so far.
+     */
+    public long readCount() {
+        return readCount.sum();
+    }
+
+    /**
+     * Get the text of an expression without reading the rest of it.
+     * @param index The number of the expression, in the order it was written
+     * @throws IllegalStateException If the stored expression is damaged
+     */
+    public String expression(int index) {
+        CompiledExpression compiledExpression = expressions.get(index);
+        if(compiledExpression != null)
+            return compiledExpression.expression();
+
+        try {
+            return readString(record(index));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw damaged(index, e);
+        }
+    }
+
+    /**
+     * Get a compiled expression, reading it from the file the first time it is asked for.
+     * @param index The number of the expression, in the order it was written
+     * @throws BadExpressionException If the expression calls a function that is not in the registry of the store
+     * @throws IllegalStateException If the stored expression is damaged
+     */
+    public CompiledExpression get(int index) throws BadExpressionException {
+        CompiledExpression compiledExpression = expressions.get(index);
+        if(compiledExpression != null)
+            return compiledExpression;
+
+        compiledExpression = readExpression(index);
+        if(expressions.compareAndSet(index, null, compiledExpression))
+            readCount.increment();
+        else
+            compiledExpression = expressions.get(index);
+
+        return compiledExpression;
+    }
+
+    private CompiledExpression readExpression(int index) throws BadExpressionException {
+        ByteBuffer in = record(index);
+        try {
+            String expression = readString(in);
+            String[] variableNames = new String[readLength(in, 4)];
+            for (int slot = 0; slot < variableNames.length; slot++)
+                variableNames[slot] = readString(in);
+
+            CompiledProgram program = CompiledProgram.read(in, variableNames.length, functionRegistry);
+            if(program.rootCount() != 1 || in.hasRemaining())
+                throw new IllegalArgumentException("Unexpected data after the program");
+
+            return new CompiledExpression(expression, program, variableNames, jitThreshold);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw damaged(index, e);
+        }
+    }
+
+    private static IllegalStateException damaged(int index, RuntimeException cause){
+        return new IllegalStateException(String.format("The expression %s of the store is damaged", index), cause);
+    }
+
+    /**
+     * Get a view of the bytes of an expression. Each call gets its own view, so threads never share a position.
+     */
+    private ByteBuffer record(int index){
+        Objects.checkIndex(index, count);
+        long start = offsets.get(index);
+        long end = end(offsets, index, fileSize);
+
+        int segment = Arrays.binarySearch(segmentFirstExpressions, index);
+        if(segment < 0)
+            segment = -segment - 2;
+
+        return segments[segment].slice((int) (start - segmentStarts[segment]), (int) (end - start));
+    }
+
+    /**
+     * The offset just after an expression: the start of the next one, or the end of the file.
+     */
+    private static long end(LongBuffer offsets, int index, long fileSize){
+        return index + 1 < offsets.limit() ? offsets.get(index + 1) : fileSize;
+    }
+
+    /**
+     * Read the length of an array, and check that the rest of the record can hold that many elements before
+     * the array is allocated, so that a damaged length cannot allocate a huge array.
+     * @param elementBytes The fewest bytes that each element takes in the record
+     * @throws IllegalArgumentException If the length is negative or larger than the rest of the record
+     */
+    static int readLength(ByteBuffer in, int elementBytes){
+        int length = in.getInt();
+        if(length < 0 || length > in.remaining() / elementBytes)
+            throw new IllegalArgumentException(String.format(
+                    "The length %s does not fit in the %s bytes that remain", length, in.remaining()));
+        return length;
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in){
+        byte[] bytes = new byte[readLength(in, 1)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,45 @@
+package com.ikemole.expressionevaluator.compiled;
+
+/**
+ * The values of the variables of a LongExpression, indexed by slot.
+ * Like VariableBindings, a bindings object can be reused for every evaluation and holds the operand stack,
+ * so that evaluation is allocation-free. It is not safe to use a bindings object from several threads at once.
+ */
+public final class LongBindings {
+    private static final long[] EMPTY_STACK = new long[0];
+
+    private final long[] values;
+    private long[] operandStack = EMPTY_STACK;
+
+    public LongBindings(int size){
+        this.values = new long[size];
+    }
+
+    /**
+     * Set the value of the variable in the given slot.
+     * @return This bindings object, so that calls can be chained
+     */
+    public LongBindings set(int slot, long value){
+        values[slot] = value;
+        return this;
+    }
+
+    public long get(int slot){
+        return values[slot];
+    }
+
+    public int size(){
+        return values.length;
+    }
+
+    long[] values() {
+        return values;
+    }
+
+    long[] operandStack(int depth) {
+        if(operandStack.length < depth)
+            operandStack = new long[depth];
+
+        return operandStack;
+    }
+}
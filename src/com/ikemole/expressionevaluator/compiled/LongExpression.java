@@ -0,0 +1,118 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+
+import java.math.BigDecimal;
+
+/**
+ * A compiled expression that is evaluated with long arithmetic, for results that must be exact whole numbers.
+ * Every operation checks for overflow, and a division or a power whose result is not a whole number
+ * throws an ArithmeticException instead of being rounded.
+ * Like a CompiledExpression, it is immutable and can be shared between threads.
+ */
+public final class LongExpression {
+    private static final double LONG_RANGE = 0x1p63;
+    private static final ThreadLocal<LongBindings> NO_VARIABLE_BINDINGS =
+            ThreadLocal.withInitial(() -> new LongBindings(0));
+
+    private final CompiledExpression compiledExpression;
+    private final CompiledProgram program;
+    private final long[] constants;
+
+    /**
+     * @param compiledExpression An expression compiled for exact arithmetic, without folding its constants
+     * @throws BadExpressionException If a number of the expression is not a whole number in the range of a long
+     */
+    LongExpression(CompiledExpression compiledExpression) throws BadExpressionException {
+        this.compiledExpression = compiledExpression;
+        this.program = compiledExpression.program();
+
+        this.constants = new long[program.constantCount()];
+        for (int i = 0; i < constants.length; i++)
+            constants[i] = toLong(program.literal(i), program.constant(i), compiledExpression.expression());
+    }
+
+    /**
+     * Read a number of the expression as it was written, since the double it was read as is only exact
+     * below 2^53. A named constant has no text, and its double is its exact value.
+     */
+    private static long toLong(String literal, double value, String expression) throws BadExpressionException {
+        if(literal == null){
+            if(value == Math.rint(value) && Math.abs(value) < LONG_RANGE)
+                return (long) value;
+            literal = BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+        } else {
+            try {
+                return new BigDecimal(literal).longValueExact();
+            } catch (ArithmeticException | NumberFormatException e) {
+                // a fraction, a number out of the range of a long, or an exponent out of the range of a BigDecimal
+            }
+        }
+
+        throw new BadExpressionException(String.format(
+                "The number %s in the expression \"%s\" is not a whole number in the range of a long.",
+                literal, expression));
+    }
+
+    /**
+     * The expression that was compiled.
+     */
+    public String expression() {
+        return compiledExpression.expression();
+    }
+
+    public int variableCount() {
+        return compiledExpression.variableCount();
+    }
+
+    public String variableName(int slot) {
+        return compiledExpression.variableName(slot);
+    }
+
+    /**
+     * Get the slot of a variable. This should be looked up once, not for every evaluation.
+     */
+    public int slotOf(String name) {
+        return compiledExpression.slotOf(name);
+    }
+
+    /**
+     * Create a bindings object with a slot for every variable of this expression.
+     */
+    public LongBindings newBindings() {
+        return new LongBindings(variableCount());
+    }
+
+    /**
+     * Evaluate the expression and return the result.
+     * This can only be used if the expression has no variables.
+     * @throws ArithmeticException If a result overflows a long or is not a whole number
+     */
+    public long evaluate() {
+        if(variableCount() > 0)
+            throw new IllegalArgumentException("The expression has variables that must be bound: " + expression());
+
+        return run(NO_VARIABLE_BINDINGS.get());
+    }
+
+    /**
+     * Evaluate the expression with the given variable values and return the result.
+     * @throws ArithmeticException If a result overflows a long or is not a whole number
+     */
+    public long evaluate(LongBindings bindings) {
+        if(bindings.size() < variableCount())
+            throw new IllegalArgumentException(String.format(
+                    "Expected bindings for %s variables but got %s", variableCount(), bindings.size()));
+
+        return run(bindings);
+    }
+
+    private long run(LongBindings bindings) {
+        return program.evaluateLong(constants, bindings.values(), bindings.operandStack(program.maxStackDepth()));
+    }
+
+    @Override
+    public String toString() {
+        return expression();
+    }
+}
@@ -0,0 +1,41 @@
+package com.ikemole.expressionevaluator.compiled;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fork-join task that evaluates a range of rows of a batch. Large ranges are split in half
+ * until they are small enough to be evaluated by a single BatchEvaluator.
+ */
+class ParallelBatchTask extends RecursiveAction {
+    // Small enough to spread the work across many cores, large enough for the splitting to be cheap
+    private static final int MIN_ROWS_PER_TASK = 16 * BatchEvaluator.BLOCK_SIZE;
+
+    private final CompiledExpression compiledExpression;
+    private final CompiledNode root;
+    private final double[][] columns;
+    private final double[] out;
+    private final int from;
+    private final int to;
+
+    ParallelBatchTask(CompiledExpression compiledExpression, CompiledNode root, double[][] columns, double[] out,
+                      int from, int to){
+        this.compiledExpression = compiledExpression;
+        this.root = root;
+        this.columns = columns;
+        this.out = out;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if(to - from <= MIN_ROWS_PER_TASK){
+            new BatchEvaluator(compiledExpression, root, columns).evaluate(out, from, to);
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        invokeAll(new ParallelBatchTask(compiledExpression, root, columns, out, from, middle),
+                new ParallelBatchTask(compiledExpression, root, columns, out, middle, to));
+    }
+}
@@ -0,0 +1,51 @@
+package com.ikemole.expressionevaluator.compiled;
+
+/**
+ * The values of the variables of a compiled expression, indexed by slot.
+ * The slot of a variable is given by {@link CompiledExpression#slotOf(String)}.
+ * A bindings object can be reused for every evaluation by setting new values in place.
+ * It also holds the operand stack that evaluations run on, so reusing it makes evaluation allocation-free.
+ * It is not safe to use a bindings object from several threads at once.
+ */
+public final class VariableBindings {
+    private static final double[] EMPTY_STACK = new double[0];
+
+    private final double[] values;
+    private double[] operandStack = EMPTY_STACK;
+
+    public VariableBindings(int size){
+        this.values = new double[size];
+    }
+
+    /**
+     * Set the value of the variable in the given slot.
+     * @return This bindings object, so that calls can be chained
+     */
+    public VariableBindings set(int slot, double value){
+        values[slot] = value;
+        return this;
+    }
+
+    public double get(int slot){
+        return values[slot];
+    }
+
+    public int size(){
+        return values.length;
+    }
+
+    double[] values() {
+        return values;
+    }
+
+    /**
+     * Get an operand stack with room for at least "depth" values. The stack is only replaced
+     * when a deeper one is needed, so repeated evaluations reuse the same array.
+     */
+    double[] operandStack(int depth) {
+        if(operandStack.length < depth)
+            operandStack = new double[depth];
+
+        return operandStack;
+    }
+}
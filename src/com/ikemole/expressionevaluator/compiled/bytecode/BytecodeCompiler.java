@@ -0,0 +1,469 @@
+package com.ikemole.expressionevaluator.compiled.bytecode;
+
+import com.ikemole.expressionevaluator.compiled.CompiledConstant;
+import com.ikemole.expressionevaluator.compiled.CompiledFunction;
+import com.ikemole.expressionevaluator.compiled.CompiledNode;
+import com.ikemole.expressionevaluator.compiled.CompiledOperation;
+import com.ikemole.expressionevaluator.compiled.CompiledVariable;
+import com.ikemole.expressionevaluator.compiled.ExpressionFunction;
+import com.ikemole.expressionevaluator.function.MathFunction;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class turns the tree of a compiled expression into a JVM class that implements
+ * ExpressionFunction. The generated method computes the expression with plain arithmetic
+ * instructions, the same way hand-written Java would, so HotSpot can inline and optimise it.
+ * Each class is defined as a hidden class, so it is unloaded once it is no longer used.
+ * <p>
+ * A built-in function is computed by calling its method of java.lang.Math directly, so HotSpot can use
+ * its intrinsic. Any other function is held in a final field of the generated class and called through its
+ * interface. HotSpot treats the final fields of hidden classes as constants, so it can inline those calls too.
+ */
+public class BytecodeCompiler {
+    private static final String CLASS_NAME = "com/ikemole/expressionevaluator/compiled/bytecode/GeneratedExpression";
+    private static final String FUNCTION_INTERFACE = "com/ikemole/expressionevaluator/compiled/ExpressionFunction";
+    private static final String UNARY_OPERATOR = "java/util/function/DoubleUnaryOperator";
+    private static final String BINARY_OPERATOR = "java/util/function/DoubleBinaryOperator";
+    private static final String VARARGS_OPERATOR = "com/ikemole/expressionevaluator/function/VarargsOperator";
+    private static final String CONSTRUCTOR_DESCRIPTOR = "([Ljava/lang/Object;)V";
+    private static final int MAX_CODE_LENGTH = 0xFFFF;
+
+    // opcodes
+    private static final int ICONST_0 = 0x03;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC2_W = 0x14;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DALOAD = 0x31;
+    private static final int AALOAD = 0x32;
+    private static final int DSTORE = 0x39;
+    private static final int DASTORE = 0x52;
+    private static final int DUP = 0x59;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int NEWARRAY = 0xbc;
+    private static final int CHECKCAST = 0xc0;
+    private static final int WIDE = 0xc4;
+    private static final int T_DOUBLE = 7;
+    // "this" and the variables array come before the locals that hold shared subtrees
+    private static final int FIRST_FREE_LOCAL = 2;
+
+    /**
+     * Generate and load a class that evaluates the given tree.
+     * @param root The root of a compiled expression
+     * @return A new instance of the generated class
+     * @throws IllegalArgumentException If the expression is too large for a single JVM method
+     */
+    public static ExpressionFunction compile(CompiledNode root) {
+        List<MathFunction> functions = new ArrayList<>();
+        collectFunctions(root, new IdentityHashMap<>(), functions);
+        byte[] classBytes = generateClass(root, functions);
+
+        Object[] operators = new Object[functions.size()];
+        for (int i = 0; i < operators.length; i++)
+            operators[i] = operatorOf(functions.get(i));
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+            return (ExpressionFunction) lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, Object[].class)).invoke(operators);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not load the class generated for the expression", e);
+        }
+    }
+
+    /**
+     * Find the functions that are called through a field rather than through java.lang.Math, each once.
+     */
+    private static void collectFunctions(CompiledNode node, Map<CompiledNode, Boolean> visited,
+                                         List<MathFunction> functions) {
+        if(visited.put(node, Boolean.TRUE) != null)
+            return;
+
+        if(node instanceof CompiledOperation){
+            collectFunctions(((CompiledOperation) node).left(), visited, functions);
+            collectFunctions(((CompiledOperation) node).right(), visited, functions);
+        } else if(node instanceof CompiledFunction){
+            CompiledFunction call = (CompiledFunction) node;
+            for (int i = 0; i < call.argumentCount(); i++)
+                collectFunctions(call.argument(i), visited, functions);
+
+            MathFunction function = call.function();
+            if(function.javaMathMethod() == null && !containsIdentical(functions, function))
+                functions.add(function);
+        }
+    }
+
+    private static boolean containsIdentical(List<MathFunction> functions, MathFunction function) {
+        for (MathFunction other : functions) {
+            if(other == function)
+                return true;
+        }
+        return false;
+    }
+
+    private static Object operatorOf(MathFunction function) {
+        switch (function.arity()) {
+            case 1:
+                return function.unaryOperator();
+            case 2:
+                return function.binaryOperator();
+            default:
+                return function.varargsOperator();
+        }
+    }
+
+    private static String operatorInterfaceOf(MathFunction function) {
+        switch (function.arity()) {
+            case 1:
+                return UNARY_OPERATOR;
+            case 2:
+                return BINARY_OPERATOR;
+            default:
+                return VARARGS_OPERATOR;
+        }
+    }
+
+    /**
+     * Generate the bytes of a class that evaluates the given tree.
+     * @param functions The functions that are called through fields. The constructor of the class takes
+     *                  their operators, in the same order, as an array.
+     */
+    static byte[] generateClass(CompiledNode root, List<MathFunction> functions) {
+        ClassFileWriter classWriter = new ClassFileWriter(CLASS_NAME, FUNCTION_INTERFACE);
+        addConstructor(classWriter, functions);
+
+        MethodEmitter emitter = new MethodEmitter(classWriter, root, functions);
+        emitter.emitNode(root);
+        emitter.emit(DRETURN);
+        if(emitter.code.size() > MAX_CODE_LENGTH)
+            throw new IllegalArgumentException("The expression is too large to be compiled to bytecode");
+
+        classWriter.addMethod("evaluate", "([D)D", emitter.code.toByteArray(), emitter.maxStack, emitter.nextLocal);
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * Add a field for the operator of each function, and a constructor that sets them from an array:
+     * this.f0 = (DoubleUnaryOperator) operators[0], and so on.
+     */
+    private static void addConstructor(ClassFileWriter classWriter, List<MathFunction> functions) {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        code.write(ALOAD_0);
+        writeInstruction(code, INVOKESPECIAL, classWriter.methodConstant("java/lang/Object", "<init>", "()V"));
+
+        for (int i = 0; i < functions.size(); i++) {
+            String operatorInterface = operatorInterfaceOf(functions.get(i));
+            String descriptor = "L" + operatorInterface + ";";
+            classWriter.addField(fieldName(i), descriptor);
+
+            code.write(ALOAD_0);
+            code.write(ALOAD_1);
+            writeInt(code, i);
+            code.write(AALOAD);
+            writeInstruction(code, CHECKCAST, classWriter.classConstant(operatorInterface));
+            writeInstruction(code, PUTFIELD, classWriter.fieldConstant(CLASS_NAME, fieldName(i), descriptor));
+        }
+        code.write(RETURN);
+
+        classWriter.addMethod("<init>", CONSTRUCTOR_DESCRIPTOR, code.toByteArray(), 3, 2);
+    }
+
+    private static String fieldName(int index) {
+        return "f" + index;
+    }
+
+    private static void writeInstruction(ByteArrayOutputStream code, int opcode, int constantIndex) {
+        code.write(opcode);
+        code.write(constantIndex >> 8);
+        code.write(constantIndex);
+    }
+
+    /**
+     * Write the instruction that pushes a small int.
+     */
+    private static void writeInt(ByteArrayOutputStream code, int value) {
+        if(value <= 5){
+            code.write(ICONST_0 + value);
+        } else if(value <= Byte.MAX_VALUE){
+            code.write(BIPUSH);
+            code.write(value);
+        } else if(value <= Short.MAX_VALUE){
+            code.write(SIPUSH);
+            code.write(value >> 8);
+            code.write(value);
+        } else {
+            throw new IllegalArgumentException("Too many values to compile to bytecode");
+        }
+    }
+
+    /**
+     * Writes the instructions of the evaluate method while tracking the depth of the operand stack.
+     * A subtree used by several operations is computed once and kept in a local variable.
+     */
+    private static class MethodEmitter {
+        private ClassFileWriter classWriter;
+        private ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private Map<CompiledNode, Integer> useCounts = new IdentityHashMap<>();
+        private Map<CompiledNode, Integer> locals = new IdentityHashMap<>();
+        private List<MathFunction> functions;
+        private int nextLocal = FIRST_FREE_LOCAL;
+        private int stack;
+        private int maxStack;
+
+        MethodEmitter(ClassFileWriter classWriter, CompiledNode root, List<MathFunction> functions){
+            this.classWriter = classWriter;
+            this.functions = functions;
+            countUses(root);
+        }
+
+        private void countUses(CompiledNode node) {
+            if(useCounts.merge(node, 1, Integer::sum) > 1)
+                return;
+
+            if(node instanceof CompiledOperation){
+                countUses(((CompiledOperation) node).left());
+                countUses(((CompiledOperation) node).right());
+            } else if(node instanceof CompiledFunction){
+                CompiledFunction call = (CompiledFunction) node;
+                for (int i = 0; i < call.argumentCount(); i++)
+                    countUses(call.argument(i));
+            }
+        }
+
+        /**
+         * Write the instructions that leave the value of the node on top of the stack.
+         * Operands are evaluated left first, exactly as the tree evaluates them.
+         */
+        void emitNode(CompiledNode node) {
+            if(node instanceof CompiledConstant){
+                emitConstant(((CompiledConstant) node).value());
+            } else if(node instanceof CompiledVariable){
+                emitVariable(((CompiledVariable) node).slot());
+            } else if(node instanceof CompiledOperation || node instanceof CompiledFunction){
+                Integer local = locals.get(node);
+                if(local != null){
+                    emitLocal(DLOAD, local);
+                    push(2);
+                    return;
+                }
+
+                if(node instanceof CompiledOperation){
+                    CompiledOperation operation = (CompiledOperation) node;
+                    emitNode(operation.left());
+                    emitNode(operation.right());
+                    emitOperator(operation);
+                } else {
+                    emitCall((CompiledFunction) node);
+                }
+
+                if(useCounts.get(node) > 1){
+                    locals.put(node, nextLocal);
+                    emit(DUP2);
+                    push(2);
+                    emitLocal(DSTORE, nextLocal);
+                    pop(2);
+                    nextLocal += 2; // a double takes two local slots
+                }
+            } else {
+                throw new IllegalArgumentException("Unexpected node: " + node.getClass().getName());
+            }
+        }
+
+        private void emitConstant(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            if(bits == Double.doubleToRawLongBits(0.0)){
+                emit(DCONST_0);
+            } else if(bits == Double.doubleToRawLongBits(1.0)){
+                emit(DCONST_1);
+            } else {
+                emit(LDC2_W);
+                emitShort(classWriter.doubleConstant(value));
+            }
+            push(2);
+        }
+
+        private void emitLocal(int opcode, int local) {
+            if(local > 0xFF){
+                emit(WIDE);
+                emit(opcode);
+                emitShort(local);
+            } else {
+                emit(opcode);
+                emit(local);
+            }
+        }
+
+        private void emitVariable(int slot) {
+            emit(ALOAD_1);
+            push(1);
+
+            if(slot <= Byte.MAX_VALUE){
+                emit(BIPUSH);
+                emit(slot);
+            } else if(slot <= Short.MAX_VALUE){
+                emit(SIPUSH);
+                emitShort(slot);
+            } else {
+                throw new IllegalArgumentException("Too many variables to compile to bytecode");
+            }
+            push(1);
+
+            emit(DALOAD);
+            pop(2);
+            push(2);
+        }
+
+        private void emitOperator(CompiledOperation operation) {
+            switch (operation.operator()) {
+                case Exponent:
+                    emitMathCall("pow", "(DD)D");
+                    break;
+                case Division:
+                    emit(DDIV);
+                    break;
+                case Multiplication:
+                    emit(DMUL);
+                    break;
+                case Addition:
+                    emit(DADD);
+                    break;
+                case Subtraction:
+                    emit(DSUB);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected operator: " + operation.operator().name());
+            }
+            pop(2); // two doubles in, one double out
+        }
+
+        /**
+         * Write the instructions of a function call. A built-in function calls its java.lang.Math method,
+         * once per argument after the first for a variadic one. Any other function loads its operator from
+         * its field, pushes the arguments, and calls the operator through its interface. The arguments of a
+         * variadic function are passed as a new array, which HotSpot can avoid allocating once the call is inlined.
+         */
+        private void emitCall(CompiledFunction call) {
+            MathFunction function = call.function();
+            int argumentCount = call.argumentCount();
+
+            String javaMathMethod = function.javaMathMethod();
+            if(javaMathMethod != null){
+                emitNode(call.argument(0));
+                if(function.arity() == 1){
+                    emitMathCall(javaMathMethod, "(D)D");
+                    return;
+                }
+
+                for (int i = 1; i < argumentCount; i++) {
+                    emitNode(call.argument(i));
+                    emitMathCall(javaMathMethod, "(DD)D");
+                    pop(2);
+                }
+                return;
+            }
+
+            String operatorInterface = operatorInterfaceOf(function);
+            String fieldDescriptor = "L" + operatorInterface + ";";
+            emit(ALOAD_0);
+            push(1);
+            emitInstruction(GETFIELD,
+                    classWriter.fieldConstant(CLASS_NAME, fieldName(functions.indexOf(function)), fieldDescriptor));
+
+            switch (function.arity()) {
+                case 1:
+                    emitNode(call.argument(0));
+                    emitInterfaceCall(operatorInterface, "applyAsDouble", "(D)D", 3);
+                    break;
+                case 2:
+                    emitNode(call.argument(0));
+                    emitNode(call.argument(1));
+                    emitInterfaceCall(operatorInterface, "applyAsDouble", "(DD)D", 5);
+                    break;
+                default:
+                    emitInt(argumentCount);
+                    emit(NEWARRAY);
+                    emit(T_DOUBLE);
+                    for (int i = 0; i < argumentCount; i++) {
+                        emit(DUP);
+                        push(1);
+                        emitInt(i);
+                        emitNode(call.argument(i));
+                        emit(DASTORE);
+                        pop(4);
+                    }
+                    emitInt(0);
+                    emitInt(argumentCount);
+                    emitInterfaceCall(operatorInterface, "apply", "([DII)D", 4);
+                    break;
+            }
+        }
+
+        /**
+         * Call a method of an interface, which replaces the receiver and the arguments with a double.
+         * @param argumentWords The number of words taken from the stack, including the receiver
+         */
+        private void emitInterfaceCall(String owner, String name, String descriptor, int argumentWords) {
+            emitInstruction(INVOKEINTERFACE, classWriter.interfaceMethodConstant(owner, name, descriptor));
+            emit(argumentWords);
+            emit(0);
+            pop(argumentWords);
+            push(2);
+        }
+
+        private void emitMathCall(String name, String descriptor) {
+            emitInstruction(INVOKESTATIC, classWriter.methodConstant("java/lang/Math", name, descriptor));
+        }
+
+        private void emitInstruction(int opcode, int constantIndex) {
+            emit(opcode);
+            emitShort(constantIndex);
+        }
+
+        private void emitInt(int value) {
+            writeInt(code, value);
+            push(1);
+        }
+
+        void emit(int opcode) {
+            code.write(opcode);
+        }
+
+        private void emitShort(int value) {
+            code.write(value >> 8);
+            code.write(value);
+        }
+
+        private void push(int words) {
+            stack += words;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void pop(int words) {
+            stack -= words;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.ikemole.expressionevaluator.compiled.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A minimal writer for JVM class files. It supports just enough of the format to describe
+ * a final class with private final fields and straight-line methods: a constant pool of
+ * classes, field and method references and doubles, fields, and methods with a Code attribute.
+ * Methods must not contain branches, since no stack map frames are written.
+ */
+class ClassFileWriter {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int JAVA_8_VERSION = 52;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final byte CONSTANT_UTF8 = 1;
+    private static final byte CONSTANT_DOUBLE = 6;
+    private static final byte CONSTANT_CLASS = 7;
+    private static final byte CONSTANT_FIELDREF = 9;
+    private static final byte CONSTANT_METHODREF = 10;
+    private static final byte CONSTANT_INTERFACE_METHODREF = 11;
+    private static final byte CONSTANT_NAME_AND_TYPE = 12;
+
+    private ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private Map<String, Integer> constantIndexes = new HashMap<>();
+    private int constantCount = 1; // the constant pool is indexed from 1
+
+    private ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+    private DataOutputStream fields = new DataOutputStream(fieldBytes);
+    private int fieldCount;
+
+    private ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount;
+
+    private int thisClass;
+    private int superClass;
+    private int[] interfaces;
+
+    /**
+     * @param className The internal name of the class, e.g. "com/example/Foo"
+     * @param interfaceNames The internal names of the interfaces the class implements
+     */
+    ClassFileWriter(String className, String... interfaceNames){
+        thisClass = classConstant(className);
+        superClass = classConstant("java/lang/Object");
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++)
+            interfaces[i] = classConstant(interfaceNames[i]);
+    }
+
+    /**
+     * Add a private final field.
+     * @param name The name of the field
+     * @param descriptor The descriptor of the field, e.g. "Ljava/lang/Object;"
+     */
+    void addField(String name, String descriptor){
+        try {
+            fields.writeShort(ACC_PRIVATE | ACC_FINAL);
+            fields.writeShort(utf8Constant(name));
+            fields.writeShort(utf8Constant(descriptor));
+            fields.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fieldCount++;
+    }
+
+    /**
+     * Add a public method.
+     * @param name The name of the method
+     * @param descriptor The descriptor of the method, e.g. "([D)D"
+     * @param code The bytecode of the method
+     * @param maxStack The maximum depth of the operand stack, in words
+     * @param maxLocals The number of local variable words, including "this" and the parameters
+     */
+    void addMethod(String name, String descriptor, byte[] code, int maxStack, int maxLocals){
+        try {
+            methods.writeShort(ACC_PUBLIC);
+            methods.writeShort(utf8Constant(name));
+            methods.writeShort(utf8Constant(descriptor));
+            methods.writeShort(1); // attributes: Code
+
+            methods.writeShort(utf8Constant("Code"));
+            methods.writeInt(12 + code.length);
+            methods.writeShort(maxStack);
+            methods.writeShort(maxLocals);
+            methods.writeInt(code.length);
+            methods.write(code);
+            methods.writeShort(0); // exception table
+            methods.writeShort(0); // attributes of the Code attribute
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methodCount++;
+    }
+
+    /**
+     * Get the bytes of the complete class file.
+     */
+    byte[] toByteArray(){
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(classBytes);
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(JAVA_8_VERSION);
+            out.writeShort(constantCount);
+            constantPoolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int anInterface : interfaces)
+                out.writeShort(anInterface);
+            out.writeShort(fieldCount);
+            fieldBytes.writeTo(out);
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return classBytes.toByteArray();
+    }
+
+    int utf8Constant(String value){
+        String key = "U" + value;
+        Integer index = constantIndexes.get(key);
+        if(index != null)
+            return index;
+
+        try {
+            constantPool.writeByte(CONSTANT_UTF8);
+            constantPool.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return addConstant(key, 1);
+    }
+
+    int classConstant(String internalName){
+        String key = "C" + internalName;
+        Integer index = constantIndexes.get(key);
+        if(index != null)
+            return index;
+
+        int nameIndex = utf8Constant(internalName);
+        writeConstant(CONSTANT_CLASS, nameIndex);
+        return addConstant(key, 1);
+    }
+
+    int methodConstant(String owner, String name, String descriptor){
+        return memberConstant(CONSTANT_METHODREF, "M", owner, name, descriptor);
+    }
+
+    int interfaceMethodConstant(String owner, String name, String descriptor){
+        return memberConstant(CONSTANT_INTERFACE_METHODREF, "I", owner, name, descriptor);
+    }
+
+    int fieldConstant(String owner, String name, String descriptor){
+        return memberConstant(CONSTANT_FIELDREF, "F", owner, name, descriptor);
+    }
+
+    private int memberConstant(byte tag, String keyPrefix, String owner, String name, String descriptor){
+        String key = keyPrefix + owner + "." + name + descriptor;
+        Integer index = constantIndexes.get(key);
+        if(index != null)
+            return index;
+
+        int classIndex = classConstant(owner);
+        int nameAndTypeIndex = nameAndTypeConstant(name, descriptor);
+        writeConstant(tag, classIndex, nameAndTypeIndex);
+        return addConstant(key, 1);
+    }
+
+    private int nameAndTypeConstant(String name, String descriptor){
+        String key = "N" + name + descriptor;
+        Integer index = constantIndexes.get(key);
+        if(index != null)
+            return index;
+
+        int nameIndex = utf8Constant(name);
+        int descriptorIndex = utf8Constant(descriptor);
+        writeConstant(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+        return addConstant(key, 1);
+    }
+
+    int doubleConstant(double value){
+        long bits = Double.doubleToRawLongBits(value);
+        String key = "D" + bits;
+        Integer index = constantIndexes.get(key);
+        if(index != null)
+            return index;
+
+        try {
+            constantPool.writeByte(CONSTANT_DOUBLE);
+            constantPool.writeLong(bits);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return addConstant(key, 2); // a double takes two entries in the constant pool
+    }
+
+    private void writeConstant(byte tag, int... indexes){
+        try {
+            constantPool.writeByte(tag);
+            for (int index : indexes)
+                constantPool.writeShort(index);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int addConstant(String key, int size){
+        int index = constantCount;
+        constantCount += size;
+        if(constantCount > 0xFFFF)
+            throw new IllegalArgumentException("The constant pool of the class is too large");
+
+        constantIndexes.put(key, index);
+        return index;
+    }
+}
@@ -0,0 +1,34 @@
+package com.ikemole.expressionevaluator.file;
+
+/**
+ * The outcome of evaluating a file: how many lines were read and how many of them could not be evaluated.
+ * The failed lines are marked in the output file itself.
+ */
+public class FileEvaluationSummary {
+    private final long lineCount;
+    private final long errorCount;
+
+    public FileEvaluationSummary(long lineCount, long errorCount){
+        this.lineCount = lineCount;
+        this.errorCount = errorCount;
+    }
+
+    /**
+     * The number of lines in the input, including empty lines.
+     */
+    public long lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * The number of lines whose output is an error instead of a result.
+     */
+    public long errorCount() {
+        return errorCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s lines, %s errors", lineCount, errorCount);
+    }
+}
@@ -0,0 +1,134 @@
+package com.ikemole.expressionevaluator.file;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class evaluates a file of independent expressions, one per line, and writes the result of each line
+ * to an output file in the same order.
+ * <p>
+ * The input is memory-mapped rather than read through a stream, and split on line boundaries into chunks.
+ * Each chunk is parsed straight from the mapped bytes and evaluated by a fork-join pool. The results are
+ * written as soon as every chunk before them is written, and only a few chunks per thread are in flight at a
+ * time, so the memory used does not grow with the size of the file.
+ * <p>
+ * Line n of the output holds the result of line n of the input. A line that cannot be evaluated does not stop
+ * the job: its output line holds "error: " followed by the message. Empty lines stay empty. The input must be
+ * ASCII, and lines may end with "\n" or "\r\n".
+ */
+public class FileEvaluator {
+    private static final int CHUNK_BYTES = 1 << 18;
+    private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 4;
+    // A single mapping cannot be larger than this, so larger files are mapped one region at a time
+    private static final long MAX_REGION_BYTES = Integer.MAX_VALUE;
+
+    private final ExpressionEvaluator evaluator;
+
+    public FileEvaluator(ExpressionEvaluator evaluator){
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Evaluate every line of the input file and write the results to the output file, which is created or
+     * replaced. The chunks are evaluated by the given pool; the calling thread maps the input and writes the output.
+     * @param input The file of expressions, one per line
+     * @param output The file that receives one result per line
+     * @param pool The pool whose threads evaluate the chunks
+     * @return The number of lines evaluated and the number that failed
+     */
+    public FileEvaluationSummary evaluate(Path input, Path output, ForkJoinPool pool) throws IOException {
+        long lineCount = 0;
+        long errorCount = 0;
+        Deque<LineChunkTask> inFlight = new ArrayDeque<>();
+        int maxInFlight = pool.getParallelism() * CHUNKS_IN_FLIGHT_PER_THREAD;
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long regionStart = 0;
+
+            while (regionStart < size) {
+                long regionLength = Math.min(MAX_REGION_BYTES, size - regionStart);
+                MappedByteBuffer region = in.map(FileChannel.MapMode.READ_ONLY, regionStart, regionLength);
+                int regionEnd = (int) regionLength;
+                if(regionStart + regionLength < size)
+                    regionEnd = lineBoundaryBefore(region, regionEnd, regionStart);
+
+                for (int chunkStart = 0; chunkStart < regionEnd; ) {
+                    int chunkEnd = chunkEnd(region, chunkStart, regionEnd);
+                    LineChunkTask task = new LineChunkTask(evaluator, region, chunkStart, chunkEnd);
+                    pool.execute(task);
+                    inFlight.addLast(task);
+                    chunkStart = chunkEnd;
+
+                    if(inFlight.size() >= maxInFlight){
+                        LineChunkTask done = write(inFlight.removeFirst(), out);
+                        lineCount += done.lineCount();
+                        errorCount += done.errorCount();
+                    }
+                }
+
+                regionStart += regionEnd;
+            }
+
+            while (!inFlight.isEmpty()) {
+                LineChunkTask done = write(inFlight.removeFirst(), out);
+                lineCount += done.lineCount();
+                errorCount += done.errorCount();
+            }
+        } finally {
+            for (LineChunkTask task : inFlight)
+                task.cancel(false);
+        }
+
+        return new FileEvaluationSummary(lineCount, errorCount);
+    }
+
+    /**
+     * Wait for a chunk to be evaluated and append its results to the output.
+     */
+    private static LineChunkTask write(LineChunkTask task, FileChannel out) throws IOException {
+        task.join();
+        ByteBuffer bytes = ByteBuffer.wrap(task.output());
+        while (bytes.hasRemaining())
+            out.write(bytes);
+
+        return task;
+    }
+
+    /**
+     * Find the end of a chunk: the first line boundary after "start" plus CHUNK_BYTES, or "end".
+     */
+    private static int chunkEnd(ByteBuffer buffer, int start, int end) {
+        if(end - start <= CHUNK_BYTES)
+            return end;
+
+        for (int i = start + CHUNK_BYTES; i < end; i++) {
+            if(buffer.get(i) == '\n')
+                return i + 1;
+        }
+        return end;
+    }
+
+    /**
+     * Find the index just after the last newline of a region, so that no line is split between two regions.
+     */
+    private static int lineBoundaryBefore(ByteBuffer region, int end, long regionStart) throws IOException {
+        for (int i = end - 1; i >= 0; i--) {
+            if(region.get(i) == '\n')
+                return i + 1;
+        }
+        throw new IOException(String.format(
+                "The line at byte %s is longer than %s bytes", regionStart, MAX_REGION_BYTES));
+    }
+}
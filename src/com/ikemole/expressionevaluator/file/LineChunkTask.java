@@ -0,0 +1,93 @@
+package com.ikemole.expressionevaluator.file;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.structure.AsciiCharSequence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fork-join task that evaluates the lines in a range of a mapped file. The range starts at the beginning
+ * of a line and ends just after a newline, or at the end of the file. The results are rendered into the
+ * text of the output, one line per input line, which is kept until the task is written out.
+ */
+class LineChunkTask extends RecursiveAction {
+    static final String ERROR_PREFIX = "error: ";
+
+    private final ExpressionEvaluator evaluator;
+    private final ByteBuffer buffer;
+    private final int from;
+    private final int to;
+
+    private byte[] output;
+    private int lineCount;
+    private int errorCount;
+
+    LineChunkTask(ExpressionEvaluator evaluator, ByteBuffer buffer, int from, int to){
+        this.evaluator = evaluator;
+        this.buffer = buffer;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        StringBuilder sb = new StringBuilder();
+        int lineStart = from;
+
+        while (lineStart < to) {
+            int lineEnd = lineStart;
+            while (lineEnd < to && buffer.get(lineEnd) != '\n')
+                lineEnd++;
+
+            int next = lineEnd + 1;
+            if(lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r')
+                lineEnd--;
+
+            evaluateLine(lineStart, lineEnd, sb);
+            lineCount++;
+            lineStart = next;
+        }
+
+        output = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append the result of one line, or its error, to the output. An empty line, or one that holds
+     * nothing but whitespace, stays empty.
+     */
+    private void evaluateLine(int lineStart, int lineEnd, StringBuilder sb) {
+        if(!isBlank(lineStart, lineEnd)){
+            try {
+                sb.append(evaluator.evaluate(new AsciiCharSequence(buffer, lineStart, lineEnd - lineStart)));
+            } catch (BadExpressionException | IllegalArgumentException e) {
+                sb.append(ERROR_PREFIX).append(e.getMessage());
+                errorCount++;
+            }
+        }
+
+        sb.append('\n');
+    }
+
+    private boolean isBlank(int lineStart, int lineEnd) {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if(!Character.isWhitespace((char) buffer.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    byte[] output() {
+        return output;
+    }
+
+    int lineCount() {
+        return lineCount;
+    }
+
+    int errorCount() {
+        return errorCount;
+    }
+}
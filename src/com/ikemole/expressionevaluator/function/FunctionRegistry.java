@@ -0,0 +1,110 @@
+package com.ikemole.expressionevaluator.function;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The functions and named constants that expressions can use, looked up by name when an expression is parsed.
+ * <p>
+ * The built-in registry has the functions abs, sqrt, cbrt, exp, log (the natural logarithm), log10, sin, cos,
+ * tan, floor, ceil, min and max. The constants pi and e are only added by {@link #withBuiltInConstants()},
+ * so that by default they stay ordinary variable names. More functions and constants can be registered.
+ * A name that is followed by a bracket is a function call, such as sqrt(x). Any other name is a constant if
+ * one is registered under it, and a variable otherwise.
+ * <p>
+ * A registry can be shared between threads. Expressions that were already parsed keep the functions and
+ * constant values they were parsed with, so functions should be registered before expressions are compiled.
+ */
+public class FunctionRegistry {
+    private final Map<String, MathFunction> functions = new ConcurrentHashMap<>();
+    private final Map<String, Double> constants = new ConcurrentHashMap<>();
+
+    /**
+     * Create a registry with no functions or constants.
+     */
+    public FunctionRegistry(){
+    }
+
+    /**
+     * Create a registry that holds the built-in functions. It has no constants, so names such as e and pi
+     * are variables.
+     */
+    public static FunctionRegistry withBuiltIns() {
+        FunctionRegistry registry = new FunctionRegistry();
+        registry.register(MathFunction.javaMath("abs", Math::abs));
+        registry.register(MathFunction.javaMath("sqrt", Math::sqrt));
+        registry.register(MathFunction.javaMath("cbrt", Math::cbrt));
+        registry.register(MathFunction.javaMath("exp", Math::exp));
+        registry.register(MathFunction.javaMath("log", Math::log));
+        registry.register(MathFunction.javaMath("log10", Math::log10));
+        registry.register(MathFunction.javaMath("sin", Math::sin));
+        registry.register(MathFunction.javaMath("cos", Math::cos));
+        registry.register(MathFunction.javaMath("tan", Math::tan));
+        registry.register(MathFunction.javaMath("floor", Math::floor));
+        registry.register(MathFunction.javaMath("ceil", Math::ceil));
+        registry.register(MathFunction.javaMathFold("min", Math::min));
+        registry.register(MathFunction.javaMathFold("max", Math::max));
+        return registry;
+    }
+
+    /**
+     * Create a registry that holds the built-in functions and the constants pi and e. An expression parsed
+     * with it can no longer use pi or e as variables.
+     */
+    public static FunctionRegistry withBuiltInConstants() {
+        return withBuiltIns()
+                .registerConstant("pi", Math.PI)
+                .registerConstant("e", Math.E);
+    }
+
+    /**
+     * Add a function, replacing any function with the same name.
+     * @return This registry
+     */
+    public FunctionRegistry register(MathFunction function) {
+        functions.put(function.name(), function);
+        return this;
+    }
+
+    /**
+     * Add a named constant, replacing any constant with the same name. The name is replaced by the value
+     * when an expression is parsed, so constants are folded like numbers.
+     * @return This registry
+     */
+    public FunctionRegistry registerConstant(String name, double value) {
+        if(!isValidName(name))
+            throw new IllegalArgumentException("Not a valid constant name: \"" + name + "\"");
+
+        constants.put(name, value);
+        return this;
+    }
+
+    /**
+     * Get the function with the given name, or null if there is none.
+     */
+    public MathFunction function(String name) {
+        return functions.get(name);
+    }
+
+    /**
+     * Get the value of the constant with the given name, or null if there is none.
+     */
+    public Double constant(String name) {
+        return constants.get(name);
+    }
+
+    /**
+     * Check if a name can be used in an expression: a letter or underscore, followed by letters,
+     * digits or underscores.
+     */
+    static boolean isValidName(String name) {
+        if(name == null || name.isEmpty() || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_'))
+            return false;
+
+        for (int i = 1; i < name.length(); i++) {
+            if(!Character.isLetterOrDigit(name.charAt(i)) && name.charAt(i) != '_')
+                return false;
+        }
+        return true;
+    }
+}
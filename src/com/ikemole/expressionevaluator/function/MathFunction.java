@@ -0,0 +1,176 @@
+package com.ikemole.expressionevaluator.function;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A named function that can be called from an expression, such as sqrt(x) or max(a, b, c).
+ * A function takes one argument, two arguments, or a variable number of arguments, and is backed by a
+ * DoubleUnaryOperator, a DoubleBinaryOperator or a VarargsOperator.
+ * <p>
+ * A pure function always gives the same result for the same arguments and has no side effects.
+ * Only calls to pure functions are computed at compile time when all their arguments are constants,
+ * and only they are shared when the same call appears more than once.
+ * <p>
+ * A function is resolved when an expression is parsed, and the parsed expression refers to it directly,
+ * so calling it needs no lookup by name.
+ */
+public final class MathFunction {
+    /** The arity of a function that takes a variable number of arguments. */
+    public static final int VARIADIC = -1;
+
+    private final String name;
+    private final int arity;
+    private final int minimumArguments;
+    private final boolean pure;
+    private final DoubleUnaryOperator unaryOperator;
+    private final DoubleBinaryOperator binaryOperator;
+    private final VarargsOperator varargsOperator;
+    private final String javaMathMethod;
+
+    private MathFunction(String name, int arity, int minimumArguments, boolean pure, DoubleUnaryOperator unaryOperator,
+                         DoubleBinaryOperator binaryOperator, VarargsOperator varargsOperator, String javaMathMethod){
+        if(!FunctionRegistry.isValidName(name))
+            throw new IllegalArgumentException("Not a valid function name: \"" + name + "\"");
+
+        this.name = name;
+        this.arity = arity;
+        this.minimumArguments = minimumArguments;
+        this.pure = pure;
+        this.unaryOperator = unaryOperator;
+        this.binaryOperator = binaryOperator;
+        this.varargsOperator = varargsOperator;
+        this.javaMathMethod = javaMathMethod;
+    }
+
+    /**
+     * Create a function of one argument.
+     * @param name The name used to call the function in an expression
+     * @param operator The implementation of the function
+     * @param pure Whether the function always gives the same result for the same argument
+     */
+    public static MathFunction unary(String name, DoubleUnaryOperator operator, boolean pure) {
+        return new MathFunction(name, 1, 1, pure, operator, null, null, null);
+    }
+
+    /**
+     * Create a function of two arguments.
+     * @param name The name used to call the function in an expression
+     * @param operator The implementation of the function
+     * @param pure Whether the function always gives the same result for the same arguments
+     */
+    public static MathFunction binary(String name, DoubleBinaryOperator operator, boolean pure) {
+        return new MathFunction(name, 2, 2, pure, null, operator, null, null);
+    }
+
+    /**
+     * Create a function that takes a variable number of arguments.
+     * @param name The name used to call the function in an expression
+     * @param minimumArguments The smallest number of arguments the function accepts, at least 1
+     * @param operator The implementation of the function
+     * @param pure Whether the function always gives the same result for the same arguments
+     */
+    public static MathFunction varargs(String name, int minimumArguments, VarargsOperator operator, boolean pure) {
+        if(minimumArguments < 1)
+            throw new IllegalArgumentException("A function must take at least one argument: " + minimumArguments);
+
+        return new MathFunction(name, VARIADIC, minimumArguments, pure, null, null, operator, null);
+    }
+
+    /**
+     * A built-in function of one argument that is computed by the static method of java.lang.Math
+     * with the same name.
+     */
+    static MathFunction javaMath(String name, DoubleUnaryOperator operator) {
+        return new MathFunction(name, 1, 1, true, operator, null, null, name);
+    }
+
+    /**
+     * A built-in function of any number of arguments that is computed by folding the arguments from the left
+     * with the static method of java.lang.Math with the same name, such as Math.max.
+     */
+    static MathFunction javaMathFold(String name, DoubleBinaryOperator operator) {
+        VarargsOperator fold = (arguments, from, to) -> {
+            double result = arguments[from];
+            for (int i = from + 1; i < to; i++)
+                result = operator.applyAsDouble(result, arguments[i]);
+            return result;
+        };
+        return new MathFunction(name, VARIADIC, 1, true, null, null, fold, name);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * The number of arguments of the function: 1, 2, or VARIADIC.
+     */
+    public int arity() {
+        return arity;
+    }
+
+    public boolean isPure() {
+        return pure;
+    }
+
+    /**
+     * Check if the function can be called with the given number of arguments.
+     */
+    public boolean accepts(int argumentCount) {
+        return arity == VARIADIC ? argumentCount >= minimumArguments : argumentCount == arity;
+    }
+
+    /**
+     * The implementation of a function of one argument, or null.
+     */
+    public DoubleUnaryOperator unaryOperator() {
+        return unaryOperator;
+    }
+
+    /**
+     * The implementation of a function of two arguments, or null.
+     */
+    public DoubleBinaryOperator binaryOperator() {
+        return binaryOperator;
+    }
+
+    /**
+     * The implementation of a function of a variable number of arguments, or null.
+     */
+    public VarargsOperator varargsOperator() {
+        return varargsOperator;
+    }
+
+    /**
+     * The name of the static method of java.lang.Math that computes this function, or null.
+     * The bytecode backend calls that method directly, so that HotSpot can use its intrinsic for it.
+     * A variadic function calls the method of two arguments once for each argument after the first.
+     */
+    public String javaMathMethod() {
+        return javaMathMethod;
+    }
+
+    /**
+     * Call the function with the arguments in a range of an array.
+     * @param arguments The array that holds the arguments
+     * @param from The index of the first argument
+     * @param to The index just after the last argument
+     * @return The result of the function
+     */
+    public double apply(double[] arguments, int from, int to) {
+        switch (arity) {
+            case 1:
+                return unaryOperator.applyAsDouble(arguments[from]);
+            case 2:
+                return binaryOperator.applyAsDouble(arguments[from], arguments[from + 1]);
+            default:
+                return varargsOperator.apply(arguments, from, to);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,17 @@
+package com.ikemole.expressionevaluator.function;
+
+/**
+ * A function of any number of double arguments, such as max(a, b, c).
+ */
+public interface VarargsOperator {
+
+    /**
+     * Compute the function. The arguments are read from a range of an array, so that a compiled expression
+     * can pass its operand stack without copying it. The array must not be modified or kept.
+     * @param arguments The array that holds the arguments
+     * @param from The index of the first argument
+     * @param to The index just after the last argument
+     * @return The result of the function
+     */
+    double apply(double[] arguments, int from, int to);
+}
@@ -0,0 +1,123 @@
+package com.ikemole.expressionevaluator.graph;
+
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.VariableBindings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A named cell of a FormulaGraph: either an input, whose value is set directly, or a formula, whose value
+ * is computed from the cells it refers to. A name that is referred to before it is defined is an input
+ * without a value.
+ */
+class FormulaCell {
+    private static final FormulaCell[] NO_DEPENDENCIES = new FormulaCell[0];
+
+    private final String name;
+    private CompiledExpression compiledExpression;
+    private VariableBindings bindings;
+    // the cell of each variable of the formula, indexed by slot
+    private FormulaCell[] dependencies = NO_DEPENDENCIES;
+    // the formulas that refer to this cell
+    private final List<FormulaCell> dependents = new ArrayList<>();
+
+    private double value;
+    private boolean hasValue;
+    private String error;
+
+    // set while the cell waits to be recalculated
+    boolean dirty;
+    // the number of dirty dependencies that have not been recalculated yet
+    final AtomicInteger pendingDependencies = new AtomicInteger();
+
+    FormulaCell(String name){
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    boolean isFormula() {
+        return compiledExpression != null;
+    }
+
+    FormulaCell[] dependencies() {
+        return dependencies;
+    }
+
+    List<FormulaCell> dependents() {
+        return dependents;
+    }
+
+    /**
+     * Make this cell a formula, replacing its previous formula or value.
+     * @param dependencies The cell of each variable of the expression, indexed by slot
+     */
+    void setFormula(CompiledExpression compiledExpression, FormulaCell[] dependencies){
+        for (FormulaCell dependency : this.dependencies)
+            dependency.dependents.remove(this);
+        for (FormulaCell dependency : dependencies)
+            dependency.dependents.add(this);
+
+        this.compiledExpression = compiledExpression;
+        this.bindings = compiledExpression.newBindings();
+        this.dependencies = dependencies;
+        this.hasValue = false;
+    }
+
+    /**
+     * Set the value of an input.
+     * @return Whether the value changed
+     */
+    boolean setValue(double value){
+        if(hasValue && Double.compare(this.value, value) == 0)
+            return false;
+
+        this.value = value;
+        this.hasValue = true;
+        return true;
+    }
+
+    double value() {
+        return value;
+    }
+
+    /**
+     * The reason this cell has no value, or null if it has one.
+     */
+    String error() {
+        if(error == null && !hasValue)
+            return String.format("The variable \"%s\" has no value", name);
+
+        return error;
+    }
+
+    /**
+     * Compute the formula from the values of its dependencies, which must all be up to date.
+     * A formula that refers to a cell without a value gets the error of that cell instead of a value.
+     */
+    void recalculate(){
+        dirty = false;
+        for (int slot = 0; slot < dependencies.length; slot++) {
+            String dependencyError = dependencies[slot].error();
+            if(dependencyError != null){
+                error = dependencyError;
+                hasValue = false;
+                return;
+            }
+            bindings.set(slot, dependencies[slot].value);
+        }
+
+        value = compiledExpression.evaluate(bindings);
+        hasValue = true;
+        error = null;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
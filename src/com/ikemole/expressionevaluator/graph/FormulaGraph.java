@@ -0,0 +1,223 @@
+package com.ikemole.expressionevaluator.graph;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A set of named formulas that refer to each other and to inputs by name, like the cells of a spreadsheet.
+ * Example: after defining "gross" as "net * (1 + rate)" and "net" as "price * quantity", setting the inputs
+ * price, quantity and rate gives a value for both formulas.
+ * <p>
+ * Each formula is compiled once, when it is defined, and keeps its result. Changing an input or a formula
+ * only marks the formulas that depend on it as dirty, and only those are recalculated, in dependency order.
+ * Formulas that do not depend on each other are recalculated in parallel on a fork-join pool.
+ * A formula that would refer to itself, directly or through other formulas, is rejected.
+ * <p>
+ * A name that is used before it is defined is an input without a value, and a formula that depends on it
+ * has no value until it is set. A graph is thread-safe: its methods are synchronized, and a recalculation
+ * holds the lock until every formula is up to date.
+ */
+public class FormulaGraph {
+    // Below this many dirty formulas, the overhead of forking tasks is larger than the work
+    static final int PARALLEL_THRESHOLD = 256;
+
+    private final ExpressionEvaluator evaluator;
+    private final Map<String, FormulaCell> cells = new HashMap<>();
+    private final List<FormulaCell> dirtyCells = new ArrayList<>();
+
+    /**
+     * @param evaluator The evaluator that compiles the formulas, with its functions, cache and metrics
+     */
+    public FormulaGraph(ExpressionEvaluator evaluator){
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Define a formula, or replace the formula or input with the same name.
+     * Every variable of the expression refers to the formula or input with that name.
+     * @param name The name that other formulas use to refer to this one
+     * @param expression The expression of the formula, such as "net * (1 + rate)"
+     * @throws BadExpressionException If the expression is not valid, or it refers to the formula itself.
+     *                                The graph is not changed in that case.
+     */
+    public synchronized void define(String name, String expression) throws BadExpressionException {
+        CompiledExpression compiledExpression = evaluator.compile(expression);
+        // the cells of new names are only added to the graph once the formula is accepted
+        Map<String, FormulaCell> newCells = new HashMap<>();
+        FormulaCell cell = cell(name, newCells);
+
+        FormulaCell[] dependencies = new FormulaCell[compiledExpression.variableCount()];
+        for (int slot = 0; slot < dependencies.length; slot++)
+            dependencies[slot] = cell(compiledExpression.variableName(slot), newCells);
+
+        checkForCycle(cell, dependencies);
+        cells.putAll(newCells);
+        cell.setFormula(compiledExpression, dependencies);
+        markDirty(cell);
+    }
+
+    private FormulaCell cell(String name, Map<String, FormulaCell> newCells){
+        FormulaCell cell = cells.get(name);
+        return cell != null ? cell : newCells.computeIfAbsent(name, FormulaCell::new);
+    }
+
+    /**
+     * Set the value of an input. The formulas that depend on it are recalculated the next time a value
+     * is read or the graph is recalculated. Setting the value an input already has changes nothing.
+     * @param name The name of the input
+     * @param value The new value
+     * @throws IllegalArgumentException If the name is the name of a formula
+     */
+    public synchronized void setInput(String name, double value) {
+        FormulaCell cell = cells.computeIfAbsent(name, FormulaCell::new);
+        if(cell.isFormula())
+            throw new IllegalArgumentException(String.format("\"%s\" is a formula, not an input", name));
+
+        if(cell.setValue(value))
+            markDependentsDirty(cell);
+    }
+
+    /**
+     * Get the value of a formula or an input, recalculating the dirty formulas first.
+     * @throws BadExpressionException If the formula depends on an input that has no value
+     * @throws IllegalArgumentException If there is no formula or input with that name
+     */
+    public synchronized double value(String name) throws BadExpressionException {
+        FormulaCell cell = cells.get(name);
+        if(cell == null)
+            throw new IllegalArgumentException(String.format("There is no formula or input named \"%s\"", name));
+
+        recalculate();
+        if(cell.error() != null)
+            throw new BadExpressionException(cell.error());
+
+        return cell.value();
+    }
+
+    /**
+     * Recalculate the dirty formulas, using the common fork-join pool.
+     * @see #recalculate(ForkJoinPool)
+     */
+    public synchronized int recalculate() {
+        return recalculate(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Recalculate every dirty formula after the formulas it depends on. Small sets of dirty formulas are
+     * recalculated on the calling thread, and larger ones in parallel on the given pool.
+     * @param pool The pool whose threads recalculate the formulas
+     * @return The number of formulas that were recalculated
+     */
+    public synchronized int recalculate(ForkJoinPool pool) {
+        List<FormulaCell> readyCells = new ArrayList<>();
+        for (FormulaCell cell : dirtyCells) {
+            int pending = 0;
+            for (FormulaCell dependency : cell.dependencies()) {
+                if(dependency.dirty)
+                    pending++;
+            }
+            cell.pendingDependencies.set(pending);
+            if(pending == 0)
+                readyCells.add(cell);
+        }
+
+        if(dirtyCells.size() < PARALLEL_THRESHOLD || pool.getParallelism() == 1)
+            recalculateInOrder(readyCells);
+        else
+            pool.invoke(new RecalculationTask(readyCells));
+
+        int count = dirtyCells.size();
+        dirtyCells.clear();
+        return count;
+    }
+
+    /**
+     * The number of formulas that will be recalculated by the next recalculation.
+     */
+    public synchronized int dirtyCount() {
+        return dirtyCells.size();
+    }
+
+    private void recalculateInOrder(List<FormulaCell> readyCells){
+        ArrayDeque<FormulaCell> queue = new ArrayDeque<>(readyCells);
+        while (!queue.isEmpty()){
+            FormulaCell cell = queue.poll();
+            cell.recalculate();
+            for (FormulaCell dependent : cell.dependents()) {
+                if(dependent.dirty && dependent.pendingDependencies.decrementAndGet() == 0)
+                    queue.add(dependent);
+            }
+        }
+    }
+
+    private void markDirty(FormulaCell cell){
+        if(!cell.dirty){
+            cell.dirty = true;
+            dirtyCells.add(cell);
+        }
+        markDependentsDirty(cell);
+    }
+
+    /**
+     * Mark every formula downstream of the cell as dirty. A dirty formula's dependents are already dirty,
+     * so the search stops there.
+     */
+    private void markDependentsDirty(FormulaCell cell){
+        ArrayDeque<FormulaCell> stack = new ArrayDeque<>(cell.dependents());
+        while (!stack.isEmpty()){
+            FormulaCell dependent = stack.pop();
+            if(dependent.dirty)
+                continue;
+
+            dependent.dirty = true;
+            dirtyCells.add(dependent);
+            stack.addAll(dependent.dependents());
+        }
+    }
+
+    /**
+     * Check that none of the new dependencies of a cell depends on the cell, so that the graph stays acyclic.
+     * The search keeps, for each cell it reaches, the cell it was reached from, to describe the cycle.
+     */
+    private void checkForCycle(FormulaCell cell, FormulaCell[] dependencies) throws BadExpressionException {
+        Map<FormulaCell, FormulaCell> reachedFrom = new IdentityHashMap<>();
+        ArrayDeque<FormulaCell> stack = new ArrayDeque<>();
+        for (FormulaCell dependency : dependencies) {
+            if(reachedFrom.putIfAbsent(dependency, cell) == null)
+                stack.push(dependency);
+        }
+
+        while (!stack.isEmpty()){
+            FormulaCell current = stack.pop();
+            if(current == cell)
+                throw new BadExpressionException(String.format(
+                        "The formula \"%s\" refers to itself: %s", cell.name(), describeCycle(cell, reachedFrom)));
+
+            for (FormulaCell dependency : current.dependencies()) {
+                if(reachedFrom.putIfAbsent(dependency, current) == null)
+                    stack.push(dependency);
+            }
+        }
+    }
+
+    private String describeCycle(FormulaCell cell, Map<FormulaCell, FormulaCell> reachedFrom){
+        List<String> names = new ArrayList<>();
+        names.add(cell.name());
+        for (FormulaCell current = reachedFrom.get(cell); current != cell; current = reachedFrom.get(current))
+            names.add(current.name());
+        names.add(cell.name());
+
+        Collections.reverse(names);
+        return String.join(" -> ", names);
+    }
+}
@@ -0,0 +1,63 @@
+package com.ikemole.expressionevaluator.graph;
+
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+
+/**
+ * A fork-join task that recalculates a dirty formula and then every dirty formula that becomes ready
+ * because of it. The first formula that becomes ready is recalculated by the same task, so a chain of
+ * formulas runs without forking, and a new task is only forked where the graph branches.
+ * The root task starts one task for each formula that is ready at the start, and completes when
+ * every task it started, directly or not, has completed.
+ */
+class RecalculationTask extends CountedCompleter<Void> {
+    private final FormulaCell cell;
+    private final List<FormulaCell> readyCells;
+
+    /**
+     * Create the root task.
+     * @param readyCells The dirty formulas that have no dirty dependencies
+     */
+    RecalculationTask(List<FormulaCell> readyCells){
+        this.cell = null;
+        this.readyCells = readyCells;
+    }
+
+    private RecalculationTask(CountedCompleter<?> completer, FormulaCell cell){
+        super(completer);
+        this.cell = cell;
+        this.readyCells = null;
+    }
+
+    @Override
+    public void compute() {
+        if(cell == null){
+            for (FormulaCell readyCell : readyCells) {
+                addToPendingCount(1);
+                new RecalculationTask(this, readyCell).fork();
+            }
+            tryComplete();
+            return;
+        }
+
+        FormulaCell current = cell;
+        while (current != null){
+            current.recalculate();
+
+            FormulaCell next = null;
+            for (FormulaCell dependent : current.dependents()) {
+                if(!dependent.dirty || dependent.pendingDependencies.decrementAndGet() != 0)
+                    continue;
+
+                if(next == null){
+                    next = dependent;
+                } else {
+                    addToPendingCount(1);
+                    new RecalculationTask(this, dependent).fork();
+                }
+            }
+            current = next;
+        }
+        tryComplete();
+    }
+}
@@ -0,0 +1,17 @@
+package com.ikemole.expressionevaluator.metrics;
+
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+
+/**
+ * The kind of an error thrown by an evaluator.
+ */
+public enum ErrorKind {
+    // A BadExpressionException, such as an unclosed bracket or an unknown function
+    BadExpression,
+    // An IllegalArgumentException, such as an invalid character or a missing operand
+    IllegalArgument;
+
+    public static ErrorKind of(Exception e) {
+        return e instanceof BadExpressionException ? BadExpression : IllegalArgument;
+    }
+}
@@ -0,0 +1,40 @@
+package com.ikemole.expressionevaluator.metrics;
+
+/**
+ * Receives measurements from an ExpressionEvaluator. This is the extension point for monitoring:
+ * an implementation can forward the measurements to Micrometer, JMX or any other system, or keep them
+ * itself like RecordingMetrics.
+ * <p>
+ * Metrics are off unless an implementation is given to the evaluator. While they are off, the evaluator
+ * does not read the clock or count anything. The methods are called from every thread that uses the
+ * evaluator, so implementations must be thread-safe, and they should be cheap, since they are called on
+ * every evaluation.
+ */
+public interface EvaluatorMetrics {
+
+    /**
+     * Called after each phase of the work with the time it took.
+     * @param phase The phase that was measured
+     * @param nanos The elapsed time in nanoseconds
+     */
+    void recordLatency(Phase phase, long nanos);
+
+    /**
+     * Called after expressions were evaluated successfully: once for a single expression, and once for
+     * a whole batch of rows.
+     * @param expressionCount The number of expressions, or rows of a batch, that were evaluated
+     * @param operatorCount The total number of operators, brackets and function calls that were computed
+     */
+    void recordEvaluations(long expressionCount, long operatorCount);
+
+    /**
+     * Called when parsing or evaluating an expression throws an exception.
+     */
+    void recordError(ErrorKind kind);
+
+    /**
+     * Called each time an expression is looked up in the cache of compiled expressions.
+     * @param hit Whether the expression was found
+     */
+    void recordCacheLookup(boolean hit);
+}
@@ -0,0 +1,94 @@
+package com.ikemole.expressionevaluator.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of latencies in nanoseconds, laid out like HdrHistogram.
+ * <p>
+ * Values below 256 each have a bucket of their own. Above that, every power of two is split into
+ * 128 buckets of equal width, so a value is recorded with a relative error below 1% whatever its size,
+ * and the whole range of a long fits in a fixed array. Recording a value is one atomic increment.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKET_COUNT;
+    private static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency. Negative values are recorded as zero.
+     */
+    public void record(long nanos){
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value))
+            current = max.get();
+    }
+
+    public long count(){
+        return count.get();
+    }
+
+    public long max(){
+        return max.get();
+    }
+
+    /**
+     * The mean of the recorded latencies, or 0 if none were recorded.
+     */
+    public double mean(){
+        long n = count.get();
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    /**
+     * Get the latency that the given percentage of the recorded latencies do not exceed, to within
+     * the width of its bucket.
+     * @param percentile A percentage from 0 to 100
+     * @return The highest value in the bucket of that percentile, or 0 if no latencies were recorded
+     */
+    public long valueAtPercentile(double percentile){
+        if(percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("A percentile must be between 0 and 100: " + percentile);
+
+        long n = count.get();
+        if(n == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if(seen >= rank)
+                return Math.min(highestValueInBucket(i), max.get());
+        }
+        return max.get();
+    }
+
+    static int bucketIndex(long value){
+        if(value < LINEAR_LIMIT)
+            return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    static long highestValueInBucket(int index){
+        if(index < LINEAR_LIMIT)
+            return index;
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index - shift * SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,15 @@
+package com.ikemole.expressionevaluator.metrics;
+
+/**
+ * A phase of the work of an evaluator whose latency is measured.
+ */
+public enum Phase {
+    // Building the chain of an expression, or compiling it
+    Parse,
+    // Computing the result of a parsed or compiled expression
+    Evaluate,
+    // Computing the results of a compiled expression for a whole table of rows
+    Batch,
+    // Rendering the steps of the working into text
+    RenderSteps
+}
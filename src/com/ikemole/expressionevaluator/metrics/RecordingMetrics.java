@@ -0,0 +1,89 @@
+package com.ikemole.expressionevaluator.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An implementation of EvaluatorMetrics that keeps the measurements in memory: a latency histogram
+ * for each phase, and counters for evaluations, operators, errors and cache lookups.
+ * It can be read directly, or polled by an adapter that publishes the values elsewhere.
+ */
+public class RecordingMetrics implements EvaluatorMetrics {
+    private final Map<Phase, LatencyHistogram> latencies = new EnumMap<>(Phase.class);
+    private final Map<ErrorKind, LongAdder> errors = new EnumMap<>(ErrorKind.class);
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder operators = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    public RecordingMetrics(){
+        for (Phase phase : Phase.values())
+            latencies.put(phase, new LatencyHistogram());
+        for (ErrorKind kind : ErrorKind.values())
+            errors.put(kind, new LongAdder());
+    }
+
+    @Override
+    public void recordLatency(Phase phase, long nanos) {
+        latencies.get(phase).record(nanos);
+    }
+
+    @Override
+    public void recordEvaluations(long expressionCount, long operatorCount) {
+        evaluations.add(expressionCount);
+        operators.add(operatorCount);
+    }
+
+    @Override
+    public void recordError(ErrorKind kind) {
+        errors.get(kind).increment();
+    }
+
+    @Override
+    public void recordCacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    /**
+     * The histogram of the latencies of a phase.
+     */
+    public LatencyHistogram latency(Phase phase){
+        return latencies.get(phase);
+    }
+
+    /**
+     * The number of expressions, and rows of batches, that were evaluated successfully.
+     */
+    public long evaluationCount(){
+        return evaluations.sum();
+    }
+
+    /**
+     * The total number of operators, brackets and function calls that were computed.
+     */
+    public long operatorCount(){
+        return operators.sum();
+    }
+
+    public long errorCount(ErrorKind kind){
+        return errors.get(kind).sum();
+    }
+
+    public long cacheHitCount(){
+        return cacheHits.sum();
+    }
+
+    public long cacheMissCount(){
+        return cacheMisses.sum();
+    }
+
+    /**
+     * The fraction of cache lookups that found the expression, or 0 if there were none.
+     */
+    public double cacheHitRate(){
+        long hits = cacheHits.sum();
+        long lookups = hits + cacheMisses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
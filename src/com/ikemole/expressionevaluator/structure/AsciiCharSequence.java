@@ -0,0 +1,71 @@
+package com.ikemole.expressionevaluator.structure;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A view of a region of ASCII bytes as characters, so that an expression can be parsed straight from a
+ * heap or direct ByteBuffer without decoding or copying it. A byte outside ASCII, such as part of a
+ * multi-byte UTF-8 character, is read as the replacement character U+FFFD, which no expression accepts.
+ * <p>
+ * The view reads the buffer with absolute gets, so the position and limit of the buffer are not changed.
+ * The bytes must not change while the view, or a chain built from it, is in use.
+ */
+public final class AsciiCharSequence implements CharSequence {
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    /**
+     * A view of the remaining bytes of the buffer, from its position to its limit.
+     */
+    public AsciiCharSequence(ByteBuffer buffer){
+        this(buffer, buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * A view of "length" bytes of the buffer, starting at the absolute index "offset".
+     */
+    public AsciiCharSequence(ByteBuffer buffer, int offset, int length){
+        if(offset < 0 || length < 0 || offset > buffer.limit() - length)
+            throw new IndexOutOfBoundsException(String.format(
+                    "The region at %s of length %s is outside the buffer limit %s", offset, length, buffer.limit()));
+
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if(index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Index " + index + " is outside a sequence of length " + length);
+
+        byte b = buffer.get(offset + index);
+        return b >= 0 ? (char) b : REPLACEMENT_CHARACTER;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if(start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException(String.format(
+                    "The range [%s, %s) is outside a sequence of length %s", start, end, length));
+
+        return new AsciiCharSequence(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = charAt(i);
+
+        return new String(chars);
+    }
+}
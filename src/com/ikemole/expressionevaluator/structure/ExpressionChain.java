@@ -1,16 +1,14 @@
 package com.ikemole.expressionevaluator.structure;
 
-import com.ikemole.expressionevaluator.structure.node.BracketNode;
 import com.ikemole.expressionevaluator.structure.node.ExpressionNode;
 import com.ikemole.expressionevaluator.structure.node.ExpressionNodeType;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 
 /**
  * This class represents an expression in the form of a linked list.
- * Each node is either a number, an operator or a bracket expression.
+ * Each node is either a number, a variable, an operator, a bracket expression or a function call.
  * The nodes are doubly-linked to each other. Therefore, for an operator node,
  * the "left" node refers to its left operand while the "right" node is the right operand.
  */
@@ -18,30 +16,21 @@ public class ExpressionChain {
     private ExpressionNode first;
     private ExpressionNode last;
     private int nodeCount;
-    private PriorityQueue<ExpressionNode> operatorPriorityQueue;
-    private List<String> steps;
 
-    public ExpressionChain(){
-        initializePriorityQueue();
-        steps = new ArrayList<>();
-    }
-
-    private void initializePriorityQueue() {
-        // The priority of an operator is based on the integer value of its ExpressionNodeType enum.
-        // That is, a higher number means higher priority (following the BODMAS rule).
-        // If they're the same type, the first one in the expression gets higher priority.
-        operatorPriorityQueue = new PriorityQueue<>((operator1, operator2) -> {
-            if(operator2.type() != operator1.type())
-                return operator2.type().priority() - operator1.type().priority();
-            else
-                return operator1.position() - operator2.position();
-        });
-    }
+    // The operators and brackets, in the order they were added until the order is resolved,
+    // and then in the order in which they are processed.
+    private ExpressionNode[] operators = new ExpressionNode[8];
+    private int operatorCount;
+    private int nextOperator;
+    private boolean orderResolved;
 
     /**
      * Add a new node to the chain
      */
     public void add(ExpressionNode node){
+        if(orderResolved)
+            throw new IllegalStateException("Nodes cannot be added once the order of the operators is resolved");
+
         if(first == null){
             first = node;
         } else {
@@ -52,26 +41,59 @@ public class ExpressionChain {
         last = node;
         nodeCount++;
 
-        node.setPosition(nodeCount);
-        addToPriorityQueue(node);
+        if(!node.type().isOperand()){
+            if(operatorCount == operators.length)
+                operators = Arrays.copyOf(operators, operatorCount * 2);
+            operators[operatorCount++] = node;
+        }
     }
 
     /**
-     * Add the operation to a priority queue as a way
-     * to determine the order in which they are processed.
-     * Number nodes are not added to the queue.
+     * Decide the order in which the operators are processed, once all the nodes have been added.
+     * Brackets and function calls come first. Then the operators are taken one precedence level at a time,
+     * from the highest level to the lowest. Within a level, left-associative operators are taken from left
+     * to right and right-associative operators from right to left. Since each level needs one pass over the operators,
+     * this takes linear time, and processing the chain afterwards is a walk over the resolved order.
      */
-    private void addToPriorityQueue(ExpressionNode node) {
-        if(node.type() != ExpressionNodeType.Number)
-            operatorPriorityQueue.add(node);
+    public void resolveOrder() {
+        if(orderResolved)
+            return;
+
+        ExpressionNode[] order = new ExpressionNode[operatorCount];
+        int count = 0;
+
+        for (int precedence = ExpressionNodeType.HIGHEST_PRECEDENCE; precedence > 0; precedence--) {
+            int levelStart = count;
+            for (int i = 0; i < operatorCount; i++) {
+                if(operators[i].type().precedence() == precedence)
+                    order[count++] = operators[i];
+            }
+
+            if(count > levelStart && order[levelStart].type().isRightAssociative())
+                reverse(order, levelStart, count - 1);
+        }
+
+        operators = order;
+        orderResolved = true;
     }
 
+    private static void reverse(ExpressionNode[] nodes, int from, int to) {
+        while (from < to) {
+            ExpressionNode node = nodes[from];
+            nodes[from++] = nodes[to];
+            nodes[to--] = node;
+        }
+    }
 
     /**
-     * Retrieve the node with the highest priority.
+     * Retrieve the next node to process: the bracket, function call or operator with the highest precedence.
      */
     public ExpressionNode getHighestPriorityNode() {
-        return operatorPriorityQueue.remove();
+        resolveOrder();
+        if(nextOperator == operatorCount)
+            throw new NoSuchElementException("The expression has no operators left");
+
+        return operators[nextOperator++];
     }
 
     /**
@@ -79,7 +101,7 @@ public class ExpressionChain {
      * "nodeToReplace" from the chain and put "newNode" in its place.
      * If the node to be replaced is an operator, both the left and
      * right operands are also removed from the chain. If it's a bracket
-     * node, then only that node is replaced.
+     * or a function call, then only that node is replaced.
      */
     public void replace(ExpressionNode nodeToReplace, ExpressionNode newNode) {
         ExpressionNode newLeft;
@@ -87,6 +109,7 @@ public class ExpressionChain {
 
         switch (nodeToReplace.type()) {
             case Bracket:
+            case Function:
                 newLeft = nodeToReplace.left();
                 newRight = nodeToReplace.right();
                 break;
@@ -121,34 +144,6 @@ public class ExpressionChain {
         nodeToReplace.setLeft(null);
     }
 
-    /**
-     * Add the steps that were taken inside bracket node to this expression's steps.
-     */
-    public void recordInnerStepsForBracket(BracketNode bracketNode) {
-        List<String> innerSteps = bracketNode.getInnerSteps();
-        if(innerSteps == null || innerSteps.size() == 0)
-            return;
-
-        StringBuilder sb = new StringBuilder();
-        ExpressionNode node = first;
-
-        while (node != null){
-            if(node == bracketNode){
-                sb.append("(%s)");
-            } else {
-                sb.append(node.toString());
-            }
-
-            node = node.right();
-        }
-
-        String brFormat = sb.toString();
-        for (String innerStep : innerSteps) {
-            String step = String.format(brFormat, innerStep);
-            addStep(step);
-        }
-    }
-
     public ExpressionNode first() {
         return first;
     }
@@ -162,16 +157,7 @@ public class ExpressionChain {
      * This can also indicate when the expression has been completely solved.
      */
     public boolean hasOperators(){
-        return !operatorPriorityQueue.isEmpty();
-    }
-
-    public void recordCurrentStep(){
-        addStep(toString());
-    }
-
-    private void addStep(String step){
-        if(!steps.contains(step))
-            steps.add(step);
+        return nextOperator < operatorCount;
     }
 
     @Override
@@ -186,8 +172,4 @@ public class ExpressionChain {
 
         return sb.toString();
     }
-
-    public List<String> getSteps() {
-        return steps;
-    }
 }
@@ -1,51 +1,157 @@
 package com.ikemole.expressionevaluator.structure;
 
 import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.function.FunctionRegistry;
+import com.ikemole.expressionevaluator.function.MathFunction;
 import com.ikemole.expressionevaluator.structure.node.BracketNode;
+import com.ikemole.expressionevaluator.structure.node.ConstantNode;
 import com.ikemole.expressionevaluator.structure.node.ExpressionNode;
+import com.ikemole.expressionevaluator.structure.node.FunctionNode;
 import com.ikemole.expressionevaluator.structure.node.NumberNode;
 import com.ikemole.expressionevaluator.structure.node.OperatorNode;
+import com.ikemole.expressionevaluator.structure.node.VariableNode;
 import com.ikemole.expressionevaluator.structure.node.ExpressionNodeType;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * This class is used to build the expression chain for a given math expression.
+ * Function calls and named constants are resolved against a FunctionRegistry as they are read.
+ * A builder keeps no state between calls, so it can be shared between threads.
  */
 public class ExpressionChainBuilder {
+    /**
+     * The deepest nesting of brackets and function calls that is accepted. The chains are built, compiled and
+     * evaluated recursively, so this keeps a deeply nested expression from overflowing the stack of the thread.
+     */
+    public static final int MAX_NESTING_DEPTH = 1000;
+
+    private final FunctionRegistry functionRegistry;
+
+    /**
+     * Create a builder that knows the built-in functions.
+     */
+    public ExpressionChainBuilder(){
+        this(FunctionRegistry.withBuiltIns());
+    }
+
+    /**
+     * Create a builder that resolves function calls and constants with the given registry.
+     */
+    public ExpressionChainBuilder(FunctionRegistry functionRegistry){
+        this.functionRegistry = functionRegistry;
+    }
 
     /**
      * Build the expression linked list.
      * For example, "2*3" becomes [2]<-->[*]<-->[3]
+     * The expression is read in a single pass. The content of each bracket is built into
+     * its own chain as the bracket is read, so nested brackets are never scanned twice.
+     * The order in which the operators of each chain are processed is resolved as soon as the chain is complete.
+     * An expression, or a bracket, that holds nothing but whitespace is rejected.
      * @param expression A string containing a math expression
      * @return The expression list
      */
-    public ExpressionChain build(String expression) throws BadExpressionException {
+    public ExpressionChain build(CharSequence expression) throws BadExpressionException {
         ExpressionChain expressionChain = new ExpressionChain();
+        buildChain(expression, 0, -1, false, 0, expressionChain, new NumberScanner());
+        if(expressionChain.first() == null)
+            throw new BadExpressionException("The expression \"" + expression + "\" is empty.");
+
+        expressionChain.resolveOrder();
+        return expressionChain;
+    }
+
+    /**
+     * Build the expression linked list from a region of a char array, without copying it.
+     * Positions in error messages are relative to the start of the region.
+     * The array must not change while the chain is used.
+     */
+    public ExpressionChain build(char[] expression, int offset, int length) throws BadExpressionException {
+        return build(CharBuffer.wrap(expression, offset, length));
+    }
+
+    /**
+     * Build the expression linked list from the ASCII bytes between the position and the limit of a buffer,
+     * without decoding or copying them. The position of the buffer is not changed. Positions in error
+     * messages are relative to the position of the buffer. The bytes must not change while the chain is used.
+     */
+    public ExpressionChain build(ByteBuffer expression) throws BadExpressionException {
+        return build(new AsciiCharSequence(expression));
+    }
+
+    /**
+     * Add the nodes of the expression starting from "startingIndex" to the given chain.
+     * If the chain is the content of a bracket, reading stops at the matching closing bracket.
+     * If it is an argument of a function call, reading also stops at a comma that separates it from the next one.
+     * @param expression The expression
+     * @param startingIndex The index of the first character of the chain
+     * @param openBracketIndex The index of the outermost open bracket, or -1 for the top-level chain
+     * @param isArgument Whether the chain is an argument of a function call
+     * @param depth The number of brackets and function calls the chain is nested in
+     * @param expressionChain The chain to add the nodes to
+     * @param numberScanner The scanner that reads the numbers of this expression
+     * @return The index of the closing bracket or comma, or the length of the expression for the top-level chain
+     */
+    private int buildChain(CharSequence expression, int startingIndex, int openBracketIndex, boolean isArgument,
+                           int depth, ExpressionChain expressionChain, NumberScanner numberScanner)
+            throws BadExpressionException {
+        if(depth > MAX_NESTING_DEPTH)
+            throw new BadExpressionException(String.format("The bracket at position %s is nested more than %s levels deep.",
+                    startingIndex - 1, MAX_NESTING_DEPTH));
+
         boolean firstNodeRead = false;
 
-        for (int i = 0; i < expression.length(); i++) {
+        for (int i = startingIndex; i < expression.length(); i++) {
             char c = expression.charAt(i);
 
             if(Character.isWhitespace(c))
                 continue;
 
-            if(Character.isDigit(c)){
-                String digits = getConsecutiveDigits(expression, i);
-                int num = Integer.parseInt(digits);
-                ExpressionNode node = new NumberNode(num);
+            if(NumberScanner.isNumberStart(expression, i, expression.length())){
+                int numberEnd = numberScanner.scan(expression, i, expression.length());
+                ExpressionNode node = new NumberNode(numberScanner.value(), expression, i, numberEnd);
                 expressionChain.add(node);
 
-                // advance pointer to the end of the digits
-                i = i + digits.length() - 1;
+                // advance pointer to the end of the number
+                i = numberEnd - 1;
+            } else if (isIdentifierStart(c)){
+                String name = getIdentifier(expression, i);
+                int bracketIndex = skipWhitespace(expression, i + name.length());
+
+                if(bracketIndex < expression.length() && expression.charAt(bracketIndex) == '('){
+                    int outermostBracketIndex = openBracketIndex < 0 ? bracketIndex : openBracketIndex;
+                    // advance pointer to the closing bracket of the call
+                    i = buildFunctionCall(name, expression, i, bracketIndex, outermostBracketIndex, depth + 1,
+                            expressionChain, numberScanner);
+                } else {
+                    Double constant = functionRegistry.constant(name);
+                    ExpressionNode node = constant != null ? new ConstantNode(name, constant) : new VariableNode(name);
+                    expressionChain.add(node);
+
+                    // advance pointer to the end of the identifier
+                    i = i + name.length() - 1;
+                }
             } else if (c == '('){
-                String innerExpression = getBracketExpression(expression, i);
-                ExpressionNode node = new BracketNode(innerExpression);
+                ExpressionChain innerChain = new ExpressionChain();
+                int outermostBracketIndex = openBracketIndex < 0 ? i : openBracketIndex;
+                int closingIndex = buildChain(expression, i + 1, outermostBracketIndex, false, depth + 1,
+                        innerChain, numberScanner);
+                if(innerChain.first() == null)
+                    throw new BadExpressionException(String.format("The bracket at position %s is empty.", i));
+
+                innerChain.resolveOrder();
+                ExpressionNode node = new BracketNode(innerChain, expression, i + 1, closingIndex);
                 expressionChain.add(node);
 
                 // advance pointer to the closing bracket
-                // note: innerExpression excludes opening and closing brackets
-                i = i + innerExpression.length() + 1;
+                i = closingIndex;
+            } else if ((c == ')' && openBracketIndex >= 0) || (c == ',' && isArgument)){
+                return i;
             } else if (isOperator(c)){
 
                 // If the expression starts with an operator,
@@ -71,10 +177,61 @@ public class ExpressionChainBuilder {
             firstNodeRead = true;
         }
 
-        return expressionChain;
+        if(openBracketIndex >= 0)
+            throw new BadExpressionException("The open bracket at index " + openBracketIndex + " was not closed.");
+
+        return expression.length();
+    }
+
+    /**
+     * Add a call to a function, reading each of its arguments into its own chain.
+     * @param name The name of the function
+     * @param expression The expression
+     * @param nameIndex The index of the name of the function
+     * @param bracketIndex The index of the opening bracket of the call
+     * @param outermostBracketIndex The index of the outermost open bracket
+     * @param depth The number of brackets and function calls the arguments are nested in
+     * @param expressionChain The chain to add the call to
+     * @param numberScanner The scanner that reads the numbers of this expression
+     * @return The index of the closing bracket of the call
+     */
+    private int buildFunctionCall(String name, CharSequence expression, int nameIndex, int bracketIndex,
+                                  int outermostBracketIndex, int depth, ExpressionChain expressionChain,
+                                  NumberScanner numberScanner) throws BadExpressionException {
+        MathFunction function = functionRegistry.function(name);
+        if(function == null)
+            throw new BadExpressionException(String.format(
+                    "The function \"%s\" at position %s is not known.", name, nameIndex));
+
+        List<ExpressionChain> arguments = new ArrayList<>();
+        int end = bracketIndex;
+        do {
+            ExpressionChain argument = new ExpressionChain();
+            int argumentStart = end + 1;
+            end = buildChain(expression, argumentStart, outermostBracketIndex, true, depth, argument, numberScanner);
+            if(argument.first() == null)
+                throw new BadExpressionException(String.format(
+                        "The argument at position %s of the function \"%s\" is empty.", argumentStart, name));
+
+            argument.resolveOrder();
+            arguments.add(argument);
+        } while (expression.charAt(end) == ',');
+
+        if(!function.accepts(arguments.size()))
+            throw new BadExpressionException(String.format(
+                    "The function \"%s\" at position %s cannot take %s arguments.", name, nameIndex, arguments.size()));
+
+        expressionChain.add(new FunctionNode(function, arguments.toArray(new ExpressionChain[0])));
+        return end;
     }
 
-    private static HashMap<Character, ExpressionNodeType> OPERATORS = new HashMap<>();
+    private static int skipWhitespace(CharSequence expression, int index) {
+        while (index < expression.length() && Character.isWhitespace(expression.charAt(index)))
+            index++;
+        return index;
+    }
+
+    private static final HashMap<Character, ExpressionNodeType> OPERATORS = new HashMap<>();
     static {
         OPERATORS.put('*', ExpressionNodeType.Multiplication);
         OPERATORS.put('/', ExpressionNodeType.Division);
@@ -87,55 +244,26 @@ public class ExpressionChainBuilder {
         return OPERATORS.containsKey(c);
     }
 
-    /**
-     * Get the expression inside a bracket, assuming the bracket starts at
-     * "startingIndex". The returned expression will exclude the opening and closing brackets.
-     * The expression will include any nested brackets.
-     * @param expression The expression
-     * @param startingIndex The index of the opening brackets
-     * @return The content of the brackets
-     */
-    private String getBracketExpression(String expression, int startingIndex) throws BadExpressionException {
-        StringBuilder sb = new StringBuilder();
-        int openBracketCount = 1;
-        for (int i = startingIndex + 1; i < expression.length(); i++) {
-            char c = expression.charAt(i);
-            if(c == '('){
-                openBracketCount++;
-            }
-
-            if(c == ')'){
-                openBracketCount--;
-            }
-
-            if(openBracketCount == 0){
-                break;
-            }
-
-            sb.append(c);
-        }
-
-        if(openBracketCount > 0)
-            throw new BadExpressionException("The open bracket at index " + startingIndex + " was not closed.");
+    private boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
 
-        return sb.toString();
+    private boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
     }
 
     /**
-     * Get the consecutive digits in the string starting from "startingIndex".
+     * Get the identifier (a variable, constant or function name) in the string starting from "startingIndex".
+     * An identifier starts with a letter or underscore, followed by letters, digits or underscores.
      * @param expression The expression
-     * @param startingIndex The startingIndex of the first digit
-     * @return The string of consecutive digits
+     * @param startingIndex The index of the first character of the identifier
+     * @return The identifier
      */
-    private String getConsecutiveDigits(String expression, int startingIndex) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = startingIndex; i < expression.length(); i++) {
-            char c = expression.charAt(i);
-            if(Character.isDigit(c))
-                sb.append(c);
-            else
-                break;
-        }
-        return sb.toString();
+    private String getIdentifier(CharSequence expression, int startingIndex) {
+        int endIndex = startingIndex + 1;
+        while (endIndex < expression.length() && isIdentifierPart(expression.charAt(endIndex)))
+            endIndex++;
+
+        return expression.subSequence(startingIndex, endIndex).toString();
     }
 }
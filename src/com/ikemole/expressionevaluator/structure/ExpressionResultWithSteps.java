@@ -1,21 +1,38 @@
 package com.ikemole.expressionevaluator.structure;
 
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * The result of an evaluation, along with the steps taken to solve it.
+ * The steps are kept as a StepLog and only rendered into strings the first time they are asked for.
+ */
 public class ExpressionResultWithSteps {
     private double result;
     private List<String> steps;
+    private StepLog stepLog;
 
     public ExpressionResultWithSteps(double result, List<String> steps){
         this.result = result;
         this.steps = steps;
     }
 
+    /**
+     * @param stepLog The log of the evaluation, or null if no steps were recorded
+     */
+    public ExpressionResultWithSteps(double result, StepLog stepLog){
+        this.result = result;
+        this.stepLog = stepLog;
+    }
+
     public double getResult() {
         return result;
     }
 
     public List<String> getSteps() {
+        if(steps == null)
+            steps = stepLog == null ? Collections.emptyList() : stepLog.render();
+
         return steps;
     }
 }
@@ -0,0 +1,212 @@
+package com.ikemole.expressionevaluator.structure;
+
+import java.math.BigInteger;
+
+/**
+ * This class reads a number from text without creating any objects. A number is a run of digits with
+ * an optional fraction and an optional exponent, such as 42, 3.25, .5, 2. or 6.02e23.
+ * <p>
+ * Up to 19 significant digits are gathered into a long, along with a power of ten. The double is then
+ * computed with correct rounding: directly when both the digits and the power of ten are exact doubles
+ * (Clinger's fast path), and otherwise with the Eisel-Lemire algorithm, which multiplies the digits by a
+ * 128-bit approximation of the power. In the rare cases that neither can decide, such as numbers with
+ * more digits, or results close to zero, the text is handed to Double.parseDouble.
+ * <p>
+ * A scanner holds the value of the last number it read, so it must not be shared between threads.
+ */
+public final class NumberScanner {
+    private static final int MAX_SIGNIFICANT_DIGITS = 19;
+    private static final int MAX_EXPONENT_DIGITS_VALUE = 100_000; // beyond this every number is 0 or infinity
+    private static final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Below 1e-342 even 19 digits round to zero, and above 1e308 every number is infinite.
+    private static final int SMALLEST_POWER = -342;
+    private static final int LARGEST_POWER = 308;
+    // The high and low halves of 5^q scaled to 128 bits, for q from SMALLEST_POWER to LARGEST_POWER.
+    private static final long[] POWERS_OF_FIVE_HIGH = new long[LARGEST_POWER - SMALLEST_POWER + 1];
+    private static final long[] POWERS_OF_FIVE_LOW = new long[LARGEST_POWER - SMALLEST_POWER + 1];
+    static {
+        BigInteger five = BigInteger.valueOf(5);
+        for (int q = SMALLEST_POWER; q <= LARGEST_POWER; q++) {
+            BigInteger scaled;
+            if(q >= 0){
+                scaled = five.pow(q);
+            } else {
+                // a reciprocal rounded up, with enough bits to be truncated to 128 afterwards
+                BigInteger power = five.pow(-q);
+                int bits = q >= -27 ? power.bitLength() + 127 : 2 * power.bitLength() + 128;
+                scaled = BigInteger.ONE.shiftLeft(bits).divide(power).add(BigInteger.ONE);
+            }
+
+            int shift = scaled.bitLength() - 128;
+            scaled = shift >= 0 ? scaled.shiftRight(shift) : scaled.shiftLeft(-shift);
+            POWERS_OF_FIVE_HIGH[q - SMALLEST_POWER] = scaled.shiftRight(64).longValue();
+            POWERS_OF_FIVE_LOW[q - SMALLEST_POWER] = scaled.longValue();
+        }
+    }
+
+    private double value;
+
+    /**
+     * Check if a number starts at the given index: a digit, or a decimal point followed by a digit.
+     */
+    public static boolean isNumberStart(CharSequence text, int index, int end) {
+        char c = text.charAt(index);
+        return isDigit(c) || (c == '.' && index + 1 < end && isDigit(text.charAt(index + 1)));
+    }
+
+    /**
+     * Read the number that starts at the given index. The index must be the start of a number.
+     * An "e" that is not followed by the digits of an exponent is not part of the number.
+     * @param text The text to read from
+     * @param start The index of the first character of the number
+     * @param end The index at which reading must stop
+     * @return The index just after the number. Its value is then given by {@link #value()}.
+     */
+    public int scan(CharSequence text, int start, int end) {
+        long significand = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean truncated = false;
+        boolean inFraction = false;
+        int i = start;
+
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+
+            if(c == '.' && !inFraction){
+                inFraction = true;
+                continue;
+            }
+            if(!isDigit(c))
+                break;
+
+            if(significand == 0 && c == '0'){
+                // a leading zero is not significant
+                if(inFraction)
+                    exponent--;
+            } else if(significantDigits < MAX_SIGNIFICANT_DIGITS){
+                significand = significand * 10 + (c - '0');
+                significantDigits++;
+                if(inFraction)
+                    exponent--;
+            } else {
+                truncated = true;
+                if(!inFraction)
+                    exponent++;
+            }
+        }
+
+        if(i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')){
+            int j = i + 1;
+            boolean negative = false;
+            if(j < end && (text.charAt(j) == '+' || text.charAt(j) == '-')){
+                negative = text.charAt(j) == '-';
+                j++;
+            }
+
+            if(j < end && isDigit(text.charAt(j))){
+                int explicitExponent = 0;
+                for (; j < end && isDigit(text.charAt(j)); j++) {
+                    if(explicitExponent < MAX_EXPONENT_DIGITS_VALUE)
+                        explicitExponent = explicitExponent * 10 + (text.charAt(j) - '0');
+                }
+                exponent += negative ? -explicitExponent : explicitExponent;
+                i = j;
+            }
+        }
+
+        double result = truncated ? Double.NaN : toDouble(significand, exponent);
+        if(Double.isNaN(result))
+            result = Double.parseDouble(text.subSequence(start, i).toString());
+
+        value = result;
+        return i;
+    }
+
+    /**
+     * The value of the last number read.
+     */
+    public double value() {
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Compute significand * 10^exponent, correctly rounded.
+     * The significand is an unsigned long. NaN is returned if the fast algorithms cannot decide.
+     */
+    static double toDouble(long significand, int exponent) {
+        if(significand == 0 || exponent < SMALLEST_POWER)
+            return 0;
+        if(exponent > LARGEST_POWER)
+            return Double.POSITIVE_INFINITY;
+
+        // Clinger: both numbers are exact doubles, so a single operation rounds correctly
+        if(significand > 0 && significand <= MAX_EXACT_SIGNIFICAND && exponent >= -22 && exponent <= 22)
+            return exponent < 0 ? significand / POWERS_OF_TEN[-exponent] : significand * POWERS_OF_TEN[exponent];
+
+        return eiselLemire(significand, exponent);
+    }
+
+    /**
+     * The Eisel-Lemire algorithm: multiply the normalised significand by the 128-bit power of five, and keep
+     * the top 54 bits. The result is only rejected when the truncated bits could change the rounding.
+     */
+    private static double eiselLemire(long significand, int exponent) {
+        int index = exponent - SMALLEST_POWER;
+        long binaryExponent = ((217706L * exponent) >> 16) + 1024 + 63; // floor(exponent * log2(10)) + bias + 63
+        int leadingZeros = Long.numberOfLeadingZeros(significand);
+        significand <<= leadingZeros;
+
+        long lower = significand * POWERS_OF_FIVE_HIGH[index];
+        long upper = unsignedMultiplyHigh(significand, POWERS_OF_FIVE_HIGH[index]);
+
+        if((upper & 0x1FF) == 0x1FF && Long.compareUnsigned(lower + significand, lower) < 0){
+            // the low bits may carry into the kept bits, so use the other 64 bits of the power
+            long productLow = significand * POWERS_OF_FIVE_LOW[index];
+            long productMiddle = lower + unsignedMultiplyHigh(significand, POWERS_OF_FIVE_LOW[index]);
+            if(Long.compareUnsigned(productMiddle, lower) < 0)
+                upper++;
+
+            if(productMiddle + 1 == 0 && (upper & 0x1FF) == 0x1FF
+                    && Long.compareUnsigned(productLow + significand, productLow) < 0)
+                return Double.NaN;
+
+            lower = productMiddle;
+        }
+
+        long upperBit = upper >>> 63;
+        long mantissa = upper >>> (upperBit + 9);
+        leadingZeros += (int) (1 ^ upperBit);
+
+        // exactly halfway between two doubles: the truncated bits decide
+        if(lower == 0 && (upper & 0x1FF) == 0 && (mantissa & 3) == 1)
+            return Double.NaN;
+
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if(mantissa >= (1L << 53)){
+            mantissa = 1L << 52;
+            leadingZeros--;
+        }
+        mantissa &= ~(1L << 52);
+
+        long biasedExponent = binaryExponent - leadingZeros;
+        if(biasedExponent < 1 || biasedExponent > 2046)
+            return Double.NaN; // subnormal or infinite
+
+        return Double.longBitsToDouble(mantissa | biasedExponent << 52);
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+}
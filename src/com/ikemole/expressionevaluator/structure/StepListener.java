@@ -0,0 +1,15 @@
+package com.ikemole.expressionevaluator.structure;
+
+/**
+ * Receives the steps of the working of an evaluation as soon as each one is produced.
+ */
+public interface StepListener {
+
+    /**
+     * Called with each step, in order. To avoid creating a String per step, the same buffer is
+     * reused for the following steps, so the step is only valid during this call.
+     * Call toString() on it to keep it.
+     * @param step The whole expression after the latest reduction
+     */
+    void onStep(CharSequence step);
+}
@@ -0,0 +1,319 @@
+package com.ikemole.expressionevaluator.structure;
+
+import com.ikemole.expressionevaluator.metrics.EvaluatorMetrics;
+import com.ikemole.expressionevaluator.metrics.Phase;
+import com.ikemole.expressionevaluator.structure.node.BracketNode;
+import com.ikemole.expressionevaluator.structure.node.ConstantNode;
+import com.ikemole.expressionevaluator.structure.node.ExpressionNode;
+import com.ikemole.expressionevaluator.structure.node.ExpressionNodeType;
+import com.ikemole.expressionevaluator.structure.node.FunctionNode;
+import com.ikemole.expressionevaluator.structure.node.NumberNode;
+import com.ikemole.expressionevaluator.structure.node.VariableNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A compact record of the working of an evaluation.
+ * <p>
+ * Before the evaluation starts, the expression is copied into a flat list of tokens, where a bracket
+ * becomes an opening and a closing token, and a function call becomes its name with the opening bracket,
+ * its arguments separated by commas, and a closing token. Every node of the chain is given the index of
+ * its token.
+ * During the evaluation, each processed node is logged as a reduction event: the index of its token
+ * and the value it was reduced to. No strings are created while evaluating.
+ * <p>
+ * The steps are only rendered when they are asked for, by replaying the events on a copy of the tokens.
+ * A step is the whole expression after a reduction, so an event inside a bracket produces a step showing
+ * the rest of the expression around it. Repeated steps are dropped.
+ * <p>
+ * Alternatively, the steps can be streamed to a StepListener. Then the events are replayed as soon as
+ * they are logged and are not kept, so memory use stays proportional to the length of the expression.
+ * Only a step that repeats the one before it is dropped in that case.
+ * <p>
+ * If the log is given EvaluatorMetrics, the time spent rendering is recorded as the RenderSteps phase.
+ */
+public class StepLog {
+    private ExpressionNodeType[] types;
+    private double[] numbers;
+    private String[] names;
+    private int[] matchingBrackets;
+    private int tokenCount;
+
+    private int[] eventTokens = new int[16];
+    private double[] eventValues = new double[16];
+    private int eventCount;
+
+    private StepListener stepListener;
+    private Replay liveReplay;
+    private StringBuilder currentStep;
+    private StringBuilder previousStep;
+
+    private final EvaluatorMetrics metrics;
+
+    /**
+     * Take a copy of the chain, before any of it is evaluated.
+     */
+    public StepLog(ExpressionChain expressionChain){
+        this(expressionChain, (EvaluatorMetrics) null);
+    }
+
+    /**
+     * Take a copy of the chain, before any of it is evaluated.
+     * @param metrics The metrics that receive the time spent rendering, or null
+     */
+    public StepLog(ExpressionChain expressionChain, EvaluatorMetrics metrics){
+        this.metrics = metrics;
+        int capacity = Math.max(16, expressionChain.length() * 2);
+        types = new ExpressionNodeType[capacity];
+        numbers = new double[capacity];
+        matchingBrackets = new int[capacity];
+        addTokens(expressionChain);
+    }
+
+    /**
+     * Take a copy of the chain, before any of it is evaluated, and stream the steps to the listener.
+     * The starting expression is sent straight away.
+     */
+    public StepLog(ExpressionChain expressionChain, StepListener stepListener){
+        this(expressionChain, stepListener, null);
+    }
+
+    /**
+     * Take a copy of the chain, before any of it is evaluated, and stream the steps to the listener.
+     * The starting expression is sent straight away.
+     * @param metrics The metrics that receive the time spent rendering each step, or null
+     */
+    public StepLog(ExpressionChain expressionChain, StepListener stepListener, EvaluatorMetrics metrics){
+        this(expressionChain, metrics);
+        this.stepListener = stepListener;
+        this.liveReplay = new Replay();
+        this.currentStep = new StringBuilder();
+        this.previousStep = new StringBuilder();
+        sendStep();
+    }
+
+    private void addTokens(ExpressionChain expressionChain){
+        ExpressionNode node = expressionChain.first();
+
+        while (node != null){
+            int index = addToken(node.type());
+            node.setStepIndex(index);
+
+            switch (node.type()) {
+                case Number:
+                    numbers[index] = ((NumberNode) node).number();
+                    if(node instanceof ConstantNode)
+                        setName(index, ((ConstantNode) node).name());
+                    break;
+                case Variable:
+                    setName(index, ((VariableNode) node).name());
+                    break;
+                case Bracket:
+                    addTokens(((BracketNode) node).innerChain());
+                    matchBrackets(index, addToken(ExpressionNodeType.Bracket));
+                    break;
+                case Function:
+                    FunctionNode functionNode = (FunctionNode) node;
+                    setName(index, functionNode.function().name());
+                    for (int i = 0; i < functionNode.argumentCount(); i++) {
+                        if(i > 0)
+                            addToken(ExpressionNodeType.ArgumentSeparator);
+                        addTokens(functionNode.argument(i));
+                    }
+                    matchBrackets(index, addToken(ExpressionNodeType.Bracket));
+                    break;
+                default:
+                    break;
+            }
+
+            node = node.right();
+        }
+    }
+
+    private void setName(int index, String name){
+        if(names == null)
+            names = new String[types.length];
+        names[index] = name;
+    }
+
+    private void matchBrackets(int openingIndex, int closingIndex){
+        matchingBrackets[openingIndex] = closingIndex;
+        matchingBrackets[closingIndex] = openingIndex;
+    }
+
+    private int addToken(ExpressionNodeType type){
+        if(tokenCount == types.length){
+            int capacity = tokenCount * 2;
+            types = Arrays.copyOf(types, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            matchingBrackets = Arrays.copyOf(matchingBrackets, capacity);
+            if(names != null)
+                names = Arrays.copyOf(names, capacity);
+        }
+
+        types[tokenCount] = type;
+        return tokenCount++;
+    }
+
+    /**
+     * Log that a node was processed. For an operator, the operator and its two operands were reduced
+     * to the result. For a bracket, the bracket was replaced by the result of its inner expression,
+     * and for a function call, the call was replaced by the result of the function.
+     */
+    public void record(ExpressionNode processedNode, double result){
+        if(stepListener != null){
+            liveReplay.apply(processedNode.stepIndex(), result);
+            sendStep();
+            return;
+        }
+
+        if(eventCount == eventTokens.length){
+            eventTokens = Arrays.copyOf(eventTokens, eventCount * 2);
+            eventValues = Arrays.copyOf(eventValues, eventCount * 2);
+        }
+
+        eventTokens[eventCount] = processedNode.stepIndex();
+        eventValues[eventCount] = result;
+        eventCount++;
+    }
+
+    /**
+     * Render the distinct steps: the starting expression and the expression after each event.
+     */
+    public List<String> render(){
+        if(stepListener != null)
+            throw new IllegalStateException("The steps were streamed to a listener and were not kept");
+
+        if(metrics == null)
+            return replayAll();
+
+        long start = System.nanoTime();
+        List<String> steps = replayAll();
+        metrics.recordLatency(Phase.RenderSteps, System.nanoTime() - start);
+        return steps;
+    }
+
+    private List<String> replayAll(){
+        List<String> steps = new ArrayList<>(eventCount + 1);
+        Set<String> seen = new HashSet<>();
+        Replay replay = new Replay();
+        StringBuilder sb = new StringBuilder();
+
+        replay.render(sb);
+        addStep(sb.toString(), steps, seen);
+        for (int i = 0; i < eventCount; i++) {
+            replay.apply(eventTokens[i], eventValues[i]);
+            sb.setLength(0);
+            replay.render(sb);
+            addStep(sb.toString(), steps, seen);
+        }
+
+        return steps;
+    }
+
+    /**
+     * Render the live replay and send it to the listener, unless it is the same as the previous step.
+     * The two buffers are swapped so that no String is created for a step.
+     */
+    private void sendStep(){
+        currentStep.setLength(0);
+        if(metrics == null){
+            liveReplay.render(currentStep);
+        } else {
+            long start = System.nanoTime();
+            liveReplay.render(currentStep);
+            metrics.recordLatency(Phase.RenderSteps, System.nanoTime() - start);
+        }
+        if(previousStep.length() > 0 && CharSequence.compare(previousStep, currentStep) == 0)
+            return;
+
+        stepListener.onStep(currentStep);
+
+        StringBuilder sent = currentStep;
+        currentStep = previousStep;
+        previousStep = sent;
+    }
+
+    private void addStep(String step, List<String> steps, Set<String> seen){
+        if(seen.add(step))
+            steps.add(step);
+    }
+
+    /**
+     * The state of the expression while the events are replayed.
+     * The live tokens are linked in order by the "previous" and "next" arrays.
+     */
+    private class Replay {
+        private ExpressionNodeType[] currentTypes = Arrays.copyOf(types, tokenCount);
+        private double[] currentNumbers = Arrays.copyOf(numbers, tokenCount);
+        private int[] previous = new int[tokenCount];
+        private int[] next = new int[tokenCount];
+        private int first = tokenCount > 0 ? 0 : -1;
+
+        Replay(){
+            for (int i = 0; i < tokenCount; i++) {
+                previous[i] = i - 1;
+                next[i] = i + 1 < tokenCount ? i + 1 : -1;
+            }
+        }
+
+        /**
+         * Turn the token of the processed node into a number and remove the tokens it replaced:
+         * the operands of an operator, or the content and closing token of a bracket or function call.
+         */
+        void apply(int token, double value){
+            if(currentTypes[token] == ExpressionNodeType.Bracket || currentTypes[token] == ExpressionNodeType.Function){
+                int closingToken = matchingBrackets[token];
+                while (next[token] != closingToken)
+                    remove(next[token]);
+                remove(closingToken);
+            } else {
+                remove(previous[token]);
+                remove(next[token]);
+            }
+
+            currentTypes[token] = ExpressionNodeType.Number;
+            currentNumbers[token] = value;
+        }
+
+        private void remove(int token){
+            if(previous[token] >= 0)
+                next[previous[token]] = next[token];
+            else
+                first = next[token];
+
+            if(next[token] >= 0)
+                previous[next[token]] = previous[token];
+        }
+
+        void render(StringBuilder sb){
+            for (int token = first; token >= 0; token = next[token]) {
+                ExpressionNodeType type = currentTypes[token];
+                switch (type) {
+                    case Number:
+                        // a constant that has not been reduced yet is shown by its name
+                        if(types[token] == ExpressionNodeType.Number && names != null && names[token] != null)
+                            sb.append(names[token]);
+                        else
+                            sb.append(NumberNode.format(currentNumbers[token]));
+                        break;
+                    case Variable:
+                        sb.append(names[token]);
+                        break;
+                    case Function:
+                        sb.append(names[token]).append('(');
+                        break;
+                    case Bracket:
+                        sb.append(matchingBrackets[token] > token ? '(' : ')');
+                        break;
+                    default:
+                        sb.append(type.operatorStr());
+                }
+            }
+        }
+    }
+}
@@ -1,32 +1,52 @@
 package com.ikemole.expressionevaluator.structure.node;
 
-import java.util.List;
+import com.ikemole.expressionevaluator.structure.ExpressionChain;
 
 /**
  * An expression node that represents an inner expression surrounded by brackets.
+ * The inner expression is held as its own chain. The text of the inner expression is
+ * only copied out of the original expression when it is asked for.
  */
 public class BracketNode extends ExpressionNode{
-    private String expression;
-    private List<String> innerSteps;
+    private ExpressionChain innerChain;
+    private CharSequence source;
+    private int start;
+    private int end;
+
     public BracketNode(String expression){
+        this(null, expression, 0, expression.length());
+    }
+
+    /**
+     * @param innerChain The chain built from the content of the bracket
+     * @param source The expression that contains this bracket. It must not change while the node is used.
+     * @param start The index of the first character after the opening bracket
+     * @param end The index of the closing bracket
+     */
+    public BracketNode(ExpressionChain innerChain, CharSequence source, int start, int end){
         super(ExpressionNodeType.Bracket);
-        this.expression = expression;
+        this.innerChain = innerChain;
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * The chain of the inner expression, or null if the bracket was created from a string.
+     */
+    public ExpressionChain innerChain() {
+        return innerChain;
     }
 
     public String expression() {
-        return expression;
+        return source.subSequence(start, end).toString();
     }
 
     @Override
     public String toString() {
-        return String.format("(%s)", expression);
-    }
-
-    public List<String> getInnerSteps() {
-        return innerSteps;
-    }
+        if(innerChain == null)
+            return String.format("(%s)", expression());
 
-    public void setInnerSteps(List<String> innerSteps) {
-        this.innerSteps = innerSteps;
+        return "(" + innerChain + ")";
     }
 }
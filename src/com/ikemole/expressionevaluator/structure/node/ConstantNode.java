@@ -0,0 +1,23 @@
+package com.ikemole.expressionevaluator.structure.node;
+
+/**
+ * A number node for a named constant, such as pi. It is evaluated like any other number,
+ * but it is shown by its name.
+ */
+public class ConstantNode extends NumberNode {
+    private String name;
+
+    public ConstantNode(String name, double number){
+        super(number);
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -9,7 +9,7 @@ public abstract class ExpressionNode {
     protected ExpressionNodeType type;
     private ExpressionNode left;
     private ExpressionNode right;
-    private int position; // this node's position in the expression. it's needed to determine priority.
+    private int stepIndex; // this node's token in the StepLog, when the steps are recorded.
 
     public ExpressionNode(ExpressionNodeType type){
         this.type = type;
@@ -35,12 +35,12 @@ public abstract class ExpressionNode {
         this.left = left;
     }
 
-    public int position() {
-        return position;
+    public int stepIndex() {
+        return stepIndex;
     }
 
-    public void setPosition(int position) {
-        this.position = position;
+    public void setStepIndex(int stepIndex) {
+        this.stepIndex = stepIndex;
     }
 }
 
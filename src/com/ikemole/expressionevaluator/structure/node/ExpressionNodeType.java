@@ -2,34 +2,57 @@ package com.ikemole.expressionevaluator.structure.node;
 
 /**
  * This represents the type of a node in the expression linked list.
- * Each type also has a number that indicates its mathematical priority.
+ * Each type also has a number that indicates its mathematical precedence, and operators
+ * of the same precedence share an associativity (following the BODMAS rule).
  */
 public enum ExpressionNodeType {
-    Bracket(6),
-    Exponent(5, "^"),
-    Division(4, "/"),
-    Multiplication(3, "*"),
-    Subtraction(2, "-"), // note: we place subtraction before addition to handle negative numbers better
-    Addition(1, "+"),
-    Number(0);
-
-    private int priority;
+    Bracket(4),
+    Function(4),
+    Exponent(3, "^", true),
+    Division(2, "/", false),
+    Multiplication(2, "*", false),
+    Subtraction(1, "-", false),
+    Addition(1, "+", false),
+    Number(0),
+    Variable(0),
+    // Only used to show the working of a function call, never as a node of a chain
+    ArgumentSeparator(0, ",", false);
+
+    public static final int HIGHEST_PRECEDENCE = 4;
+
+    private int precedence;
     private String opStr;
+    private boolean rightAssociative;
+
+    public int precedence() {
+        return precedence;
+    }
 
-    public int priority() {
-        return priority;
+    /**
+     * Check if a chain of these operators is grouped from the right, so that 2^3^2 is 2^(3^2).
+     */
+    public boolean isRightAssociative() {
+        return rightAssociative;
     }
 
-    ExpressionNodeType(int priority){
-        this.priority = priority;
+    ExpressionNodeType(int precedence){
+        this.precedence = precedence;
     }
 
-    ExpressionNodeType(int priority, String opStr){
-        this.priority = priority;
+    ExpressionNodeType(int precedence, String opStr, boolean rightAssociative){
+        this.precedence = precedence;
         this.opStr = opStr;
+        this.rightAssociative = rightAssociative;
     }
 
     public String operatorStr() {
         return opStr;
     }
+
+    /**
+     * Check if this type is a value that operators are applied to, rather than something to be processed.
+     */
+    public boolean isOperand() {
+        return this == Number || this == Variable;
+    }
 }
@@ -0,0 +1,43 @@
+package com.ikemole.expressionevaluator.structure.node;
+
+import com.ikemole.expressionevaluator.function.MathFunction;
+import com.ikemole.expressionevaluator.structure.ExpressionChain;
+
+/**
+ * An expression node that represents a call to a function, such as max(a, b+1).
+ * The function is resolved when the expression is parsed, and each argument is held as its own chain.
+ * Like a bracket, a call is processed before the operators around it.
+ */
+public class FunctionNode extends ExpressionNode {
+    private MathFunction function;
+    private ExpressionChain[] arguments;
+
+    public FunctionNode(MathFunction function, ExpressionChain[] arguments){
+        super(ExpressionNodeType.Function);
+        this.function = function;
+        this.arguments = arguments;
+    }
+
+    public MathFunction function() {
+        return function;
+    }
+
+    public int argumentCount() {
+        return arguments.length;
+    }
+
+    public ExpressionChain argument(int index) {
+        return arguments[index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(function.name()).append('(');
+        for (int i = 0; i < arguments.length; i++) {
+            if(i > 0)
+                sb.append(',');
+            sb.append(arguments[i]);
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -1,35 +1,125 @@
 package com.ikemole.expressionevaluator.structure.node;
 
-import java.text.DecimalFormat;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
  * This class represents a node in the expression linked list which just contains a number.
  */
 public class NumberNode extends ExpressionNode {
+    private static final BigDecimal HALF_HUNDREDTH = new BigDecimal("0.005");
+
     private double number;
-    private static DecimalFormat DECIMAL_FORMAT_2DP = new DecimalFormat("#.##");
+    private CharSequence source;
+    private int start;
+    private int end;
 
     public NumberNode(double number){
+        this(number, null, 0, 0);
+    }
+
+    /**
+     * @param number The number, rounded to the nearest double
+     * @param source The expression the number was written in, or null for a computed number.
+     *               It must not change while the node is used.
+     * @param start The index of the first character of the number
+     * @param end The index just after the number
+     */
+    public NumberNode(double number, CharSequence source, int start, int end){
         super(ExpressionNodeType.Number);
         this.number = number;
+        this.source = source;
+        this.start = start;
+        this.end = end;
     }
 
     public double number() {
         return number;
     }
 
+    /**
+     * The number exactly as it was written in the expression, or null if it was computed.
+     * It is only copied out of the expression when it is asked for.
+     */
+    public String literal() {
+        return source == null ? null : source.subSequence(start, end).toString();
+    }
+
     @Override
     public String toString() {
+        return format(number);
+    }
+
+    /**
+     * Format a number the way it is shown in the steps of the working:
+     * whole numbers without decimals, and other numbers with at most two decimal places.
+     */
+    public static String format(double number){
         if(Double.isInfinite(number) || Double.isNaN(number))
             return Double.toString(number);
 
-        if(isWholeNumber())
-            return Integer.toString((int) number);
+        if(isWholeNumber(number))
+            return formatWholeNumber(number);
 
-        return DECIMAL_FORMAT_2DP.format(number);
+        return formatTwoDecimalPlaces(number);
     }
 
-    private boolean isWholeNumber(){
+    private static boolean isWholeNumber(double number){
         return number == Math.rint(number);
     }
+
+    private static String formatWholeNumber(double number){
+        if(Math.abs(number) < 0x1p63)
+            return Long.toString((long) number);
+
+        return BigDecimal.valueOf(number).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Format a number with at most two decimal places. This gives the same output as
+     * DecimalFormat("#.##") in an English locale, but keeps no shared state, so it is safe
+     * to call from any number of threads.
+     * Most numbers are rounded with plain double arithmetic. Numbers that are very large, or that lie
+     * too close to halfway between two hundredths for that to be exact, are rounded with BigDecimal.
+     */
+    static String formatTwoDecimalPlaces(double number){
+        double hundredths = number * 100;
+
+        if(Math.abs(hundredths) < 1e11){
+            double fraction = hundredths - Math.floor(hundredths);
+            if(Math.abs(fraction - 0.5) > 4 * Math.ulp(hundredths))
+                return formatHundredths((long) Math.rint(hundredths), number < 0);
+        }
+
+        // Like DecimalFormat, round the shortest decimal representation of the number.
+        // If that is exactly halfway, the exact binary value decides the direction.
+        BigDecimal shortest = BigDecimal.valueOf(number);
+        BigDecimal rounded = shortest.setScale(2, RoundingMode.HALF_EVEN);
+        if(shortest.subtract(rounded).abs().compareTo(HALF_HUNDREDTH) == 0)
+            rounded = new BigDecimal(number).setScale(2, RoundingMode.HALF_EVEN);
+
+        if(rounded.signum() == 0)
+            return number < 0 ? "-0" : "0";
+
+        return rounded.stripTrailingZeros().toPlainString();
+    }
+
+    private static String formatHundredths(long hundredths, boolean negative){
+        long absolute = Math.abs(hundredths);
+        int decimals = (int) (absolute % 100);
+        StringBuilder sb = new StringBuilder(24);
+
+        if(negative)
+            sb.append('-');
+
+        sb.append(absolute / 100);
+
+        if(decimals != 0){
+            sb.append('.').append(decimals / 10);
+            if(decimals % 10 != 0)
+                sb.append(decimals % 10);
+        }
+
+        return sb.toString();
+    }
 }
@@ -0,0 +1,23 @@
+package com.ikemole.expressionevaluator.structure.node;
+
+/**
+ * This class represents a node in the expression linked list which is a named variable.
+ * The value of a variable is only known when a compiled expression is evaluated.
+ */
+public class VariableNode extends ExpressionNode {
+    private String name;
+
+    public VariableNode(String name){
+        super(ExpressionNodeType.Variable);
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
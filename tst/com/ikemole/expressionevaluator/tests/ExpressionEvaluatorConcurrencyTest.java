@@ -0,0 +1,100 @@
+package com.ikemole.expressionevaluator.tests;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.ExpressionCache;
+import com.ikemole.expressionevaluator.compiled.VariableBindings;
+import com.ikemole.expressionevaluator.structure.ExpressionResultWithSteps;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A stress test for sharing one ExpressionEvaluator between many threads.
+ * Every thread repeats the same evaluations and compares them with the results of a single thread.
+ */
+public class ExpressionEvaluatorConcurrencyTest {
+    private static final int THREAD_COUNT = 200;
+    private static final int ITERATIONS = 200;
+
+    private static final String[] EXPRESSIONS = {
+            "1/2+(3/4)+(1/11)",
+            "43+(4^(2+(6*3-17)))/2",
+            "28/(2+3*4)+(6-7)",
+            "(5*2*7) + (2 ^ (2 + (81/27))) - 4 ^ (1/2)",
+            "2/3-7/9*(1/7)",
+            "28-(2/0)",
+    };
+
+    @Test
+    public void evaluateAndShowWorking_sharedEvaluator() throws Exception {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+        List<ExpressionResultWithSteps> expected = new ArrayList<>();
+        for (String expression : EXPRESSIONS)
+            expected.add(evaluator.evaluateAndShowWorking(expression, true));
+
+        runConcurrently(() -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                int index = i % EXPRESSIONS.length;
+                ExpressionResultWithSteps actual = evaluator.evaluateAndShowWorking(EXPRESSIONS[index], true);
+                assertEquals(expected.get(index).getResult(), actual.getResult());
+                assertEquals(expected.get(index).getSteps(), actual.getSteps());
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void evaluate_sharedEvaluatorWithCacheAndJit() throws Exception {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+        evaluator.setCache(ExpressionCache.withMaximumEntries(4));
+        evaluator.setJitThreshold(50);
+        CompiledExpression compiled = evaluator.compile("x * (y + 1) ^ 2");
+
+        runConcurrently(() -> {
+            VariableBindings bindings = compiled.newBindings();
+            for (int i = 0; i < ITERATIONS; i++) {
+                String expression = EXPRESSIONS[i % EXPRESSIONS.length];
+                assertEquals(new ExpressionEvaluator().evaluate(expression), evaluator.evaluate(expression));
+
+                bindings.set(0, i).set(1, 2);
+                assertEquals(i * 9.0, evaluator.evaluate(compiled, bindings));
+            }
+            return null;
+        });
+        assertTrue(compiled.isCompiledToBytecode());
+    }
+
+    /**
+     * Run the task on many threads at once and rethrow the first failure.
+     */
+    private void runConcurrently(Callable<Void> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < THREAD_COUNT; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+
+            start.countDown();
+            for (Future<Void> future : futures)
+                future.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.ikemole.expressionevaluator.tests;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledOperation;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.structure.ExpressionChain;
+import com.ikemole.expressionevaluator.structure.ExpressionChainBuilder;
+import com.ikemole.expressionevaluator.structure.node.BracketNode;
+import com.ikemole.expressionevaluator.structure.node.ExpressionNode;
+import com.ikemole.expressionevaluator.structure.node.ExpressionNodeType;
+import com.ikemole.expressionevaluator.structure.node.NumberNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the evaluator with the priority queue ordering it used before the order of the operators
+ * was resolved at parse time. The two only disagree on chains of exponents, which used to be grouped
+ * from the left, so the random expressions never chain exponents. They also only use values that
+ * doubles represent exactly, so that grouping additions or multiplications differently cannot
+ * change a result by rounding.
+ */
+public class ExpressionEvaluatorDifferentialTest {
+    private static final Map<ExpressionNodeType, Integer> PRIORITY_QUEUE_PRIORITIES =
+            new EnumMap<>(ExpressionNodeType.class);
+    static {
+        PRIORITY_QUEUE_PRIORITIES.put(ExpressionNodeType.Bracket, 6);
+        PRIORITY_QUEUE_PRIORITIES.put(ExpressionNodeType.Exponent, 5);
+        PRIORITY_QUEUE_PRIORITIES.put(ExpressionNodeType.Division, 4);
+        PRIORITY_QUEUE_PRIORITIES.put(ExpressionNodeType.Multiplication, 3);
+        PRIORITY_QUEUE_PRIORITIES.put(ExpressionNodeType.Subtraction, 2);
+        PRIORITY_QUEUE_PRIORITIES.put(ExpressionNodeType.Addition, 1);
+    }
+
+    // At most this many numbers in an expression keeps every intermediate result exact.
+    private static final int MAX_NUMBERS = 7;
+
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+    private ExpressionChainBuilder expressionChainBuilder = new ExpressionChainBuilder();
+
+    @Test
+    public void randomExpressions_matchPriorityQueueOrder(){
+        Random random = new Random(14);
+
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder sb = new StringBuilder();
+            appendExpression(sb, random, new int[]{MAX_NUMBERS}, 0);
+            String expression = sb.toString();
+
+            try {
+                double expected = evaluateWithPriorityQueue(expressionChainBuilder.build(expression));
+                assertEquals(expected, evaluator.evaluate(expression), expression);
+                assertEquals(expected, evaluator.evaluate(evaluator.compile(expression)), expression);
+            } catch (BadExpressionException e) {
+                fail(expression, e);
+            }
+        }
+    }
+
+    @Test
+    public void chainedExponents_nowGroupFromTheRight(){
+        try {
+            assertEquals(64, evaluateWithPriorityQueue(expressionChainBuilder.build("2^3^2")));
+            assertEquals(512, evaluator.evaluate("2^3^2"));
+            assertEquals(512, evaluator.evaluate(evaluator.compile("2^3^2")));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Append a random expression: terms separated by + and -, where each term is a product of factors.
+     * A factor is a number, a number raised to a small power, or a bracketed expression.
+     */
+    private void appendExpression(StringBuilder sb, Random random, int[] numbersLeft, int depth){
+        if(random.nextInt(5) == 0)
+            sb.append('-');
+
+        appendTerm(sb, random, numbersLeft, depth);
+        while (numbersLeft[0] > 0 && random.nextInt(3) > 0) {
+            sb.append(random.nextBoolean() ? '+' : '-');
+            appendTerm(sb, random, numbersLeft, depth);
+        }
+    }
+
+    private void appendTerm(StringBuilder sb, Random random, int[] numbersLeft, int depth){
+        appendFactor(sb, random, numbersLeft, depth);
+        while (numbersLeft[0] > 0 && random.nextBoolean()) {
+            if(random.nextBoolean()){
+                sb.append('*');
+                appendFactor(sb, random, numbersLeft, depth);
+            } else {
+                // only dividing by a power of two is exact
+                sb.append('/').append(1 << random.nextInt(3));
+                numbersLeft[0]--;
+            }
+        }
+    }
+
+    private void appendFactor(StringBuilder sb, Random random, int[] numbersLeft, int depth){
+        int choice = random.nextInt(4);
+
+        if(choice == 0 && depth < 3 && numbersLeft[0] > 1){
+            sb.append('(');
+            appendExpression(sb, random, numbersLeft, depth + 1);
+            sb.append(')');
+        } else {
+            sb.append(random.nextInt(10));
+            if(choice == 1)
+                sb.append('^').append(random.nextInt(3));
+            numbersLeft[0]--;
+        }
+    }
+
+    /**
+     * Evaluate a chain the way the evaluator did before: all the operators went into a priority queue,
+     * where brackets came first, then ^, /, *, - and + in that order, and ties went to the leftmost one.
+     */
+    private static double evaluateWithPriorityQueue(ExpressionChain expressionChain){
+        Map<ExpressionNode, Integer> positions = new IdentityHashMap<>();
+        PriorityQueue<ExpressionNode> queue = new PriorityQueue<>((operator1, operator2) -> {
+            if(operator2.type() != operator1.type())
+                return PRIORITY_QUEUE_PRIORITIES.get(operator2.type()) - PRIORITY_QUEUE_PRIORITIES.get(operator1.type());
+            else
+                return positions.get(operator1) - positions.get(operator2);
+        });
+
+        for (ExpressionNode node = expressionChain.first(); node != null; node = node.right()) {
+            positions.put(node, positions.size());
+            if(!node.type().isOperand())
+                queue.add(node);
+        }
+
+        while (!queue.isEmpty()) {
+            ExpressionNode node = queue.remove();
+            double result;
+
+            if(node.type() == ExpressionNodeType.Bracket){
+                result = evaluateWithPriorityQueue(((BracketNode) node).innerChain());
+            } else {
+                double left = ((NumberNode) node.left()).number();
+                double right = ((NumberNode) node.right()).number();
+                result = CompiledOperation.apply(node.type(), left, right);
+            }
+
+            expressionChain.replace(node, new NumberNode(result));
+        }
+
+        return ((NumberNode) expressionChain.first()).number();
+    }
+}
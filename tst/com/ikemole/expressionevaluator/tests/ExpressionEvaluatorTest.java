@@ -2,11 +2,17 @@ package com.ikemole.expressionevaluator.tests;
 
 import com.ikemole.expressionevaluator.ExpressionEvaluator;
 import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.function.FunctionRegistry;
 import com.ikemole.expressionevaluator.structure.ExpressionResultWithSteps;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 
 public class ExpressionEvaluatorTest {
     private ExpressionEvaluator evaluator = new ExpressionEvaluator();
@@ -42,6 +48,18 @@ public class ExpressionEvaluatorTest {
         assertExpressionResult("-15*2^3+5", -115);
     }
 
+    @Test
+    public void evaluate_deeplyNestedBrackets(){
+        int depth = 1000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++)
+            sb.append("(1+");
+        sb.append('1');
+        for (int i = 0; i < depth; i++)
+            sb.append(')');
+        assertExpressionResult(sb.toString(), depth + 1);
+    }
+
     @Test
     public void evaluate_beginMinusExponent(){
         assertExpressionResult("-2^4", -16);
@@ -52,6 +70,67 @@ public class ExpressionEvaluatorTest {
         assertExpressionResult("(-2)^4", 16);
     }
 
+    @Test
+    public void evaluate_exponentIsRightAssociative(){
+        assertExpressionResult("2^3^2", 512);
+        assertExpressionResult("(2^3)^2", 64);
+        assertExpressionResult("2*2^1^3", 4);
+    }
+
+    @Test
+    public void evaluate_sameLevelOperatorsAreLeftToRight(){
+        assertExpressionResult("1-2+3", 2);
+        assertExpressionResult("10-2-3+1", 6);
+        assertExpressionResult("8/4*2", 4);
+        assertExpressionResult("8/4/2*3", 3);
+    }
+
+    @Test
+    public void evaluate_decimalAndScientificNumbers(){
+        assertExpressionResult("1.5*4", 6);
+        assertExpressionResult("0.1+0.2", 0.1 + 0.2);
+        assertExpressionResult(".5^2", 0.25);
+        assertExpressionResult("6.02e23/2", 3.01e23);
+        assertExpressionResult("1e-3*(2.5E+3)", 2.5);
+        assertExpressionResult("3000000000*2", 6e9);
+    }
+
+    @Test
+    public void evaluate_functionsAndConstants(){
+        evaluator = new ExpressionEvaluator(FunctionRegistry.withBuiltInConstants());
+        assertExpressionResult("sqrt(16) + max(1, 5, 3)", 9);
+        assertExpressionResult("abs(-3) * min(2, 7)^2", 12);
+        assertExpressionResult("max(sqrt(4), log(e), 2*(1+1))", 4);
+        assertExpressionResult("2 * pi", 2 * Math.PI);
+        assertExpressionResult("floor(7/2) + ceil (1.2)", 5);
+        assertExpressionResult("-sqrt(9)^2", -9);
+    }
+
+    @Test
+    public void evaluate_badFunctionCalls_throwException(){
+        Assertions.assertThrows(BadExpressionException.class, () -> evaluator.evaluate("foo(1)"));
+        Assertions.assertThrows(BadExpressionException.class, () -> evaluator.evaluate("sqrt(1, 2)"));
+        Assertions.assertThrows(BadExpressionException.class, () -> evaluator.evaluate("max()"));
+        Assertions.assertThrows(BadExpressionException.class, () -> evaluator.evaluate("max(1,)"));
+        Assertions.assertThrows(BadExpressionException.class, () -> evaluator.evaluate("max(1, 2"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate("(1, 2)"));
+    }
+
+    @Test
+    public void evaluate_fromCharArrayAndByteBuffer(){
+        try {
+            char[] chars = "[5+2^4*3-1]".toCharArray();
+            Assertions.assertEquals(52, evaluator.evaluate(chars, 1, chars.length - 2));
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(16).put("5+2^4*3-1".getBytes(StandardCharsets.US_ASCII));
+            buffer.flip();
+            Assertions.assertEquals(52, evaluator.evaluate(buffer));
+            Assertions.assertEquals(0, buffer.position());
+        } catch (BadExpressionException e) {
+            Assertions.fail(e);
+        }
+    }
+
     @Test
     public void evaluate_multiDivision(){
         assertExpressionResult("2/2/2", 0.5);
@@ -139,6 +218,19 @@ public class ExpressionEvaluatorTest {
         assertEvaluateAndShowWorking(expression, expectedResult, expectedSteps);
     }
 
+    @Test
+    public void test_showWorking_bracketWithSpaces(){
+        String expression = "1 + (2 * 3)";
+        double expectedResult = 7;
+        String[] expectedSteps = {
+                "1+(2*3)",
+                "1+(6)",
+                "1+6",
+                "7",
+        };
+        assertEvaluateAndShowWorking(expression, expectedResult, expectedSteps);
+    }
+
     @Test
     public void test_showWorking_withInfinity(){
         String expression = "28-(2/0)";
@@ -169,6 +261,87 @@ public class ExpressionEvaluatorTest {
         assertEvaluateAndShowWorking(expression, expectedResult, expectedSteps);
     }
 
+    @Test
+    public void test_showWorking_longExpression(){
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 1; i < 2000; i++)
+            sb.append(i % 2 == 0 ? "+1" : "+(2-1)");
+
+        try {
+            ExpressionResultWithSteps actual = evaluator.evaluateAndShowWorking(sb.toString(), true);
+            List<String> steps = actual.getSteps();
+            Assertions.assertEquals(2000, actual.getResult());
+            Assertions.assertEquals(sb.toString(), steps.get(0));
+            Assertions.assertEquals("2000", steps.get(steps.size() - 1));
+            Assertions.assertEquals(new HashSet<>(steps).size(), steps.size());
+        } catch (BadExpressionException e) {
+            Assertions.fail(e);
+        }
+    }
+
+    @Test
+    public void test_showWorking_functions(){
+        evaluator = new ExpressionEvaluator(FunctionRegistry.withBuiltInConstants());
+        String expression = "max(1, sqrt(4*4)) + 2*pi";
+        double expectedResult = 4 + 2 * Math.PI;
+        String[] expectedSteps = {
+                "max(1,sqrt(4*4))+2*pi",
+                "max(1,sqrt(16))+2*pi",
+                "max(1,4)+2*pi",
+                "4+2*pi",
+                "4+6.28",
+                "10.28",
+        };
+        assertEvaluateAndShowWorking(expression, expectedResult, expectedSteps);
+    }
+
+    @Test
+    public void test_showWorking_numbersBeyondIntRange(){
+        String[] expectedSteps = {"3000000000+1", "3000000001"};
+        assertEvaluateAndShowWorking("3000000000+1", 3000000001.0, expectedSteps);
+    }
+
+    @Test
+    public void test_withoutShowWorking_hasNoSteps(){
+        try {
+            ExpressionResultWithSteps actual = evaluator.evaluateAndShowWorking("2+3*4", false);
+            Assertions.assertEquals(14, actual.getResult());
+            Assertions.assertTrue(actual.getSteps().isEmpty());
+        } catch (BadExpressionException e) {
+            Assertions.fail(e);
+        }
+    }
+
+    @Test
+    public void test_streamWorking_sendsStepsBeforeTheEvaluationFails(){
+        List<String> steps = new ArrayList<>();
+        Assertions.assertThrows(BadExpressionException.class,
+                () -> evaluator.evaluateAndShowWorking("2*3+x", step -> steps.add(step.toString())));
+        Assertions.assertEquals(List.of("2*3+x", "6+x"), steps);
+    }
+
+    @Test
+    public void test_streamWorking_longExpression(){
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 1; i < 2000; i++)
+            sb.append(i % 2 == 0 ? "+1" : "+(2-1)");
+
+        try {
+            int[] stepCount = new int[1];
+            String[] lastStep = new String[1];
+            double result = evaluator.evaluateAndShowWorking(sb.toString(), step -> {
+                stepCount[0]++;
+                lastStep[0] = step.toString();
+            });
+            Assertions.assertEquals(2000, result);
+            Assertions.assertEquals(evaluator.evaluateAndShowWorking(sb.toString(), true).getSteps().size(),
+                    stepCount[0]);
+            Assertions.assertEquals("2000", lastStep[0]);
+        } catch (BadExpressionException e) {
+            Assertions.fail(e);
+        }
+    }
+
     private void assertExpressionResult(String expression, double expectedResult){
         try {
             double actualResult = evaluator.evaluate(expression);
@@ -184,6 +357,11 @@ public class ExpressionEvaluatorTest {
             ExpressionResultWithSteps actual = evaluator.evaluateAndShowWorking(expression, true);
             Assertions.assertEquals(expectedResult, actual.getResult(), 0.001);
             Assertions.assertArrayEquals(expectedSteps, actual.getSteps().toArray(new String[0]));
+
+            List<String> streamedSteps = new ArrayList<>();
+            double streamedResult = evaluator.evaluateAndShowWorking(expression, step -> streamedSteps.add(step.toString()));
+            Assertions.assertEquals(expectedResult, streamedResult, 0.001);
+            Assertions.assertArrayEquals(expectedSteps, streamedSteps.toArray(new String[0]));
         } catch (BadExpressionException e) {
             e.printStackTrace();
             Assertions.fail(e);
@@ -3,6 +3,7 @@ package com.ikemole.expressionevaluator.tests.assertions;
 import com.ikemole.expressionevaluator.structure.node.BracketNode;
 import com.ikemole.expressionevaluator.structure.node.ExpressionNode;
 import com.ikemole.expressionevaluator.structure.node.NumberNode;
+import com.ikemole.expressionevaluator.structure.node.VariableNode;
 import org.junit.jupiter.api.Assertions;
 
 /**
@@ -23,6 +24,11 @@ public class ExpressionNodeAssert {
             Assertions.assertEquals(((NumberNode)expected).number(), ((NumberNode)actual).number());
         }
 
+        if(expected instanceof VariableNode){
+            Assertions.assertTrue(actual instanceof VariableNode);
+            Assertions.assertEquals(((VariableNode)expected).name(), ((VariableNode)actual).name());
+        }
+
         if(expected instanceof BracketNode){
             Assertions.assertTrue(actual instanceof BracketNode);
             Assertions.assertEquals(((BracketNode)expected).expression(), ((BracketNode)actual).expression());
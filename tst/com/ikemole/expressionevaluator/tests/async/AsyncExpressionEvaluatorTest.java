@@ -0,0 +1,292 @@
+package com.ikemole.expressionevaluator.tests.async;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.async.AsyncExpressionEvaluator;
+import com.ikemole.expressionevaluator.async.EvaluationResult;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncExpressionEvaluatorTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+    private ForkJoinPool pool = new ForkJoinPool(2);
+    private AsyncExpressionEvaluator asyncEvaluator = new AsyncExpressionEvaluator(evaluator, pool);
+
+    @AfterEach
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void evaluate_streamOfExpressions() throws Exception {
+        List<String> expressions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            expressions.add(i % 100 == 99 ? "(1+" : i + "*2");
+
+        CollectingSubscriber<EvaluationResult> subscriber = new CollectingSubscriber<>(Long.MAX_VALUE);
+        asyncEvaluator.evaluate(new ListPublisher<>(expressions)).subscribe(subscriber);
+        List<EvaluationResult> results = subscriber.done.get(10, TimeUnit.SECONDS);
+
+        assertEquals(1000, results.size());
+        for (int i = 0; i < 1000; i++) {
+            EvaluationResult result = results.get(i);
+            assertEquals(expressions.get(i), result.expression());
+            if(i % 100 == 99){
+                assertFalse(result.succeeded());
+                assertNotNull(result.error());
+            } else {
+                assertEquals(i * 2, result.value(), result.toString());
+            }
+        }
+    }
+
+    @Test
+    public void evaluate_streamOfRows() throws Exception {
+        CompiledExpression compiled = evaluator.compile("price * (1 + rate)");
+        List<double[]> rows = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            rows.add(new double[]{i, 0.5});
+
+        CollectingSubscriber<Double> subscriber = new CollectingSubscriber<>(Long.MAX_VALUE);
+        asyncEvaluator.evaluate(compiled, new ListPublisher<>(rows)).subscribe(subscriber);
+        List<Double> results = subscriber.done.get(10, TimeUnit.SECONDS);
+
+        assertEquals(2000, results.size());
+        for (int i = 0; i < 2000; i++)
+            assertEquals(i * 1.5, results.get(i));
+
+        CollectingSubscriber<Double> failing = new CollectingSubscriber<>(Long.MAX_VALUE);
+        asyncEvaluator.evaluate(compiled, new ListPublisher<>(List.of(new double[]{1}))).subscribe(failing);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failing.done.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+    }
+
+    @Test
+    public void evaluate_slowSubscriberHoldsBackTheSource() throws Exception {
+        List<String> expressions = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++)
+            expressions.add("1+" + i);
+        ListPublisher<String> source = new ListPublisher<>(expressions);
+
+        CollectingSubscriber<EvaluationResult> subscriber = new CollectingSubscriber<>(1);
+        asyncEvaluator.evaluate(source).subscribe(subscriber);
+
+        Thread.sleep(300);
+        assertEquals(1, subscriber.received());
+        assertTrue(source.requested.get() <= 2 * 256, "requested " + source.requested.get());
+
+        subscriber.subscription.request(1000);
+        Thread.sleep(300);
+        assertEquals(1001, subscriber.received());
+        assertTrue(source.requested.get() <= 1001 + 2 * 256, "requested " + source.requested.get());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        List<EvaluationResult> results = subscriber.done.get(30, TimeUnit.SECONDS);
+        assertEquals(100_000, results.size());
+        assertEquals(100_000, results.get(99_999).value());
+    }
+
+    @Test
+    public void evaluate_singleThreadExecutor() throws Exception {
+        ExecutorService singleThread = Executors.newFixedThreadPool(1);
+        try {
+            AsyncExpressionEvaluator async = new AsyncExpressionEvaluator(evaluator, singleThread);
+            List<String> expressions = new ArrayList<>();
+            for (int i = 0; i < 5000; i++)
+                expressions.add(i + "+1");
+
+            CollectingSubscriber<EvaluationResult> subscriber = new CollectingSubscriber<>(Long.MAX_VALUE);
+            async.evaluate(new ListPublisher<>(expressions)).subscribe(subscriber);
+            List<EvaluationResult> results = subscriber.done.get(10, TimeUnit.SECONDS);
+            assertEquals(5000, results.size());
+            assertEquals(5000, results.get(4999).value());
+
+            CompiledExpression compiled = evaluator.compile("x * 2");
+            List<double[]> rows = new ArrayList<>();
+            for (int i = 0; i < 5000; i++)
+                rows.add(new double[]{i});
+            CollectingSubscriber<Double> rowSubscriber = new CollectingSubscriber<>(100);
+            async.evaluate(compiled, new ListPublisher<>(rows)).subscribe(rowSubscriber);
+            rowSubscriber.subscription.request(Long.MAX_VALUE);
+            List<Double> values = rowSubscriber.done.get(10, TimeUnit.SECONDS);
+            assertEquals(5000, values.size());
+            assertEquals(9998, values.get(4999));
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    public void evaluate_cancelStopsTheSource() throws Exception {
+        List<String> expressions = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++)
+            expressions.add("1+" + i);
+        ListPublisher<String> source = new ListPublisher<>(expressions);
+
+        CollectingSubscriber<EvaluationResult> subscriber = new CollectingSubscriber<>(10);
+        asyncEvaluator.evaluate(source).subscribe(subscriber);
+        Thread.sleep(100);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(Long.MAX_VALUE);
+        Thread.sleep(100);
+
+        assertTrue(source.cancelled.get());
+        assertEquals(10, subscriber.received());
+        assertFalse(subscriber.done.isDone());
+    }
+
+    @Test
+    public void evaluate_sourceErrorEndsTheStream() {
+        Flow.Publisher<String> failing = subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                subscriber.onError(new IllegalStateException("source failed"));
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+
+        CollectingSubscriber<EvaluationResult> subscriber = new CollectingSubscriber<>(Long.MAX_VALUE);
+        asyncEvaluator.evaluate(failing).subscribe(subscriber);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> subscriber.done.get(10, TimeUnit.SECONDS));
+        assertEquals("source failed", e.getCause().getMessage());
+    }
+
+    @Test
+    public void evaluateAsync_looksUpVariablesConcurrently() throws Exception {
+        Map<String, CompletableFuture<Double>> lookups = new ConcurrentHashMap<>();
+        CompletableFuture<Double> result = asyncEvaluator.evaluateAsync("(a+b)*(c-a)",
+                name -> lookups.computeIfAbsent(name, n -> new CompletableFuture<>()));
+
+        // every lookup is started before any of them completes
+        assertEquals(3, lookups.size());
+        lookups.get("c").complete(10.0);
+        lookups.get("a").complete(4.0);
+        assertFalse(result.isDone());
+        lookups.get("b").complete(1.0);
+
+        assertEquals(30, result.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void evaluateAsync_failures() {
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> asyncEvaluator.evaluateAsync("(1+", name -> null).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(BadExpressionException.class, e.getCause());
+
+        e = assertThrows(ExecutionException.class, () -> asyncEvaluator.evaluateAsync("x+1",
+                name -> CompletableFuture.failedFuture(new IllegalStateException("no " + name)))
+                .get(10, TimeUnit.SECONDS));
+        assertEquals("no x", e.getCause().getMessage());
+    }
+
+    /**
+     * A publisher of the items of a list that only emits what was requested, and counts the requests.
+     */
+    private static class ListPublisher<T> implements Flow.Publisher<T> {
+        private final List<T> items;
+        final AtomicLong requested = new AtomicLong();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        ListPublisher(List<T> items){
+            this.items = items;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super T> subscriber) {
+            AtomicLong demand = new AtomicLong();
+            AtomicInteger next = new AtomicInteger();
+            AtomicBoolean stopped = new AtomicBoolean();
+
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested.addAndGet(n);
+                    // the first caller emits, and later requests only add to the demand
+                    if(demand.getAndAdd(n) != 0)
+                        return;
+
+                    long emitted = 0;
+                    long available = n;
+                    while (true){
+                        while (emitted < available && !stopped.get() && next.get() < items.size()){
+                            subscriber.onNext(items.get(next.getAndIncrement()));
+                            emitted++;
+                        }
+                        if(next.get() == items.size() && !stopped.get()){
+                            stopped.set(true);
+                            subscriber.onComplete();
+                            return;
+                        }
+                        available = demand.addAndGet(-emitted);
+                        emitted = 0;
+                        if(available == 0 || stopped.get())
+                            return;
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    stopped.set(true);
+                    cancelled.set(true);
+                }
+            });
+        }
+    }
+
+    private static class CollectingSubscriber<T> implements Flow.Subscriber<T> {
+        private final long initialRequest;
+        final List<T> items = new ArrayList<>();
+        final CompletableFuture<List<T>> done = new CompletableFuture<>();
+        volatile Flow.Subscription subscription;
+
+        CollectingSubscriber(long initialRequest){
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public synchronized void onNext(T item) {
+            items.add(item);
+        }
+
+        synchronized int received() {
+            return items.size();
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            done.complete(new ArrayList<>(items));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.ikemole.expressionevaluator.tests.compiled;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.BatchEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.VariableBindings;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchEvaluatorTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @Test
+    public void evaluateBatch_matchesRowByRow(){
+        String[] expressions = {
+                "price * (1 + rate) - discount",
+                "a ^ 2 / (b - (c * (a + 1)) ^ (1/2))",
+                "x",
+                "2 ^ 10 + 1",
+                "(x + 1) * (y + 2) * (x - y) / ((x * y) - (1 - (x / (y + 3))))",
+                "-x + 3 - y ^ x",
+                "sqrt(abs(x)) + max(x, y, 1) * min(y, 2) - log(x * x + 1)",
+        };
+
+        for (String expression : expressions)
+            assertBatchMatchesRowByRow(expression, 2500);
+    }
+
+    @Test
+    public void evaluateBatch_emptyTable(){
+        assertBatchMatchesRowByRow("x + y", 0);
+    }
+
+    @Test
+    public void evaluateBatchParallel_matchesSequential(){
+        try {
+            CompiledExpression compiled = evaluator.compile("(x + 1) * y ^ 2 - x / (y + 1)");
+            int rowCount = 300_001;
+            Random random = new Random(11);
+            double[][] columns = new double[2][rowCount];
+            for (double[] column : columns) {
+                for (int row = 0; row < rowCount; row++)
+                    column[row] = random.nextDouble() * 10;
+            }
+
+            double[] expected = new double[rowCount];
+            evaluator.evaluateBatch(compiled, columns, expected);
+
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                double[] actual = new double[rowCount];
+                evaluator.evaluateBatchParallel(compiled, columns, actual, pool);
+                assertArrayEquals(expected, actual);
+            } finally {
+                pool.shutdown();
+            }
+
+            double[] actual = new double[rowCount];
+            evaluator.evaluateBatchParallel(compiled, columns, actual);
+            assertArrayEquals(expected, actual);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void evaluateBatchParallel_shortColumn_throwsException(){
+        try {
+            CompiledExpression compiled = evaluator.compile("x + 1");
+            double[][] columns = {new double[100_000]};
+            assertThrows(IllegalArgumentException.class,
+                    () -> evaluator.evaluateBatchParallel(compiled, columns, new double[100_001]));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void evaluate_subRange(){
+        try {
+            CompiledExpression compiled = evaluator.compile("x * 10");
+            double[][] columns = {{1, 2, 3, 4, 5}};
+            double[] out = new double[5];
+            new BatchEvaluator(compiled, columns).evaluate(out, 1, 4);
+            assertArrayEquals(new double[]{0, 20, 30, 40, 0}, out);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void evaluate_reusedWithNewColumnValues(){
+        try {
+            CompiledExpression compiled = evaluator.compile("x * 10 + y");
+            double[][] columns = {{1, 2}, {3, 4}};
+            double[] out = new double[2];
+            BatchEvaluator batchEvaluator = new BatchEvaluator(compiled, columns);
+            batchEvaluator.evaluate(out, 0, 2);
+            assertArrayEquals(new double[]{13, 24}, out);
+
+            columns[0][0] = 5;
+            columns[1][1] = 0;
+            batchEvaluator.evaluate(out, 0, 2);
+            assertArrayEquals(new double[]{53, 20}, out);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void evaluateBatch_missingColumns_throwsException(){
+        try {
+            CompiledExpression compiled = evaluator.compile("x * y");
+            assertThrows(IllegalArgumentException.class,
+                    () -> evaluator.evaluateBatch(compiled, new double[][]{{1}}, new double[1]));
+            assertThrows(IllegalArgumentException.class,
+                    () -> evaluator.evaluateBatch(compiled, new double[][]{{1, 2}, {1}}, new double[2]));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    private void assertBatchMatchesRowByRow(String expression, int rowCount){
+        try {
+            CompiledExpression compiled = evaluator.compile(expression);
+            Random random = new Random(7);
+            double[][] columns = new double[compiled.variableCount()][rowCount];
+            for (double[] column : columns) {
+                for (int row = 0; row < rowCount; row++)
+                    column[row] = random.nextInt(2000) / 100.0 - 5;
+            }
+
+            double[] out = new double[rowCount];
+            evaluator.evaluateBatch(compiled, columns, out);
+
+            VariableBindings bindings = compiled.newBindings();
+            for (int row = 0; row < rowCount; row++) {
+                for (int slot = 0; slot < columns.length; slot++)
+                    bindings.set(slot, columns[slot][row]);
+                assertEquals(evaluator.evaluate(compiled, bindings), out[row], expression + " row " + row);
+            }
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.ikemole.expressionevaluator.tests.compiled;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledBatch;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.VariableBindings;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledBatchTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @Test
+    public void evaluate_matchesEachExpressionOnItsOwn() throws BadExpressionException {
+        List<String> expressions = List.of(
+                "principal * (rate/12) / (1 - (1 + (rate/12)) ^ (0 - months))",
+                "principal * (rate/12)",
+                "(1 + (rate/12)) ^ months",
+                "months * 2",
+                "sqrt(principal) + max(rate, 0.01)",
+                "7");
+        CompiledBatch batch = evaluator.compileBatch(expressions);
+
+        assertEquals(6, batch.size());
+        assertEquals(3, batch.variableCount());
+        assertEquals("principal", batch.variableName(0));
+        assertEquals(2, batch.slotOf("months"));
+
+        VariableBindings bindings = batch.newBindings().set(0, 10_000).set(1, 0.05).set(2, 36);
+        double[] results = batch.evaluate(bindings);
+
+        for (int i = 0; i < expressions.size(); i++) {
+            CompiledExpression compiled = evaluator.compile(expressions.get(i));
+            VariableBindings own = compiled.newBindings();
+            for (int slot = 0; slot < compiled.variableCount(); slot++)
+                own.set(slot, bindings.get(batch.slotOf(compiled.variableName(slot))));
+
+            assertEquals(compiled.evaluate(own), results[i], expressions.get(i));
+        }
+    }
+
+    @Test
+    public void compileBatch_sharesSubtreesAcrossExpressions() throws BadExpressionException {
+        List<String> expressions = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            expressions.add("x * (rate/12) + " + i);
+        CompiledBatch batch = evaluator.compileBatch(expressions);
+
+        // "rate/12" and "x*(rate/12)" are found again in each expression after the first
+        assertEquals(2 * 99, batch.deduplicatedCount());
+        // x, rate, 12, DIVIDE, MULTIPLY, STORE once, then LOAD, a constant and ADD for each expression
+        assertEquals(6 + 3 * 100 - 1, batch.program().length());
+
+        double[] results = new double[100];
+        batch.evaluate(batch.newBindings().set(0, 2).set(1, 24), results);
+        for (int i = 0; i < 100; i++)
+            assertEquals(4 + i, results[i]);
+    }
+
+    @Test
+    public void compileBatch_identitiesAreNotCountedAsShared() throws BadExpressionException {
+        CompiledBatch batch = evaluator.compileBatch(List.of("a*1", "a+b", "(a+b)*2", "a+b"));
+
+        assertEquals(2, batch.deduplicatedCount());
+        double[] results = batch.evaluate(batch.newBindings().set(0, 3).set(1, 4));
+        assertArrayEquals(new double[]{3, 7, 14, 7}, results);
+    }
+
+    @Test
+    public void compileBatch_badExpressions() {
+        assertThrows(BadExpressionException.class, () -> evaluator.compileBatch(List.of("1+2", "(1+2")));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.compileBatch(List.of()));
+    }
+}
@@ -0,0 +1,122 @@
+package com.ikemole.expressionevaluator.tests.compiled;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.CompiledFunction;
+import com.ikemole.expressionevaluator.compiled.CompiledOperation;
+import com.ikemole.expressionevaluator.compiled.CompiledProgram;
+import com.ikemole.expressionevaluator.compiled.VariableBindings;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledProgramTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @Test
+    public void program_matchesTree(){
+        assertProgramResult("2*3", new double[0]);
+        assertProgramResult("5+2^(4+3)-1", new double[0]);
+        assertProgramResult("((1-2)/0)+(2/0)", new double[0]);
+        assertProgramResult("price * (1 + rate) - discount", new double[]{100, 0.5, 10});
+        assertProgramResult("a ^ (b - (c * (a + 1)) ^ (1/2))", new double[]{2, 30, 3});
+    }
+
+    @Test
+    public void program_maxStackDepth(){
+        assertMaxStackDepth("2", 1);
+        assertMaxStackDepth("a+b+c+d", 2);
+        assertMaxStackDepth("a+(b+(c+d))", 4);
+        assertMaxStackDepth("a^b^c", 3); // a^(b^c)
+        assertMaxStackDepth("a*b/c", 2);
+    }
+
+    @Test
+    public void program_computesSharedSubtreesOnce(){
+        try {
+            // a, b, ADD, STORE, LOAD, MULTIPLY
+            CompiledProgram program = evaluator.compile("(a+b)*(a+b)").program();
+            assertEquals(6, program.length());
+            assertEquals(3, program.maxStackDepth()); // two stack values and one temporary
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+
+        assertProgramResult("(a+b)*(a+b)", new double[]{2, 3});
+        assertProgramResult("((a+b)*c - (a+b)) / ((a+b)*c)", new double[]{2, 3, 4});
+        assertProgramResult("x^2 + (x-1)^2", new double[]{Double.NaN});
+    }
+
+    @Test
+    public void evaluate_doesNotAllocate(){
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        try {
+            CompiledExpression withVariables = evaluator.compile("price * (1 + rate) ^ (years / 12) - fee");
+            CompiledExpression withoutVariables = evaluator.compile("(5*2*7) + (2 ^ (2 + (81/27))) - 4 ^ (1/2)");
+            VariableBindings bindings = withVariables.newBindings();
+
+            // warm up until the JIT has compiled the evaluation path
+            double sum = 0;
+            for (int i = 0; i < 200_000; i++) {
+                bindings.set(0, i).set(1, 0.05).set(2, i % 24).set(3, 1);
+                sum += evaluator.evaluate(withVariables, bindings) + evaluator.evaluate(withoutVariables);
+            }
+
+            // measure the cost of measuring, so that only the evaluations are counted
+            long overhead = -threadBean.getCurrentThreadAllocatedBytes() + threadBean.getCurrentThreadAllocatedBytes();
+
+            long before = threadBean.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < 20_000; i++) {
+                bindings.set(0, i).set(1, 0.05).set(2, i % 24).set(3, 1);
+                sum += evaluator.evaluate(withVariables, bindings) + evaluator.evaluate(withoutVariables);
+            }
+            long allocated = threadBean.getCurrentThreadAllocatedBytes() - before - overhead;
+
+            assertTrue(sum > 0);
+            assertTrue(allocated <= 0, "Allocated " + allocated + " bytes");
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void program_rebuildsTheSharedTree() throws BadExpressionException {
+        CompiledExpression compiled = evaluator.compile("(a+b)*(a+b) - max(a, 2)");
+
+        CompiledOperation root = assertInstanceOf(CompiledOperation.class, compiled.root());
+        CompiledOperation square = assertInstanceOf(CompiledOperation.class, root.left());
+        assertSame(square.left(), square.right());
+        CompiledFunction call = assertInstanceOf(CompiledFunction.class, root.right());
+        CompiledOperation sum = (CompiledOperation) square.left();
+        assertSame(sum.left(), call.argument(0));
+        assertEquals("(((a+b)*(a+b))-max(a,2.0))", root.toString().replace(" ", ""));
+        assertEquals(49 - 3, root.evaluate(new double[]{3, 4}));
+
+        // the tree is not kept by the compiled expression
+        assertNotSame(compiled.root(), compiled.root());
+    }
+
+    private void assertMaxStackDepth(String expression, int expectedDepth){
+        try {
+            assertEquals(expectedDepth, evaluator.compile(expression).program().maxStackDepth(), expression);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    private void assertProgramResult(String expression, double[] variables){
+        try {
+            CompiledExpression compiled = evaluator.compile(expression);
+            CompiledProgram program = compiled.program();
+            double expected = compiled.root().evaluate(variables);
+            double actual = program.evaluate(variables, new double[program.maxStackDepth()]);
+            assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual), expression);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+}
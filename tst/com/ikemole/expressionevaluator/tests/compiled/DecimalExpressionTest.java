@@ -0,0 +1,96 @@
+package com.ikemole.expressionevaluator.tests.compiled;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.DecimalBindings;
+import com.ikemole.expressionevaluator.compiled.DecimalExpression;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DecimalExpressionTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @Test
+    public void evaluate_exactDecimals(){
+        try {
+            DecimalExpression expression = evaluator.compileDecimal("price * (1 + rate) - fee", MathContext.UNLIMITED);
+            DecimalBindings bindings = expression.newBindings();
+            bindings.set(expression.slotOf("price"), new BigDecimal("0.10"))
+                    .set(expression.slotOf("rate"), new BigDecimal("0.2"))
+                    .set(expression.slotOf("fee"), new BigDecimal("0.02"));
+            assertEquals(new BigDecimal("0.100"), expression.evaluate(bindings));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void evaluate_largeNumbers(){
+        assertDecimalResult("2^100", MathContext.UNLIMITED, "1267650600228229401496703205376");
+        assertDecimalResult("5+2^4*3-1", MathContext.UNLIMITED, "52");
+        assertDecimalResult("3/4", MathContext.UNLIMITED, "0.75");
+    }
+
+    @Test
+    public void evaluate_roundsToTheMathContext(){
+        assertDecimalResult("2/3", MathContext.DECIMAL64, "0.6666666666666667");
+        assertDecimalResult("2/3", new MathContext(4, RoundingMode.DOWN), "0.6666");
+        assertDecimalResult("2^(0-2)", MathContext.DECIMAL64, "0.25");
+    }
+
+    @Test
+    public void evaluate_nonTerminatingDivisionThrowsWhenUnlimited(){
+        try {
+            DecimalExpression expression = evaluator.compileDecimal("1/3", MathContext.UNLIMITED);
+            assertThrows(ArithmeticException.class, expression::evaluate);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void compile_numbersAreReadExactly(){
+        assertDecimalResult("0.1 + 0.2", MathContext.DECIMAL128, "0.3");
+        assertDecimalResult("6.02e23 / 2", MathContext.DECIMAL128, "301000000000000000000000");
+        // the digits of a name are not a number
+        assertDoesNotThrow(() -> evaluator.compileDecimal("rate_10000000000000000001 * 2", MathContext.DECIMAL128));
+        assertDecimalResult("9007199254740992 + .5", MathContext.DECIMAL128, "9007199254740992.5");
+        // numbers that a double can only hold rounded
+        assertDecimalResult("10000000000000000.01 - 10000000000000000", MathContext.DECIMAL128, "0.01");
+        assertDecimalResult("123456789012345678.25*4", MathContext.DECIMAL128, "493827156049382713.00");
+        assertDecimalResult("0.12345678901234567890123 * 2", MathContext.DECIMAL128, "0.24691357802469135780246");
+        assertDecimalResult("9007199254740993 - 9007199254740992", MathContext.DECIMAL128, "1");
+        assertDecimalResult("1e-400 * 2", MathContext.DECIMAL128, "2e-400");
+        try {
+            assertEquals(BigDecimal.TEN.pow(400), evaluator.compileDecimal("1e400", MathContext.DECIMAL128).evaluate());
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+        assertThrows(BadExpressionException.class, () -> evaluator.compileDecimal("1e1000000", MathContext.DECIMAL128));
+    }
+
+    @Test
+    public void evaluate_unboundVariableThrows(){
+        try {
+            DecimalExpression expression = evaluator.compileDecimal("a + b", MathContext.DECIMAL64);
+            DecimalBindings bindings = expression.newBindings().set(0, BigDecimal.ONE);
+            assertThrows(IllegalArgumentException.class, () -> expression.evaluate(bindings));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    private void assertDecimalResult(String expression, MathContext mathContext, String expectedResult){
+        try {
+            BigDecimal actual = evaluator.compileDecimal(expression, mathContext).evaluate();
+            assertEquals(new BigDecimal(expectedResult), actual, expression);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.ikemole.expressionevaluator.tests.compiled;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.ExpressionCache;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.function.FunctionRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpressionCacheTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @Test
+    public void evaluate_usesCache(){
+        ExpressionCache cache = ExpressionCache.withMaximumEntries(10);
+        evaluator.setCache(cache);
+
+        assertEvaluate("2 * 3", 6);
+        assertEvaluate("2*3", 6);
+        assertEvaluate("  2 *3 ", 6);
+        assertEvaluate("5+2^(4+3)-1", 132);
+
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.missCount());
+        assertEquals(2, cache.hitCount());
+    }
+
+    @Test
+    public void compile_returnsCachedExpression(){
+        evaluator.setCache(ExpressionCache.withMaximumEntries(10));
+        try {
+            CompiledExpression first = evaluator.compile("x + 1");
+            CompiledExpression second = evaluator.compile("x+1");
+            assertSame(first, second);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void key_keepsSpaceBetweenNumbersAndNames(){
+        ExpressionCache cache = ExpressionCache.withMaximumEntries(10);
+        evaluator.setCache(cache);
+
+        assertEvaluate("12", 12);
+        assertEvaluate("1 2", 1);
+        assertEquals(2, cache.size());
+
+        try {
+            assertNotSame(evaluator.compile("ab"), evaluator.compile("a b"));
+            assertSame(evaluator.compile("a b"), evaluator.compile("a   b"));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void key_keepsSpaceInsideNumbers(){
+        // with the constant e, "3e + 2" is a valid expression that is not the number 300
+        evaluator = new ExpressionEvaluator(FunctionRegistry.withBuiltInConstants());
+        String[] expressions = {"3e+2", "3e +2", "3e+ 2", "3e + 2", "1.5", "1 .5", "1. 5", "2e-1", "2e- 1", "2 e-1"};
+        double[] uncached = new double[expressions.length];
+        try {
+            for (int i = 0; i < expressions.length; i++)
+                uncached[i] = evaluator.evaluate(expressions[i]);
+
+            evaluator.setCache(ExpressionCache.withMaximumEntries(100));
+            for (int i = 0; i < expressions.length; i++)
+                assertEquals(uncached[i], evaluator.evaluate(expressions[i]), expressions[i]);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+
+        assertEvaluate("3e + 2", 3);
+        assertEvaluate("1 .5", 1);
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed(){
+        ExpressionCache cache = ExpressionCache.withMaximumEntries(3);
+        evaluator.setCache(cache);
+
+        assertEvaluate("1+1", 2);
+        assertEvaluate("2+2", 4);
+        assertEvaluate("3+3", 6);
+        assertEvaluate("1+1", 2); // used again, so it survives the next eviction
+        assertEvaluate("4+4", 8);
+
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertNotNull(cache.get("1+1"));
+        assertNull(cache.get("2+2"));
+    }
+
+    @Test
+    public void put_maximumBytes(){
+        ExpressionCache cache = ExpressionCache.withMaximumBytes(2000);
+        evaluator.setCache(cache);
+
+        for (int i = 0; i < 100; i++)
+            assertEvaluate(i + "*2+1", i * 2 + 1);
+
+        assertTrue(cache.weight() <= 2000);
+        assertTrue(cache.size() < 100);
+        assertEquals(100 - cache.size(), cache.evictionCount());
+    }
+
+    @Test
+    public void evaluate_withUnboundVariable_throwsException(){
+        evaluator.setCache(ExpressionCache.withMaximumEntries(10));
+        assertThrows(BadExpressionException.class, () -> evaluator.evaluate("x * 2"));
+    }
+
+    @Test
+    public void evaluate_concurrently(){
+        ExpressionCache cache = ExpressionCache.withMaximumEntries(16);
+        evaluator.setCache(cache);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        int n = i % 40;
+                        if(evaluator.evaluate(n + " + 1") != n + 1)
+                            throw new AssertionError("Wrong result for " + n);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+        }
+
+        assertNull(failure.get());
+        assertTrue(cache.size() <= 16);
+        assertEquals(8 * 2000, cache.hitCount() + cache.missCount());
+    }
+
+    private void assertEvaluate(String expression, double expectedResult){
+        try {
+            assertEquals(expectedResult, evaluator.evaluate(expression));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.ikemole.expressionevaluator.tests.compiled;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.VariableBindings;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpressionCompilerTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @Test
+    public void compile_matchesEvaluate(){
+        String[] expressions = {
+                "2*3",
+                "5+2^4*3-1",
+                "5+2^(4+3)-1",
+                "43 + (4 ^ (2 + 1)) - 9 ^ (9 - 7)",
+                "(5*2*7) + (2 ^ (2 + (81/27))) - 4 ^ (1/2)",
+                "-1-2-3-4+5-6-7-8-9+10",
+                "-15*2^3-5",
+                "-2^4",
+                "(-2)^4",
+                "2/2/2",
+                "1/2+(3/4)+(1/11)",
+                "((1-2)/0)+(2/0)",
+                "0/0",
+        };
+
+        for (String expression : expressions)
+            assertCompiledResult(expression);
+    }
+
+    @Test
+    public void compile_canBeEvaluatedManyTimes(){
+        try {
+            CompiledExpression compiled = evaluator.compile("28/(2+3*4)+(6-7)");
+            for (int i = 0; i < 100; i++)
+                assertEquals(1, evaluator.evaluate(compiled));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void compile_keepsExpression(){
+        try {
+            CompiledExpression compiled = evaluator.compile("1 + 2");
+            assertEquals("1 + 2", compiled.expression());
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void evaluate_withVariables(){
+        try {
+            CompiledExpression compiled = evaluator.compile("price * (1 + rate) - discount_2");
+            int price = compiled.slotOf("price");
+            int rate = compiled.slotOf("rate");
+            int discount = compiled.slotOf("discount_2");
+            VariableBindings bindings = compiled.newBindings();
+
+            bindings.set(price, 100).set(rate, 0.5).set(discount, 10);
+            assertEquals(140, evaluator.evaluate(compiled, bindings));
+
+            bindings.set(price, 10).set(rate, 1).set(discount, 0);
+            assertEquals(20, evaluator.evaluate(compiled, bindings));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void compile_variableSlotsFollowFirstAppearance(){
+        try {
+            CompiledExpression compiled = evaluator.compile("a + b * (c - a) ^ b");
+            assertEquals(3, compiled.variableCount());
+            assertEquals(0, compiled.slotOf("a"));
+            assertEquals(1, compiled.slotOf("b"));
+            assertEquals(2, compiled.slotOf("c"));
+            assertThrows(IllegalArgumentException.class, () -> compiled.slotOf("d"));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void evaluate_unboundVariables_throwsException(){
+        try {
+            CompiledExpression compiled = evaluator.compile("x * y");
+            assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(compiled));
+            assertThrows(IllegalArgumentException.class,
+                    () -> evaluator.evaluate(compiled, new VariableBindings(1)));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+        assertThrows(BadExpressionException.class, () -> evaluator.evaluate("x * 2"));
+        assertThrows(BadExpressionException.class, () -> evaluator.evaluate("x"));
+    }
+
+    @Test
+    public void compile_emptyExpression_throwsException(){
+        assertThrows(BadExpressionException.class, () -> evaluator.compile("  "));
+        assertThrows(BadExpressionException.class, () -> evaluator.compile("2*()"));
+    }
+
+    @Test
+    public void compile_unclosedBracket_throwsException(){
+        BadExpressionException exceptionThrown = assertThrows(BadExpressionException.class,
+                () -> evaluator.compile("12+9-(54^8/(67-43)-29"));
+        assertEquals("The open bracket at index 5 was not closed.", exceptionThrown.getMessage());
+    }
+
+    @Test
+    public void compile_missingOperand_throwsException(){
+        assertThrows(IllegalArgumentException.class, () -> evaluator.compile("2*"));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.compile("2*-3"));
+    }
+
+    private void assertCompiledResult(String expression){
+        try {
+            double expectedResult = evaluator.evaluate(expression);
+            CompiledExpression compiled = evaluator.compile(expression);
+            assertEquals(expectedResult, evaluator.evaluate(compiled), expression);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.ikemole.expressionevaluator.tests.compiled;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledConstant;
+import com.ikemole.expressionevaluator.compiled.CompiledFunction;
+import com.ikemole.expressionevaluator.compiled.CompiledNode;
+import com.ikemole.expressionevaluator.compiled.CompiledOperation;
+import com.ikemole.expressionevaluator.compiled.CompiledVariable;
+import com.ikemole.expressionevaluator.compiled.ExpressionOptimizer;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.function.FunctionRegistry;
+import com.ikemole.expressionevaluator.function.MathFunction;
+import com.ikemole.expressionevaluator.structure.node.ExpressionNodeType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpressionOptimizerTest {
+    private static final double[] SPECIAL_VALUES = {
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.0, -0.0, 1, -2.5, 3
+    };
+
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @Test
+    public void optimize_foldsConstants(){
+        CompiledNode root = compileRoot("x * (60*60*24) + 2^10");
+
+        CompiledOperation sum = assertInstanceOf(CompiledOperation.class, root);
+        CompiledOperation product = assertInstanceOf(CompiledOperation.class, sum.left());
+        assertEquals(86400, assertInstanceOf(CompiledConstant.class, product.right()).value());
+        assertEquals(1024, assertInstanceOf(CompiledConstant.class, sum.right()).value());
+        assertEquals(42, assertInstanceOf(CompiledConstant.class, compileRoot("(2+4)*7")).value());
+    }
+
+    @Test
+    public void optimize_removesIdentities(){
+        assertInstanceOf(CompiledVariable.class, compileRoot("x*1"));
+        assertInstanceOf(CompiledVariable.class, compileRoot("1*x"));
+        assertInstanceOf(CompiledVariable.class, compileRoot("x/1"));
+        assertInstanceOf(CompiledVariable.class, compileRoot("x^1"));
+        assertInstanceOf(CompiledVariable.class, compileRoot("x-0"));
+        assertInstanceOf(CompiledVariable.class, compileRoot("x^(3-2)"));
+        // a sum of x and 1 can never be negative zero
+        assertEquals(compileRoot("x+1").toString(), compileRoot("(x+1)+0").toString());
+        assertEquals(1, assertInstanceOf(CompiledConstant.class, compileRoot("x^0")).value());
+    }
+
+    @Test
+    public void optimize_keepsAdditionOfZeroToNegativeZero(){
+        // -0 + 0 is +0, so x+0 is not the same as x
+        assertInstanceOf(CompiledOperation.class, compileRoot("x+0"));
+        assertInstanceOf(CompiledOperation.class, compileRoot("0+x*2"));
+    }
+
+    @Test
+    public void optimize_squareBecomesProduct(){
+        CompiledOperation square = assertInstanceOf(CompiledOperation.class, compileRoot("(x+1)^2"));
+        assertEquals(ExpressionNodeType.Multiplication, square.operator());
+        assertSame(square.left(), square.right());
+    }
+
+    @Test
+    public void optimize_sharesIdenticalSubtrees(){
+        CompiledOperation root = assertInstanceOf(CompiledOperation.class, compileRoot("(a/b+c)*(a/b+c)"));
+        assertSame(root.left(), root.right());
+
+        root = assertInstanceOf(CompiledOperation.class, compileRoot("(a-b)-(b-a)"));
+        assertNotSame(root.left(), root.right());
+    }
+
+    @Test
+    public void optimize_foldsAndSharesPureFunctions(){
+        assertEquals(6, assertInstanceOf(CompiledConstant.class, compileRoot("sqrt(16) + max(1, 2)")).value());
+
+        CompiledOperation root = assertInstanceOf(CompiledOperation.class, compileRoot("sqrt(x) + sqrt(x)"));
+        assertInstanceOf(CompiledFunction.class, root.left());
+        assertSame(root.left(), root.right());
+
+        evaluator = new ExpressionEvaluator(FunctionRegistry.withBuiltInConstants());
+        assertEquals(2 * Math.PI, assertInstanceOf(CompiledConstant.class, compileRoot("2 * pi")).value());
+    }
+
+    @Test
+    public void optimize_keepsEveryCallOfAFunctionThatIsNotPure(){
+        int[] calls = new int[1];
+        FunctionRegistry registry = FunctionRegistry.withBuiltIns()
+                .register(MathFunction.unary("next", x -> x + calls[0]++, false));
+        evaluator = new ExpressionEvaluator(registry);
+
+        CompiledOperation root = assertInstanceOf(CompiledOperation.class, compileRoot("next(1) + next(1)"));
+        assertInstanceOf(CompiledFunction.class, root.left());
+        assertNotSame(root.left(), root.right());
+        assertEquals(0, calls[0]);
+    }
+
+    @Test
+    public void optimize_preservesSpecialValues(){
+        CompiledVariable x = new CompiledVariable("x", 0);
+        CompiledVariable y = new CompiledVariable("y", 1);
+        CompiledNode[] trees = {
+                operation(ExpressionNodeType.Multiplication, x, constant(1)),
+                operation(ExpressionNodeType.Division, x, constant(1)),
+                operation(ExpressionNodeType.Exponent, x, constant(1)),
+                operation(ExpressionNodeType.Exponent, x, constant(0)),
+                operation(ExpressionNodeType.Exponent, x, constant(-0.0)),
+                operation(ExpressionNodeType.Exponent, x, constant(2)),
+                operation(ExpressionNodeType.Subtraction, x, constant(0)),
+                operation(ExpressionNodeType.Subtraction, x, constant(-0.0)),
+                operation(ExpressionNodeType.Addition, x, constant(0)),
+                operation(ExpressionNodeType.Addition, constant(-0.0), x),
+                operation(ExpressionNodeType.Addition, operation(ExpressionNodeType.Addition, x, y), constant(0)),
+                operation(ExpressionNodeType.Addition, operation(ExpressionNodeType.Subtraction, x, y), constant(0)),
+                operation(ExpressionNodeType.Multiplication, x, constant(0)),
+                operation(ExpressionNodeType.Subtraction, x, x),
+                operation(ExpressionNodeType.Division, operation(ExpressionNodeType.Subtraction, constant(0), constant(0)),
+                        constant(-0.0)),
+        };
+
+        for (CompiledNode tree : trees) {
+            CompiledNode optimized = ExpressionOptimizer.optimize(tree);
+            for (double xValue : SPECIAL_VALUES) {
+                for (double yValue : SPECIAL_VALUES) {
+                    double[] variables = {xValue, yValue};
+                    assertEquals(Double.doubleToRawLongBits(tree.evaluate(variables)),
+                            Double.doubleToRawLongBits(optimized.evaluate(variables)),
+                            tree + " with x=" + xValue + ", y=" + yValue);
+                }
+            }
+        }
+    }
+
+    private CompiledNode compileRoot(String expression){
+        try {
+            return evaluator.compile(expression).root();
+        } catch (BadExpressionException e) {
+            return fail(e);
+        }
+    }
+
+    private static CompiledNode constant(double value){
+        return new CompiledConstant(value);
+    }
+
+    private static CompiledNode operation(ExpressionNodeType operator, CompiledNode left, CompiledNode right){
+        return new CompiledOperation(operator, left, right);
+    }
+}
@@ -0,0 +1,155 @@
+package com.ikemole.expressionevaluator.tests.compiled;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.ExpressionStore;
+import com.ikemole.expressionevaluator.compiled.VariableBindings;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.function.FunctionRegistry;
+import com.ikemole.expressionevaluator.function.MathFunction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpressionStoreTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void openStore_readsBackEveryExpression() throws BadExpressionException, IOException {
+        String[] expressions = {
+                "2*3",
+                "price * (1 + rate) - discount",
+                "(a+b)*(a+b) / max(a, b, 1)",
+                "sqrt(x) + 2^0.5 + pi",
+                "(1/0)+(0-2)^0.5",
+        };
+        List<CompiledExpression> compiled = new ArrayList<>();
+        for (String expression : expressions)
+            compiled.add(evaluator.compile(expression));
+
+        Path path = directory.resolve("formulas.bin");
+        evaluator.writeStore(compiled, path);
+        ExpressionStore store = evaluator.openStore(path);
+
+        assertEquals(expressions.length, store.size());
+        for (int i = 0; i < expressions.length; i++) {
+            CompiledExpression original = compiled.get(i);
+            CompiledExpression loaded = store.get(i);
+            assertEquals(expressions[i], loaded.expression());
+            assertEquals(original.variableCount(), loaded.variableCount());
+            assertEquals(original.program().length(), loaded.program().length());
+
+            VariableBindings bindings = original.newBindings();
+            for (int slot = 0; slot < bindings.size(); slot++) {
+                assertEquals(original.variableName(slot), loaded.variableName(slot));
+                bindings.set(slot, slot + 1.5);
+            }
+            assertEquals(Double.doubleToRawLongBits(original.evaluate(bindings)),
+                    Double.doubleToRawLongBits(loaded.evaluate(bindings)), expressions[i]);
+        }
+    }
+
+    @Test
+    public void openStore_readsExpressionsLazily() throws BadExpressionException, IOException {
+        List<CompiledExpression> compiled = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            compiled.add(evaluator.compile("x * " + i + " + y"));
+
+        Path path = directory.resolve("formulas.bin");
+        evaluator.writeStore(compiled, path);
+        ExpressionStore store = evaluator.openStore(path);
+
+        assertEquals(0, store.readCount());
+        assertEquals("x * 500 + y", store.expression(500));
+        assertEquals(0, store.readCount());
+
+        CompiledExpression expression = store.get(999);
+        assertSame(expression, store.get(999));
+        assertEquals(1, store.readCount());
+        assertEquals(999 * 2 + 3, expression.evaluate(expression.newBindings().set(0, 2).set(1, 3)));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(1000));
+    }
+
+    @Test
+    public void openStore_functionsAreResolvedByName() throws BadExpressionException, IOException {
+        FunctionRegistry registry = FunctionRegistry.withBuiltIns()
+                .register(MathFunction.binary("hypot", Math::hypot, true));
+        Path path = directory.resolve("formulas.bin");
+        new ExpressionEvaluator(registry).writeStore(
+                List.of(new ExpressionEvaluator(registry).compile("hypot(a, 4)")), path);
+
+        CompiledExpression loaded = new ExpressionEvaluator(registry).openStore(path).get(0);
+        assertEquals(5, loaded.evaluate(loaded.newBindings().set(0, 3)));
+
+        ExpressionStore withoutFunction = evaluator.openStore(path);
+        BadExpressionException e = assertThrows(BadExpressionException.class, () -> withoutFunction.get(0));
+        assertEquals("The function \"hypot\" is not registered.", e.getMessage());
+    }
+
+    @Test
+    public void openStore_rejectsOtherAndDamagedFiles() throws BadExpressionException, IOException {
+        Path other = directory.resolve("other.bin");
+        Files.write(other, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        assertThrows(IOException.class, () -> evaluator.openStore(other));
+
+        Path path = directory.resolve("formulas.bin");
+        evaluator.writeStore(List.of(evaluator.compile("a+b*c")), path);
+        byte[] bytes = Files.readAllBytes(path);
+
+        // an unknown version
+        byte[] newer = bytes.clone();
+        newer[7] = 2;
+        Files.write(path, newer);
+        assertThrows(IOException.class, () -> evaluator.openStore(path));
+
+        // the program ends with 5 operands, no constants, no calls and 3 stack sizes
+        int thirdOperand = bytes.length - 3 * 4 - 4 - 4 - 5 * 4 + 2 * 4;
+        assertEquals(2, bytes[thirdOperand + 3]);
+
+        // a variable slot that is out of range
+        byte[] damaged = bytes.clone();
+        damaged[thirdOperand + 3] = 9;
+        Files.write(path, damaged);
+        ExpressionStore store = evaluator.openStore(path);
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> store.get(0));
+        assertEquals("Operand 9 out of range at 2", e.getCause().getMessage());
+    }
+
+    @Test
+    public void openStore_rejectsDamagedLengthsWithoutAllocating() throws BadExpressionException, IOException {
+        Path path = directory.resolve("formulas.bin");
+        evaluator.writeStore(List.of(evaluator.compile("a+b*c")), path);
+        byte[] bytes = Files.readAllBytes(path);
+
+        // the record of the expression starts after the header and the index, with the length of its text
+        int textLength = 12 + 8;
+        assertEquals(5, ByteBuffer.wrap(bytes, textLength, 4).getInt());
+        byte[] damaged = bytes.clone();
+        ByteBuffer.wrap(damaged, textLength, 4).putInt(0x7ffffff0);
+        Files.write(path, damaged);
+        ExpressionStore store = evaluator.openStore(path);
+        assertThrows(IllegalStateException.class, () -> store.expression(0));
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> store.get(0));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+
+        // the number of constants, before the number of calls and the 3 stack sizes
+        int constantCount = bytes.length - 3 * 4 - 4 - 4;
+        damaged = bytes.clone();
+        ByteBuffer.wrap(damaged, constantCount, 4).putInt(0x7ffffff0);
+        Files.write(path, damaged);
+        ExpressionStore other = evaluator.openStore(path);
+        assertThrows(IllegalStateException.class, () -> other.get(0));
+        assertEquals("a+b*c", other.expression(0));
+    }
+}
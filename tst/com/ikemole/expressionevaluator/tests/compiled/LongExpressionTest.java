@@ -0,0 +1,112 @@
+package com.ikemole.expressionevaluator.tests.compiled;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.LongBindings;
+import com.ikemole.expressionevaluator.compiled.LongExpression;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.function.FunctionRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.MathContext;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongExpressionTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @Test
+    public void evaluate_wholeNumbers(){
+        assertLongResult("2*3", 6);
+        assertLongResult("5+2^4*3-1", 52);
+        assertLongResult("-15*2^3+5", -115);
+        assertLongResult("12/4/3", 1);
+        assertLongResult("(-2)^3", -8);
+        assertLongResult("2^62 + (2^62 - 1)", Long.MAX_VALUE);
+        assertLongResult("(0-1)^(0-3)", -1);
+        assertLongResult("7^0", 1);
+    }
+
+    @Test
+    public void evaluate_beyondDoublePrecision(){
+        // 2^53 + 1 cannot be represented by a double
+        assertLongResult("2^53 + 1", 9007199254740993L);
+        assertLongResult("3^39", 4052555153018976267L);
+    }
+
+    @Test
+    public void evaluate_withVariables(){
+        try {
+            LongExpression expression = evaluator.compileLong("price * quantity - discount");
+            LongBindings bindings = expression.newBindings();
+            bindings.set(expression.slotOf("price"), 1999)
+                    .set(expression.slotOf("quantity"), 3)
+                    .set(expression.slotOf("discount"), 500);
+            assertEquals(5497, expression.evaluate(bindings));
+            assertThrows(IllegalArgumentException.class, expression::evaluate);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void evaluate_overflowThrows(){
+        assertArithmeticException("2^63");
+        assertArithmeticException("2^62 + 2^62");
+        assertArithmeticException("0 - 2^62 - 2^62 - 1");
+        assertArithmeticException("(2^32 + 1) * 2^31");
+    }
+
+    @Test
+    public void evaluate_inexactDivisionThrows(){
+        assertArithmeticException("7/2");
+        assertArithmeticException("1/0");
+        assertArithmeticException("2^(0-1)");
+    }
+
+    @Test
+    public void compile_numbersMustBeExactWholeNumbers(){
+        assertLongResult("4503599627370496 * 2", 9007199254740992L);
+        assertThrows(BadExpressionException.class, () -> evaluator.compileLong("1.5 * 2"));
+    }
+
+    @Test
+    public void compile_numbersAreReadExactly(){
+        // numbers from 2^53 that a double can only hold rounded
+        assertLongResult("9007199254740993 - 1", 9007199254740992L);
+        assertLongResult("9007199254740993 - 9007199254740992", 1);
+        assertLongResult("9223372036854775807", Long.MAX_VALUE);
+        assertLongResult("1.5e3 * 2", 3000);
+
+        BadExpressionException exception = assertThrows(BadExpressionException.class,
+                () -> evaluator.compileLong("9223372036854775808 - 1"));
+        assertTrue(exception.getMessage().contains("9223372036854775808 "), exception.getMessage());
+        exception = assertThrows(BadExpressionException.class, () -> evaluator.compileLong("2 * 0.50"));
+        assertTrue(exception.getMessage().contains("0.50 "), exception.getMessage());
+    }
+
+    @Test
+    public void compile_functionsAreRejected(){
+        assertThrows(BadExpressionException.class, () -> evaluator.compileLong("max(x, 2) + 1"));
+        ExpressionEvaluator withPi = new ExpressionEvaluator(FunctionRegistry.withBuiltInConstants());
+        assertThrows(BadExpressionException.class, () -> withPi.compileLong("2 * pi"));
+        assertThrows(BadExpressionException.class,
+                () -> evaluator.compileDecimal("abs(x)", MathContext.DECIMAL64));
+    }
+
+    private void assertLongResult(String expression, long expectedResult){
+        try {
+            assertEquals(expectedResult, evaluator.compileLong(expression).evaluate(), expression);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    private void assertArithmeticException(String expression){
+        try {
+            LongExpression compiled = evaluator.compileLong(expression);
+            assertThrows(ArithmeticException.class, compiled::evaluate, expression);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.ikemole.expressionevaluator.tests.compiled.bytecode;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.ExpressionFunction;
+import com.ikemole.expressionevaluator.compiled.VariableBindings;
+import com.ikemole.expressionevaluator.compiled.bytecode.BytecodeCompiler;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.function.FunctionRegistry;
+import com.ikemole.expressionevaluator.function.MathFunction;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BytecodeCompilerTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @Test
+    public void compile_matchesTree(){
+        String[] expressions = {
+                "2*3",
+                "0",
+                "1",
+                "5+2^4*3-1",
+                "(5*2*7) + (2 ^ (2 + (81/27))) - 4 ^ (1/2)",
+                "-1-2-3-4+5-6-7-8-9+10",
+                "1/2+(3/4)+(1/11)",
+                "((1-2)/0)+(2/0)",
+                "0/0",
+                "-0*1",
+        };
+
+        for (String expression : expressions)
+            assertBytecodeResult(expression, new double[0]);
+    }
+
+    @Test
+    public void compile_withVariables(){
+        assertBytecodeResult("price * (1 + rate) - discount", new double[]{100, 0.5, 10});
+        assertBytecodeResult("x ^ y / (x - y)", new double[]{3, 3});
+        assertBytecodeResult("a + b * a", new double[]{Double.NaN, 2});
+    }
+
+    @Test
+    public void compile_withFunctions(){
+        assertBytecodeResult("sqrt(x) + abs(y) * max(x, y, 2) - min(y, -x)", new double[]{9, -4});
+        assertBytecodeResult("max(x)", new double[]{-0.0});
+        assertBytecodeResult("sqrt(x + 1) * sqrt(x + 1) + log(sqrt(x + 1))", new double[]{3});
+    }
+
+    @Test
+    public void compile_withRegisteredFunctions(){
+        FunctionRegistry registry = FunctionRegistry.withBuiltIns()
+                .register(MathFunction.unary("half", x -> x / 2, true))
+                .register(MathFunction.binary("hypot", Math::hypot, true))
+                .register(MathFunction.varargs("sum", 1, (values, from, to) -> {
+                    double sum = 0;
+                    for (int i = from; i < to; i++)
+                        sum += values[i];
+                    return sum;
+                }, false));
+        evaluator = new ExpressionEvaluator(registry);
+
+        assertBytecodeResult("half(x) + hypot(x, y) * sum(x, y, 1, half(y))", new double[]{3, 4});
+        assertBytecodeResult("sum(half(x), half(x))", new double[]{5});
+    }
+
+    @Test
+    public void compile_manyVariables(){
+        StringBuilder sb = new StringBuilder("v0");
+        double[] values = new double[300];
+        for (int i = 1; i < values.length; i++) {
+            sb.append("+v").append(i);
+            values[i] = i;
+        }
+        assertBytecodeResult(sb.toString(), values);
+    }
+
+    @Test
+    public void jitThreshold_switchesToBytecode(){
+        try {
+            evaluator.setJitThreshold(3);
+            CompiledExpression compiled = evaluator.compile("x * 2 + 1");
+            VariableBindings bindings = compiled.newBindings();
+
+            for (int i = 0; i < 2; i++) {
+                bindings.set(0, i);
+                assertEquals(i * 2 + 1, evaluator.evaluate(compiled, bindings));
+                assertFalse(compiled.isCompiledToBytecode());
+            }
+
+            for (int i = 2; i < 10; i++) {
+                bindings.set(0, i);
+                assertEquals(i * 2 + 1, evaluator.evaluate(compiled, bindings));
+                assertTrue(compiled.isCompiledToBytecode());
+            }
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void jitDisabledByDefault(){
+        try {
+            CompiledExpression compiled = evaluator.compile("2 * 3");
+            for (int i = 0; i < 100; i++)
+                evaluator.evaluate(compiled);
+            assertFalse(compiled.isCompiledToBytecode());
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    private void assertBytecodeResult(String expression, double[] variables){
+        try {
+            CompiledExpression compiled = evaluator.compile(expression);
+            ExpressionFunction function = BytecodeCompiler.compile(compiled.root());
+            double expected = compiled.root().evaluate(variables);
+            double actual = function.evaluate(variables);
+            assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual), expression);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+}
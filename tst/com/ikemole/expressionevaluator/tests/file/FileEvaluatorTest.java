@@ -0,0 +1,126 @@
+package com.ikemole.expressionevaluator.tests.file;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.file.FileEvaluationSummary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileEvaluatorTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void evaluateFile_writesOneResultPerLine() throws IOException {
+        Path input = write("2*3\r\n5+2^4*3-1\n\n(1+\n1/0\n7");
+        Path output = directory.resolve("out.txt");
+
+        FileEvaluationSummary summary = evaluator.evaluateFile(input, output);
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertEquals(6, lines.size());
+        assertEquals("6.0", lines.get(0));
+        assertEquals("52.0", lines.get(1));
+        assertEquals("", lines.get(2));
+        assertTrue(lines.get(3).startsWith("error: "), lines.get(3));
+        assertEquals("Infinity", lines.get(4));
+        assertEquals("7.0", lines.get(5));
+        assertEquals(6, summary.lineCount());
+        assertEquals(1, summary.errorCount());
+    }
+
+    @Test
+    public void evaluateFile_deeplyNestedLineIsAnError() throws IOException {
+        StringBuilder sb = new StringBuilder("1+1\n");
+        for (int i = 0; i < 3000; i++)
+            sb.append("(1+");
+        sb.append('1');
+        for (int i = 0; i < 3000; i++)
+            sb.append(')');
+        Path input = write(sb.append("\n2*2").toString());
+        Path output = directory.resolve("out.txt");
+
+        FileEvaluationSummary summary = evaluator.evaluateFile(input, output);
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertEquals(List.of("2.0", "error: The bracket at position 3000 is nested more than 1000 levels deep.", "4.0"),
+                lines);
+        assertEquals(1, summary.errorCount());
+    }
+
+    @Test
+    public void evaluateFile_blankLinesAndEmptyBrackets() throws IOException {
+        Path input = write("1+1\n   \n2+\n3*3\n()\n2*( )\n4");
+        Path output = directory.resolve("out.txt");
+
+        FileEvaluationSummary summary = evaluator.evaluateFile(input, output);
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertEquals(7, lines.size());
+        assertEquals("2.0", lines.get(0));
+        assertEquals("", lines.get(1));
+        assertTrue(lines.get(2).startsWith("error: "), lines.get(2));
+        assertEquals("9.0", lines.get(3));
+        assertEquals("error: The bracket at position 0 is empty.", lines.get(4));
+        assertEquals("error: The bracket at position 2 is empty.", lines.get(5));
+        assertEquals("4.0", lines.get(6));
+        assertEquals(7, summary.lineCount());
+        assertEquals(3, summary.errorCount());
+    }
+
+    @Test
+    public void evaluateFile_emptyFile() throws IOException {
+        Path output = directory.resolve("out.txt");
+        FileEvaluationSummary summary = evaluator.evaluateFile(write(""), output);
+
+        assertEquals(0, summary.lineCount());
+        assertEquals(0, Files.size(output));
+    }
+
+    @Test
+    public void evaluateFile_manyChunksKeepTheirOrder() throws IOException, BadExpressionException {
+        int lineCount = 100_000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lineCount; i++)
+            sb.append(i % 1000 == 999 ? i + "*x" : i + "*2+(" + i + "-1)/4").append('\n');
+
+        Path input = write(sb.toString());
+        Path output = directory.resolve("out.txt");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        FileEvaluationSummary summary;
+        try {
+            summary = evaluator.evaluateFile(input, output, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertEquals(lineCount, lines.size());
+        assertEquals(lineCount, summary.lineCount());
+        assertEquals(lineCount / 1000, summary.errorCount());
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < lineCount; i++)
+            expected.add(i % 1000 == 999 ? lines.get(i) : String.valueOf(evaluator.evaluate(i + "*2+(" + i + "-1)/4")));
+        assertEquals(expected, lines);
+        assertTrue(lines.get(999).startsWith("error: "));
+    }
+
+    private Path write(String content) throws IOException {
+        Path input = directory.resolve("in.txt");
+        Files.write(input, content.getBytes(StandardCharsets.US_ASCII));
+        return input;
+    }
+}
@@ -0,0 +1,94 @@
+package com.ikemole.expressionevaluator.tests.function;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.function.FunctionRegistry;
+import com.ikemole.expressionevaluator.function.MathFunction;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FunctionRegistryTest {
+
+    @Test
+    public void registeredFunctionsAndConstants_canBeUsed(){
+        FunctionRegistry registry = FunctionRegistry.withBuiltIns()
+                .register(MathFunction.binary("percent", (part, whole) -> part / whole * 100, true))
+                .registerConstant("answer", 42);
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(registry);
+
+        try {
+            assertEquals(25, evaluator.evaluate("percent(answer / 2, 84)"));
+
+            CompiledExpression compiled = evaluator.compile("percent(x, answer)");
+            assertEquals(1, compiled.variableCount());
+            assertEquals(50, evaluator.evaluate(compiled, compiled.newBindings().set(0, 21)));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void functionThatIsNotPure_isCalledOnEveryEvaluation(){
+        int[] calls = new int[1];
+        FunctionRegistry registry = new FunctionRegistry()
+                .register(MathFunction.varargs("count", 1, (values, from, to) -> ++calls[0], false));
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(registry);
+
+        try {
+            CompiledExpression compiled = evaluator.compile("count(1) + count(1)");
+            assertEquals(3, evaluator.evaluate(compiled));
+            assertEquals(7, evaluator.evaluate(compiled));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void emptyRegistry_hasNoFunctionsOrConstants(){
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(new FunctionRegistry());
+
+        assertThrows(BadExpressionException.class, () -> evaluator.evaluate("sqrt(4)"));
+        try {
+            // without the constant, pi is a variable
+            assertEquals(1, evaluator.compile("2 * pi").variableCount());
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void builtInRegistry_leavesEAndPiAsVariables(){
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+        try {
+            CompiledExpression compiled = evaluator.compile("e*x + pi");
+            assertEquals(3, compiled.variableCount());
+            assertEquals(0, compiled.slotOf("e"));
+            assertEquals(7, evaluator.evaluate(compiled, compiled.newBindings().set(0, 2).set(1, 3).set(2, 1)));
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void builtInConstants_resolveEAndPi(){
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(FunctionRegistry.withBuiltInConstants());
+
+        try {
+            assertEquals(0, evaluator.compile("log(e) * pi - pi").variableCount());
+            assertEquals(1, evaluator.compile("e*x").variableCount());
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void invalidNames_throwException(){
+        assertThrows(IllegalArgumentException.class, () -> MathFunction.unary("2x", x -> x, true));
+        assertThrows(IllegalArgumentException.class, () -> MathFunction.unary("a-b", x -> x, true));
+        assertThrows(IllegalArgumentException.class, () -> new FunctionRegistry().registerConstant("", 1));
+        assertThrows(IllegalArgumentException.class, () -> MathFunction.varargs("none", 0, (v, f, t) -> 0, true));
+    }
+}
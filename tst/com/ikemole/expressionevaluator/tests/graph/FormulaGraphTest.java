@@ -0,0 +1,117 @@
+package com.ikemole.expressionevaluator.tests.graph;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.graph.FormulaGraph;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FormulaGraphTest {
+    private FormulaGraph graph = new FormulaGraph(new ExpressionEvaluator());
+
+    @Test
+    public void value_computesFormulasFromInputsAndOtherFormulas() throws BadExpressionException {
+        graph.define("gross", "net * (1 + rate)");
+        graph.define("net", "price * quantity");
+        graph.setInput("price", 10);
+        graph.setInput("quantity", 3);
+        graph.setInput("rate", 0.5);
+
+        assertEquals(30, graph.value("net"));
+        assertEquals(45, graph.value("gross"));
+        assertEquals(3, graph.value("quantity"));
+
+        graph.setInput("quantity", 4);
+        assertEquals(60, graph.value("gross"));
+
+        graph.define("net", "price * quantity - 10");
+        assertEquals(45, graph.value("gross"));
+    }
+
+    @Test
+    public void recalculate_onlyRecalculatesDirtyFormulas() throws BadExpressionException {
+        graph.define("a", "x + 1");
+        graph.define("b", "a * 2");
+        graph.define("c", "y + 1");
+        graph.define("d", "b + c");
+        graph.setInput("x", 1);
+        graph.setInput("y", 1);
+        assertEquals(4, graph.recalculate());
+        assertEquals(0, graph.recalculate());
+
+        graph.setInput("x", 2);
+        assertEquals(3, graph.dirtyCount());
+        assertEquals(3, graph.recalculate());
+        assertEquals(8, graph.value("d"));
+
+        graph.setInput("x", 2);
+        assertEquals(0, graph.dirtyCount());
+    }
+
+    @Test
+    public void define_rejectsCycles() throws BadExpressionException {
+        graph.define("a", "b + 1");
+        graph.define("b", "c * 2");
+
+        BadExpressionException e = assertThrows(BadExpressionException.class, () -> graph.define("c", "a - 1"));
+        assertEquals("The formula \"c\" refers to itself: c -> a -> b -> c", e.getMessage());
+        assertThrows(BadExpressionException.class, () -> graph.define("d", "d"));
+        assertThrows(BadExpressionException.class, () -> graph.define("c", "a - fresh"));
+
+        // the graph is not changed by a rejected formula, and its new names are not added
+        assertThrows(IllegalArgumentException.class, () -> graph.value("d"));
+        assertThrows(IllegalArgumentException.class, () -> graph.value("fresh"));
+        graph.setInput("c", 1);
+        assertEquals(3, graph.value("a"));
+        graph.define("c", "5");
+        assertEquals(11, graph.value("a"));
+    }
+
+    @Test
+    public void value_missingInputs() throws BadExpressionException {
+        graph.define("a", "x + 1");
+        graph.define("b", "a * 2");
+
+        BadExpressionException e = assertThrows(BadExpressionException.class, () -> graph.value("b"));
+        assertEquals("The variable \"x\" has no value", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> graph.value("z"));
+        assertThrows(IllegalArgumentException.class, () -> graph.setInput("a", 1));
+        assertThrows(BadExpressionException.class, () -> graph.define("c", "(1+"));
+
+        graph.setInput("x", 1);
+        assertEquals(4, graph.value("b"));
+    }
+
+    @Test
+    public void recalculate_largeGraphInParallel() throws BadExpressionException {
+        // a diamond of wide layers: each formula of a layer depends on two formulas of the layer before
+        int width = 200;
+        int depth = 20;
+        for (int i = 0; i < width; i++)
+            graph.define("f0_" + i, "x + " + i);
+        for (int layer = 1; layer < depth; layer++) {
+            for (int i = 0; i < width; i++)
+                graph.define("f" + layer + "_" + i,
+                        String.format("f%d_%d + f%d_%d", layer - 1, i, layer - 1, (i + 1) % width));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int x = 0; x < 3; x++) {
+                graph.setInput("x", x);
+                assertEquals(width * depth, graph.recalculate(pool));
+
+                // each formula of the last layer sums 2^(depth-1) formulas of the first layer
+                double sum = 0;
+                for (int i = 0; i < width; i++)
+                    sum += graph.value("f" + (depth - 1) + "_" + i);
+                assertEquals((1 << (depth - 1)) * (width * x + width * (width - 1) / 2.0), sum);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
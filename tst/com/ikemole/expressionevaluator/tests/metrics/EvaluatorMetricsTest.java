@@ -0,0 +1,138 @@
+package com.ikemole.expressionevaluator.tests.metrics;
+
+import com.ikemole.expressionevaluator.ExpressionEvaluator;
+import com.ikemole.expressionevaluator.compiled.BatchEvaluator;
+import com.ikemole.expressionevaluator.compiled.CompiledExpression;
+import com.ikemole.expressionevaluator.compiled.ExpressionCache;
+import com.ikemole.expressionevaluator.exception.BadExpressionException;
+import com.ikemole.expressionevaluator.metrics.ErrorKind;
+import com.ikemole.expressionevaluator.metrics.LatencyHistogram;
+import com.ikemole.expressionevaluator.metrics.Phase;
+import com.ikemole.expressionevaluator.metrics.RecordingMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvaluatorMetricsTest {
+    private ExpressionEvaluator evaluator = new ExpressionEvaluator();
+    private RecordingMetrics metrics = new RecordingMetrics();
+
+    @Test
+    public void latencyHistogram_percentilesAreWithinOnePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++)
+            histogram.record(value * 10);
+
+        assertEquals(100_000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+        assertEquals(500_005, histogram.mean(), 0.001);
+        assertEquals(500_000, histogram.valueAtPercentile(50), 500_000 * 0.01);
+        assertEquals(990_000, histogram.valueAtPercentile(99), 990_000 * 0.01);
+        assertEquals(1_000_000, histogram.valueAtPercentile(100));
+        assertEquals(10, histogram.valueAtPercentile(0));
+    }
+
+    @Test
+    public void latencyHistogram_smallAndHugeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.valueAtPercentile(50));
+
+        histogram.record(-5);
+        histogram.record(3);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.valueAtPercentile(10));
+        assertEquals(3, histogram.valueAtPercentile(60));
+        assertEquals(Long.MAX_VALUE, histogram.valueAtPercentile(100));
+        assertThrows(IllegalArgumentException.class, () -> histogram.valueAtPercentile(101));
+    }
+
+    @Test
+    public void evaluate_recordsPhasesAndOperators() throws BadExpressionException {
+        evaluator.setMetrics(metrics);
+
+        assertEquals(14, evaluator.evaluate("2+3*4"));
+        assertEquals(5, evaluator.evaluate("max(1,(2+3))"));
+
+        assertEquals(2, metrics.latency(Phase.Parse).count());
+        assertEquals(2, metrics.latency(Phase.Evaluate).count());
+        assertEquals(2, metrics.evaluationCount());
+        // "+" and "*", then "max", the bracket and "+"
+        assertEquals(5, metrics.operatorCount());
+        assertEquals(0, metrics.latency(Phase.RenderSteps).count());
+    }
+
+    @Test
+    public void evaluate_recordsErrorsByKind() {
+        evaluator.setMetrics(metrics);
+
+        assertThrows(BadExpressionException.class, () -> evaluator.evaluate("(1+2"));
+        assertThrows(BadExpressionException.class, () -> evaluator.evaluate("nope(1)"));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate("1+#"));
+
+        assertEquals(2, metrics.errorCount(ErrorKind.BadExpression));
+        assertEquals(1, metrics.errorCount(ErrorKind.IllegalArgument));
+        assertEquals(0, metrics.evaluationCount());
+    }
+
+    @Test
+    public void evaluate_recordsCacheLookups() throws BadExpressionException {
+        evaluator.setCache(ExpressionCache.withMaximumEntries(10));
+        evaluator.setMetrics(metrics);
+
+        evaluator.evaluate("1+2");
+        evaluator.evaluate("1 + 2");
+        evaluator.evaluate("1+2");
+        evaluator.compile("x*2");
+
+        assertEquals(2, metrics.cacheHitCount());
+        assertEquals(2, metrics.cacheMissCount());
+        assertEquals(0.5, metrics.cacheHitRate());
+        assertEquals(2, metrics.latency(Phase.Parse).count());
+        assertEquals(3, metrics.latency(Phase.Evaluate).count());
+    }
+
+    @Test
+    public void evaluateCompiled_countsEachSharedOperatorOnce() throws BadExpressionException {
+        evaluator.setMetrics(metrics);
+        CompiledExpression compiled = evaluator.compile("(x+1)*(x+1)");
+
+        assertEquals(16, evaluator.evaluate(compiled, compiled.newBindings().set(0, 3)));
+        evaluator.evaluateBatch(compiled, new double[][]{{1, 2, 3}}, new double[3]);
+        evaluator.evaluateBatch(new BatchEvaluator(compiled, new double[][]{{1, 2, 3}}), new double[3], 2);
+
+        assertEquals(1, metrics.latency(Phase.Evaluate).count());
+        assertEquals(2, metrics.latency(Phase.Batch).count());
+        assertEquals(6, metrics.evaluationCount());
+        assertEquals(12, metrics.operatorCount());
+    }
+
+    @Test
+    public void showWorking_recordsRendering() throws BadExpressionException {
+        evaluator.setMetrics(metrics);
+
+        evaluator.evaluateAndShowWorking("1+2*3", true).getSteps();
+        List<String> streamed = new ArrayList<>();
+        evaluator.evaluateAndShowWorking("1+2*3", step -> streamed.add(step.toString()));
+
+        assertEquals(List.of("1+2*3", "1+6", "7"), streamed);
+        assertEquals(4, metrics.latency(Phase.RenderSteps).count());
+        assertEquals(2, metrics.evaluationCount());
+    }
+
+    @Test
+    public void noMetrics_recordsNothing() throws BadExpressionException {
+        evaluator.setMetrics(metrics);
+        evaluator.setMetrics(null);
+
+        evaluator.evaluate("1+2");
+        assertThrows(BadExpressionException.class, () -> evaluator.evaluate("(1"));
+
+        assertEquals(0, metrics.latency(Phase.Parse).count());
+        assertEquals(0, metrics.evaluationCount());
+        assertEquals(0, metrics.errorCount(ErrorKind.BadExpression));
+    }
+}
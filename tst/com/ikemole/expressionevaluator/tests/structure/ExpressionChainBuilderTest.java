@@ -6,13 +6,18 @@ import com.ikemole.expressionevaluator.structure.node.BracketNode;
 import com.ikemole.expressionevaluator.structure.node.ExpressionNode;
 import com.ikemole.expressionevaluator.structure.node.NumberNode;
 import com.ikemole.expressionevaluator.structure.node.OperatorNode;
+import com.ikemole.expressionevaluator.structure.node.VariableNode;
 import com.ikemole.expressionevaluator.structure.node.ExpressionNodeType;
 import com.ikemole.expressionevaluator.tests.assertions.ExpressionChainAssert;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
 
 
 public class ExpressionChainBuilderTest {
@@ -55,6 +60,17 @@ public class ExpressionChainBuilderTest {
         assertExpressionChain(expression, expectedResults);
     }
 
+    @Test
+    public void buildExpressionChain_expressionWithVariables(){
+        String expression = "rate_1 * (x + 2)";
+        ExpressionNode[] expectedResult = {
+                new VariableNode("rate_1"),
+                new OperatorNode(ExpressionNodeType.Multiplication),
+                new BracketNode("x + 2")
+        };
+        assertExpressionChain(expression, expectedResult);
+    }
+
     @Test
     public void buildExpressionChain_incompleteBrackets_throwsException(){
         BadExpressionException exceptionThrown = assertThrows(BadExpressionException.class, () -> {
@@ -64,6 +80,69 @@ public class ExpressionChainBuilderTest {
         assertEquals(exceptionThrown.getMessage(), "The open bracket at index 5 was not closed.");
     }
 
+    @Test
+    public void buildExpressionChain_unclosedNestedBrackets_reportsOutermostBracket(){
+        BadExpressionException exceptionThrown = assertThrows(BadExpressionException.class, () -> {
+            String expression = "1+((2*3)+(4";
+            builder.build(expression);
+        });
+        assertEquals("The open bracket at index 2 was not closed.", exceptionThrown.getMessage());
+    }
+
+    @Test
+    public void buildExpressionChain_unopenedBracket_throwsException(){
+        assertThrows(IllegalArgumentException.class, () -> builder.build("1+2)"));
+    }
+
+    @Test
+    public void buildExpressionChain_bracketContainsInnerChain(){
+        try {
+            ExpressionChain expressionChain = builder.build("2 * (4 ^ (2 + 1))");
+            BracketNode bracketNode = (BracketNode) expressionChain.first().right().right();
+            ExpressionNode[] expectedInnerNodes = {
+                    new NumberNode(4),
+                    new OperatorNode(ExpressionNodeType.Exponent),
+                    new BracketNode("2 + 1")
+            };
+            ExpressionChainAssert.assertNodesAreCorrect(bracketNode.innerChain(), expectedInnerNodes);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void buildExpressionChain_deeplyNestedBrackets(){
+        int depth = 1000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++)
+            sb.append("(1+");
+        sb.append('1');
+        for (int i = 0; i < depth; i++)
+            sb.append(')');
+
+        try {
+            ExpressionChain expressionChain = builder.build(sb.toString());
+            assertEquals(1, expressionChain.length());
+            assertEquals(sb.toString(), expressionChain.toString());
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void buildExpressionChain_nestedTooDeeply_throwsException(){
+        StringBuilder brackets = new StringBuilder();
+        StringBuilder calls = new StringBuilder();
+        for (int i = 0; i <= ExpressionChainBuilder.MAX_NESTING_DEPTH; i++){
+            brackets.append('(');
+            calls.append(i % 2 == 0 ? "abs(" : "(");
+        }
+
+        BadExpressionException e = assertThrows(BadExpressionException.class, () -> builder.build(brackets + "1"));
+        assertEquals("The bracket at position 1000 is nested more than 1000 levels deep.", e.getMessage());
+        assertThrows(BadExpressionException.class, () -> builder.build(calls + "1"));
+    }
+
     @Test
     public void buildExpressionChain_expressionWithNestedBrackets(){
         String expression = "403 + (4 ^ (2 + 1)) - 29 ^ (9 - 7)";
@@ -122,6 +201,63 @@ public class ExpressionChainBuilderTest {
         assertExpressionChain(expression, expectedResult);
     }
 
+    @Test
+    public void buildExpressionChain_fromCharArrayRegion(){
+        char[] chars = "ignored 2*(x+3) ignored".toCharArray();
+        ExpressionNode[] expectedResult = {
+                new NumberNode(2),
+                new OperatorNode(ExpressionNodeType.Multiplication),
+                new BracketNode("x+3")
+        };
+        try {
+            ExpressionChainAssert.assertNodesAreCorrect(builder.build(chars, 8, 7), expectedResult);
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void buildExpressionChain_fromByteBuffer(){
+        byte[] bytes = "ignored 2*(x+3) ignored".getBytes(StandardCharsets.US_ASCII);
+        ExpressionNode[] expectedResult = {
+                new NumberNode(2),
+                new OperatorNode(ExpressionNodeType.Multiplication),
+                new BracketNode("x+3")
+        };
+
+        ByteBuffer heapBuffer = ByteBuffer.wrap(bytes, 8, 7);
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+        directBuffer.position(8).limit(15);
+        for (ByteBuffer buffer : new ByteBuffer[]{heapBuffer, directBuffer}) {
+            try {
+                ExpressionChainAssert.assertNodesAreCorrect(builder.build(buffer), expectedResult);
+                assertEquals(8, buffer.position());
+                assertEquals(15, buffer.limit());
+            } catch (BadExpressionException e) {
+                fail(e);
+            }
+        }
+    }
+
+    @Test
+    public void buildExpressionChain_fromRegion_reportsPositionsInTheRegion(){
+        char[] chars = "1+2 (3*4 1+$".toCharArray();
+        BadExpressionException unclosed = assertThrows(BadExpressionException.class,
+                () -> builder.build(chars, 4, 4));
+        assertEquals("The open bracket at index 0 was not closed.", unclosed.getMessage());
+
+        ByteBuffer buffer = ByteBuffer.wrap("1+2 (3*4 1+$".getBytes(StandardCharsets.US_ASCII));
+        buffer.position(9);
+        IllegalArgumentException invalid = assertThrows(IllegalArgumentException.class, () -> builder.build(buffer));
+        assertEquals("The character $ at position 2 in the expression \"1+$\" is not valid", invalid.getMessage());
+    }
+
+    @Test
+    public void buildExpressionChain_nonAsciiByte_throwsException(){
+        ByteBuffer buffer = ByteBuffer.wrap("2*\u00e9".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> builder.build(buffer));
+    }
+
     private void assertExpressionChain(String expression, ExpressionNode[] expectedResults){
         try{
             ExpressionChain expressionChain = builder.build(expression);
@@ -46,9 +46,40 @@ public class ExpressionChainTest {
                 ExpressionNodeType.Exponent,
                 ExpressionNodeType.Division,
                 ExpressionNodeType.Multiplication,
-                ExpressionNodeType.Subtraction,
                 ExpressionNodeType.Addition,
+                ExpressionNodeType.Subtraction,
         };
+        assertOperatorOrder(expression, expectedNodeTypeOrder);
+    }
+
+    @Test
+    public void highestPriority_sameLevelIsLeftToRight(){
+        assertOperatorOrder("1-2+3", new ExpressionNodeType[]{
+                ExpressionNodeType.Subtraction,
+                ExpressionNodeType.Addition,
+        });
+        assertOperatorOrder("8*2/4*3", new ExpressionNodeType[]{
+                ExpressionNodeType.Multiplication,
+                ExpressionNodeType.Division,
+                ExpressionNodeType.Multiplication,
+        });
+    }
+
+    @Test
+    public void highestPriority_exponentIsRightToLeft(){
+        try {
+            ExpressionChain expressionChain = expressionChainBuilder.build("2^3^4");
+            ExpressionNode firstExponent = expressionChain.first().right();
+            ExpressionNode secondExponent = firstExponent.right().right();
+            assertSame(secondExponent, expressionChain.getHighestPriorityNode());
+            assertSame(firstExponent, expressionChain.getHighestPriorityNode());
+            assertFalse(expressionChain.hasOperators());
+        } catch (BadExpressionException e) {
+            fail(e);
+        }
+    }
+
+    private void assertOperatorOrder(String expression, ExpressionNodeType[] expectedNodeTypeOrder){
         ExpressionChain expressionChain = null;
         try {
             expressionChain = expressionChainBuilder.build(expression);
@@ -0,0 +1,90 @@
+package com.ikemole.expressionevaluator.tests.structure;
+
+import com.ikemole.expressionevaluator.structure.NumberScanner;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NumberScannerTest {
+    private NumberScanner numberScanner = new NumberScanner();
+
+    @Test
+    public void scan_integers(){
+        assertScan("0", 0);
+        assertScan("42", 42);
+        assertScan("007", 7);
+        assertScan("2147483648", 2147483648.0);
+        assertScan("9223372036854775807", 9223372036854775807.0);
+        assertScan("123456789012345678901234567890", 123456789012345678901234567890.0);
+    }
+
+    @Test
+    public void scan_decimals(){
+        assertScan("3.25", 3.25);
+        assertScan("0.1", 0.1);
+        assertScan(".5", 0.5);
+        assertScan("2.", 2);
+        assertScan("0.000000000000000000000000000001", 1e-30);
+    }
+
+    @Test
+    public void scan_scientificNotation(){
+        assertScan("6.02e23", 6.02e23);
+        assertScan("1E-7", 1e-7);
+        assertScan("1e+3", 1000);
+        assertScan("2e-400", 0);
+        assertScan("1e400", Double.POSITIVE_INFINITY);
+        assertScan("4.9e-324", Double.MIN_VALUE);
+        assertScan("1.7976931348623157e308", Double.MAX_VALUE);
+    }
+
+    @Test
+    public void scan_stopsAtTheEndOfTheNumber(){
+        assertEquals(1, numberScanner.scan("2e", 0, 2));
+        assertEquals(1, numberScanner.scan("2e+x", 0, 4));
+        assertEquals(3, numberScanner.scan("1.2.3", 0, 5));
+        assertEquals(3, numberScanner.scan("12345", 1, 3));
+        assertEquals(23, numberScanner.value());
+        assertEquals(5, numberScanner.scan("x*1e3+1", 2, 7));
+        assertEquals(1000, numberScanner.value());
+    }
+
+    @Test
+    public void isNumberStart(){
+        assertTrue(NumberScanner.isNumberStart("7", 0, 1));
+        assertTrue(NumberScanner.isNumberStart(".5", 0, 2));
+        assertFalse(NumberScanner.isNumberStart(".", 0, 1));
+        assertFalse(NumberScanner.isNumberStart(".x", 0, 2));
+        assertFalse(NumberScanner.isNumberStart("e5", 0, 2));
+    }
+
+    @Test
+    public void scan_isCorrectlyRounded(){
+        assertScan("9007199254740993", 9007199254740993.0); // halfway between two doubles
+        assertScan("2.2250738585072011e-308", 2.2250738585072011e-308);
+        assertScan("1e23", 1e23);
+
+        Random random = new Random(16);
+        for (int i = 0; i < 200_000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int digits = 1 + random.nextInt(22);
+            for (int d = 0; d < digits; d++)
+                sb.append((char) ('0' + random.nextInt(10)));
+            if(random.nextBoolean())
+                sb.insert(random.nextInt(sb.length() + 1), '.');
+            if(random.nextBoolean())
+                sb.append('e').append(random.nextInt(660) - 330);
+
+            String text = sb.toString();
+            if(NumberScanner.isNumberStart(text, 0, text.length()))
+                assertScan(text, Double.parseDouble(text));
+        }
+    }
+
+    private void assertScan(String text, double expectedValue){
+        assertEquals(text.length(), numberScanner.scan(text, 0, text.length()), text);
+        assertEquals(Double.doubleToLongBits(expectedValue), Double.doubleToLongBits(numberScanner.value()), text);
+    }
+}
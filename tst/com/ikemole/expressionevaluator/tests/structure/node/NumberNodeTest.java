@@ -0,0 +1,81 @@
+package com.ikemole.expressionevaluator.tests.structure.node;
+
+import com.ikemole.expressionevaluator.structure.node.NumberNode;
+import org.junit.jupiter.api.Test;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class NumberNodeTest {
+
+    @Test
+    public void toString_wholeNumbers(){
+        assertToString(0, "0");
+        assertToString(-0.0, "0");
+        assertToString(14, "14");
+        assertToString(-3, "-3");
+        assertToString(3_000_000_001.0, "3000000001");
+        assertToString(-9_007_199_254_740_992.0, "-9007199254740992");
+        assertToString(1e20, "100000000000000000000");
+        assertToString(-2.5e20, "-250000000000000000000");
+    }
+
+    @Test
+    public void toString_specialValues(){
+        assertToString(Double.NaN, "NaN");
+        assertToString(Double.POSITIVE_INFINITY, "Infinity");
+        assertToString(Double.NEGATIVE_INFINITY, "-Infinity");
+    }
+
+    @Test
+    public void toString_roundsToTwoDecimalPlaces(){
+        assertToString(0.5, "0.5");
+        assertToString(0.75, "0.75");
+        assertToString(1.0 / 11, "0.09");
+        assertToString(1.34, "1.34");
+        assertToString(0.001, "0");
+        assertToString(-0.001, "-0");
+        assertToString(0.125, "0.12");
+        assertToString(0.135, "0.14");
+        assertToString(2.675, "2.67");
+        assertToString(0.995, "0.99");
+        assertToString(123456789012.345, "123456789012.35");
+    }
+
+    @Test
+    public void toString_matchesDecimalFormat(){
+        DecimalFormat decimalFormat = new DecimalFormat("#.##", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            double number;
+            switch (i % 4) {
+                case 0:
+                    number = random.nextDouble() * 20 - 10;
+                    break;
+                case 1:
+                    // values that are close to halfway between two hundredths
+                    number = (random.nextInt(100_000) - 50_000) / 1000.0 + 0.005;
+                    break;
+                case 2:
+                    number = random.nextGaussian() * 1e15;
+                    break;
+                default:
+                    number = random.nextDouble() * Math.pow(10, random.nextInt(30) - 15);
+            }
+
+            if(number == Math.rint(number))
+                continue;
+
+            assertEquals(decimalFormat.format(number), new NumberNode(number).toString(), "Number: " + number);
+        }
+    }
+
+    private void assertToString(double number, String expected){
+        assertEquals(expected, new NumberNode(number).toString());
+    }
+}